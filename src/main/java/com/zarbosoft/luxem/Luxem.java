@@ -1,9 +1,9 @@
 package com.zarbosoft.luxem;
 
 import com.zarbosoft.interface1.Walk;
-import com.zarbosoft.luxem.read.Parse;
-import com.zarbosoft.luxem.read.ReadTypeGrammar;
+import com.zarbosoft.luxem.generate.SubtypeIndex;
 import com.zarbosoft.luxem.read.TreeReader;
+import com.zarbosoft.luxem.tree.LuxemDocument;
 import com.zarbosoft.luxem.write.TypeWriter;
 import org.reflections.Reflections;
 
@@ -11,6 +11,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -18,6 +19,10 @@ import java.util.stream.Stream;
  * Methods for common use cases.
  */
 public class Luxem {
+	/**
+	 * Grammars for the types passed to parse.
+	 */
+	private static final LuxemCodecs codecs = new LuxemCodecs();
 
 	/**
 	 * Read a luxem document as a tree of Lists, String Maps, Strings, and Typeds.
@@ -39,6 +44,85 @@ public class Luxem {
 		return new TreeReader().read(data);
 	}
 
+	/**
+	 * Read a luxem file as a tree of Lists, String Maps, Strings, and Typeds.  The file is memory mapped rather than
+	 * read.
+	 *
+	 * @param data luxem file
+	 * @return list of top level objects
+	 */
+	public static List parse(final Path data) {
+		return new TreeReader().read(data);
+	}
+
+	/**
+	 * Like parse(String) but the tree is read only and decoded as it's accessed.  Reading only records the document
+	 * structure, and each List element or Map value is decoded the first time it's requested.
+	 *
+	 * @param data luxem
+	 * @return list of top level objects
+	 */
+	public static List parseLazy(final String data) {
+		return parseLazy(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Like parse(InputStream) but the tree is read only and decoded as it's accessed.
+	 *
+	 * @param data luxem
+	 * @return list of top level objects
+	 */
+	public static List parseLazy(final InputStream data) {
+		return LuxemDocument.read(data).lazy();
+	}
+
+	/**
+	 * Like parse(Path) but the tree is read only and decoded as it's accessed.
+	 *
+	 * @param data luxem file
+	 * @return list of top level objects
+	 */
+	public static List parseLazy(final Path data) {
+		return LuxemDocument.read(data).lazy();
+	}
+
+	/**
+	 * Like parse(Reflections, Walk.TypeInfo, String) but subtypes are found with SubtypeIndex.shared, which reads the
+	 * subtype index written by CodecProcessor and only scans the class path for abstract types missing from it.
+	 *
+	 * @param rootType The type of the top level objects in the tree.
+	 * @param data     The luxem
+	 * @param <T>      rootType
+	 * @return The stream of deserialized objects.
+	 */
+	public static <T> Stream<T> parse(final Walk.TypeInfo rootType, final String data) {
+		return parse(SubtypeIndex.shared(), rootType, data);
+	}
+
+	/**
+	 * Like parse(Reflections, Walk.TypeInfo, InputStream) with subtypes from SubtypeIndex.shared.
+	 *
+	 * @param rootType The type of the top level objects in the tree.
+	 * @param data     The luxem
+	 * @param <T>      rootType
+	 * @return The stream of deserialized objects.
+	 */
+	public static <T> Stream<T> parse(final Walk.TypeInfo rootType, final InputStream data) {
+		return parse(SubtypeIndex.shared(), rootType, data);
+	}
+
+	/**
+	 * Like parse(Reflections, Walk.TypeInfo, Path) with subtypes from SubtypeIndex.shared.
+	 *
+	 * @param rootType The type of the top level objects in the tree.
+	 * @param data     The luxem file
+	 * @param <T>      rootType
+	 * @return The stream of deserialized objects.
+	 */
+	public static <T> Stream<T> parse(final Walk.TypeInfo rootType, final Path data) {
+		return parse(SubtypeIndex.shared(), rootType, data);
+	}
+
 	/**
 	 * Read a luxem document as a stream of deserialized objects.  Objects and fields to deserialize should be
 	 * annotated with @Configuration from the interface package.
@@ -68,10 +152,22 @@ public class Luxem {
 	public static <T> Stream<T> parse(
 			final Reflections reflections, final Walk.TypeInfo rootType, final InputStream data
 	) {
-		return new Parse<T>()
-				.grammar(ReadTypeGrammar.buildGrammar(reflections, rootType))
-				.errorHistory(5)
-				.parseByElement(data);
+		return codecs.<T>get(reflections, rootType).parse(data);
+	}
+
+	/**
+	 * Read a luxem file as a stream of deserialized objects.  The file is memory mapped rather than read.
+	 *
+	 * @param reflections Used to locate classes that can be deserialized.
+	 * @param rootType    The type of the top level objects in the tree.
+	 * @param data        The luxem file
+	 * @param <T>         rootType
+	 * @return The stream of deserialized objects.
+	 */
+	public static <T> Stream<T> parse(
+			final Reflections reflections, final Walk.TypeInfo rootType, final Path data
+	) {
+		return codecs.<T>get(reflections, rootType).parse(data);
 	}
 
 	/**
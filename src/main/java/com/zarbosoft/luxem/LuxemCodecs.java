@@ -0,0 +1,217 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.generate.RuntimeCodec;
+import com.zarbosoft.luxem.read.Parse;
+import com.zarbosoft.luxem.read.ReadTypeGrammar;
+import com.zarbosoft.luxem.read.TypeReader;
+import com.zarbosoft.luxem.write.TypeWriter;
+import com.zarbosoft.pidgoon.events.Grammar;
+import org.reflections.Reflections;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Caches what's needed to read and write each root type, so the type isn't walked and its grammar built for every
+ * document.  For each Reflections, codecs are kept for the most recently used types up to a limit.  Reflections are
+ * held weakly so the codecs for one are dropped when it's no longer used.  Safe to share between threads.
+ */
+public class LuxemCodecs {
+	private final int capacity;
+	private final Map<Reflections, Map<Key, Compiled<?>>> codecs = new WeakHashMap<>();
+
+	public LuxemCodecs() {
+		this(256);
+	}
+
+	/**
+	 * @param capacity maximum number of types to keep codecs for, per Reflections
+	 */
+	public LuxemCodecs(final int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param reflections used to locate classes that can be deserialized
+	 * @param rootType    the type of the top level objects
+	 * @param <T>         rootType
+	 * @return the codec for the type, compiled the first time it's requested
+	 */
+	public <T> Codec<T> get(final Reflections reflections, final Walk.TypeInfo rootType) {
+		final Key key = new Key(rootType);
+		synchronized (codecs) {
+			final Compiled<?> found = types(reflections).get(key);
+			if (found != null)
+				return new Codec<>(reflections, (Compiled<T>) found);
+		}
+		// Compile outside the lock - if another thread wins the race its codec is used
+		final Compiled<T> created = new Compiled<>(reflections, rootType);
+		synchronized (codecs) {
+			final Compiled<?> found = types(reflections).putIfAbsent(key, created);
+			return new Codec<>(reflections, found != null ? (Compiled<T>) found : created);
+		}
+	}
+
+	private Map<Key, Compiled<?>> types(final Reflections reflections) {
+		return codecs.computeIfAbsent(reflections, r -> new LinkedHashMap<Key, Compiled<?>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Compiled<?>> eldest) {
+				return size() > capacity;
+			}
+		});
+	}
+
+	/**
+	 * Types are compared by class and parameters.
+	 */
+	private static class Key {
+		private final List<Object> type = new ArrayList<>();
+
+		private Key(final Walk.TypeInfo type) {
+			flatten(type);
+		}
+
+		private void flatten(final Walk.TypeInfo type) {
+			this.type.add(type.type);
+			this.type.add(type.parameters.length);
+			for (final Walk.TypeInfo parameter : type.parameters)
+				flatten(parameter);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof Key))
+				return false;
+			return type.equals(((Key) other).type);
+		}
+
+		@Override
+		public int hashCode() {
+			return type.hashCode();
+		}
+	}
+
+	/**
+	 * The cached parts of a codec.  Neither this nor anything it creates may refer to the Reflections, which would keep
+	 * it from being dropped from the cache - the reader and generated codec use the grammar built here rather than
+	 * building their own.
+	 *
+	 * @param <T>
+	 */
+	private static class Compiled<T> {
+		private final Walk.TypeInfo rootType;
+		private final Grammar grammar;
+		private TypeReader<T> reader = null;
+		private RuntimeCodec<T> generated = null;
+		private TypeWriter.RootPlan plan = null;
+
+		private Compiled(final Reflections reflections, final Walk.TypeInfo rootType) {
+			this.rootType = rootType;
+			this.grammar = ReadTypeGrammar.buildGrammar(reflections, rootType);
+		}
+
+		private synchronized TypeReader<T> reader(final Reflections reflections) {
+			if (reader == null)
+				reader = new TypeReader<>(reflections, rootType, this::grammar);
+			return reader;
+		}
+
+		private Grammar grammar() {
+			return grammar;
+		}
+
+		private synchronized RuntimeCodec<T> generated(final Reflections reflections) {
+			if (generated == null)
+				generated = new RuntimeCodec<>(reflections, rootType, this::grammar);
+			return generated;
+		}
+
+		private synchronized TypeWriter.RootPlan plan() {
+			if (plan == null)
+				plan = TypeWriter.plan(rootType);
+			return plan;
+		}
+	}
+
+	/**
+	 * Reads and writes one root type.  The grammar is built when the type is first requested, the direct reader,
+	 * generated classes and write plan when first used.  Codecs for the same Reflections and type share these.
+	 *
+	 * @param <T>
+	 */
+	public static class Codec<T> {
+		private final Reflections reflections;
+		private final Compiled<T> compiled;
+
+		private Codec(final Reflections reflections, final Compiled<T> compiled) {
+			this.reflections = reflections;
+			this.compiled = compiled;
+		}
+
+		public Grammar grammar() {
+			return compiled.grammar;
+		}
+
+		/**
+		 * @return a direct reader for the type, see TypeReader
+		 */
+		public TypeReader<T> reader() {
+			return compiled.reader(reflections);
+		}
+
+		/**
+		 * @return a reader and writer with classes generated for the type, see RuntimeCodec
+		 */
+		public RuntimeCodec<T> generated() {
+			return compiled.generated(reflections);
+		}
+
+		/**
+		 * Like Luxem.parse, with the cached grammar.
+		 *
+		 * @param data
+		 * @return the stream of deserialized objects
+		 */
+		public Stream<T> parse(final String data) {
+			return parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+		}
+
+		/**
+		 * Like Luxem.parse, with the cached grammar.
+		 *
+		 * @param data
+		 * @return the stream of deserialized objects
+		 */
+		public Stream<T> parse(final InputStream data) {
+			return new Parse<T>().grammar(compiled.grammar).errorHistory(5).parseByElement(data);
+		}
+
+		/**
+		 * Like Luxem.parse, with the cached grammar.
+		 *
+		 * @param data
+		 * @return the stream of deserialized objects
+		 */
+		public Stream<T> parse(final Path data) {
+			return new Parse<T>().grammar(compiled.grammar).errorHistory(5).parseByElement(data);
+		}
+
+		/**
+		 * Write a value of the root type as a document, with the cached write plan.
+		 *
+		 * @param root
+		 * @param data
+		 */
+		public void write(final T root, final OutputStream data) {
+			new TypeWriter(data).write(compiled.plan(), root);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package com.zarbosoft.luxem.generate;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Construction and field access without reflection on each call.  Accessors are created once per class or field and
+ * shared.
+ * <p>
+ * Constructors of classes visible to luxem's class loader are bound with LambdaMetafactory, which makes the supplier
+ * a plain `new`.  Other constructors and all fields use method handles.  Non-public members are made accessible
+ * first, like Field.set would require.
+ * <p>
+ * The field handles are held by each Getter and Setter rather than in static final fields, so the JIT can't treat
+ * them as constants and inline the access.  A call costs about as much as Field.get or Field.set.  For direct field
+ * access use the generated codecs, CodecProcessor or RuntimeCodec.
+ */
+public final class Accessors {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private Accessors() {
+	}
+
+	public interface Getter {
+		Object get(Object target);
+	}
+
+	public interface Setter {
+		void set(Object target, Object value);
+	}
+
+	private static final ClassValue<Supplier<Object>> constructors = new ClassValue<Supplier<Object>>() {
+		@Override
+		protected Supplier<Object> computeValue(final Class<?> type) {
+			return createConstructor(type);
+		}
+	};
+
+	private static final ClassValue<Map<String, Getter>> getters = new ClassValue<Map<String, Getter>>() {
+		@Override
+		protected Map<String, Getter> computeValue(final Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private static final ClassValue<Map<String, Setter>> setters = new ClassValue<Map<String, Setter>>() {
+		@Override
+		protected Map<String, Setter> computeValue(final Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	/**
+	 * @param klass
+	 * @return a supplier of new instances from the constructor without parameters.  If there is no such constructor
+	 * the supplier throws.
+	 */
+	public static Supplier<Object> constructor(final Class<?> klass) {
+		return constructors.get(klass);
+	}
+
+	public static Getter getter(final Field field) {
+		return getters.get(field.getDeclaringClass()).computeIfAbsent(field.getName(), n -> createGetter(field));
+	}
+
+	public static Setter setter(final Field field) {
+		return setters.get(field.getDeclaringClass()).computeIfAbsent(field.getName(), n -> createSetter(field));
+	}
+
+	private static Supplier<Object> createConstructor(final Class<?> klass) {
+		final Constructor<?> constructor;
+		final MethodHandle handle;
+		try {
+			constructor = klass.getDeclaredConstructor();
+			if (Modifier.isAbstract(klass.getModifiers()))
+				throw new InstantiationException(klass.getName());
+			if (!constructor.isAccessible())
+				constructor.setAccessible(true);
+			handle = LOOKUP.unreflectConstructor(constructor);
+		} catch (final ReflectiveOperationException | RuntimeException e) {
+			return () -> {
+				throw new RuntimeException(e);
+			};
+		}
+		if (Modifier.isPublic(constructor.getModifiers()) && visible(klass)) {
+			try {
+				return (Supplier<Object>) LambdaMetafactory
+						.metafactory(LOOKUP,
+								"get",
+								MethodType.methodType(Supplier.class),
+								MethodType.methodType(Object.class),
+								handle,
+								MethodType.methodType(klass)
+						)
+						.getTarget()
+						.invokeExact();
+			} catch (final Throwable e) {
+				// Not accessible to the generated class, use the handle
+			}
+		}
+		final MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+		return () -> {
+			try {
+				return (Object) generic.invokeExact();
+			} catch (final Throwable e) {
+				throw rethrow(e);
+			}
+		};
+	}
+
+	/**
+	 * @param klass
+	 * @return true if klass and its enclosing classes are public and luxem's class loader resolves it, so a class
+	 * defined next to this one can refer to it
+	 */
+	private static boolean visible(final Class<?> klass) {
+		for (Class<?> at = klass; at != null; at = at.getEnclosingClass())
+			if (!Modifier.isPublic(at.getModifiers()))
+				return false;
+		try {
+			return Class.forName(klass.getName(), false, Accessors.class.getClassLoader()) == klass;
+		} catch (final ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	private static Getter createGetter(final Field field) {
+		final MethodHandle handle;
+		try {
+			if (!field.isAccessible())
+				field.setAccessible(true);
+			handle = LOOKUP.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+		} catch (final IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return target -> {
+			try {
+				return (Object) handle.invokeExact(target);
+			} catch (final Throwable e) {
+				throw rethrow(e);
+			}
+		};
+	}
+
+	private static Setter createSetter(final Field field) {
+		final MethodHandle handle;
+		try {
+			if (!field.isAccessible())
+				field.setAccessible(true);
+			handle = LOOKUP.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+		} catch (final IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return (target, value) -> {
+			try {
+				handle.invokeExact(target, value);
+			} catch (final Throwable e) {
+				throw rethrow(e);
+			}
+		};
+	}
+
+	private static RuntimeException rethrow(final Throwable e) {
+		if (e instanceof RuntimeException)
+			return (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		return new RuntimeException(e);
+	}
+}
@@ -0,0 +1,1129 @@
+package com.zarbosoft.luxem.generate;
+
+import com.zarbosoft.interface1.Configuration;
+import com.zarbosoft.luxem.primitive.PrimitiveArrays;
+import com.zarbosoft.luxem.read.ReadTypeGrammar;
+import com.zarbosoft.luxem.write.TypeWriter;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates a reader and a writer for each @Configuration class at compile time, with the same document format as
+ * ReadTypeGrammar and TypeWriter.
+ * <p>
+ * For a class `a.Outer.Inner` this generates `a.Outer_Inner_LuxemReader` and `a.Outer_Inner_LuxemWriter` with
+ * static `read` and `write` methods.  Fields are read and written directly and nested values call the generated
+ * methods for their types, so there's no reflection or dynamic dispatch.  Abstract classes and interfaces also get
+ * `_LuxemSubtypes`, listing the @Configuration subclasses their reader accepts and their writer has generated code
+ * for.  Subclasses are only found among the sources compiled together with the abstract type - the writer writes
+ * other subclasses with TypeWriter.
+ * <p>
+ * Classes that can't be handled are skipped with a note - for instance classes with non-public constructors,
+ * unsupported field types, or an abbreviated form that can't be read deterministically (see TypeReader).  Classes
+ * using a skipped class are also skipped.  Use TypeReader or ReadTypeGrammar for those.
+ * <p>
+ * Each concrete @Configuration class is also listed under its abstract supertypes in the SubtypeIndex resource, so
+ * the reflective readers can find subtypes without scanning the class path.
+ * <p>
+ * The processor isn't registered in the main jar.  Enable it with `-processor
+ * com.zarbosoft.luxem.generate.CodecProcessor`, or put the `processor` classifier jar, which registers it, in
+ * annotationProcessorPaths.
+ */
+public class CodecProcessor extends AbstractProcessor {
+	public static final String READER = "_LuxemReader";
+	public static final String WRITER = "_LuxemWriter";
+	public static final String SUBTYPES = "_LuxemSubtypes";
+
+	private enum Kind {
+		STRING,
+		INTEGER,
+		DOUBLE,
+		BOOLEAN,
+		ENUM,
+		LIST,
+		SET,
+		MAP,
+		PRIMITIVE_ARRAY,
+		ABSTRACT,
+		CONCRETE
+	}
+
+	/**
+	 * Names of sources already generated in earlier rounds.
+	 */
+	private final Set<String> generated = new HashSet<>();
+
+	/**
+	 * SubtypeIndex lines from all rounds, written when processing is over.
+	 */
+	private final Set<String> index = new TreeSet<>();
+
+	/**
+	 * Binary names of classes compiled in all rounds, whose lines in an existing index are replaced.
+	 */
+	private final Set<String> compiled = new HashSet<>();
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(Configuration.class.getName());
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment environment) {
+		if (!environment.processingOver())
+			new Round(environment).run();
+		else if (!index.isEmpty() || !compiled.isEmpty())
+			writeIndex();
+		return false;
+	}
+
+	/**
+	 * Write the index, keeping lines from an index left by an earlier compilation (like an incremental build) for
+	 * classes that weren't compiled this time.
+	 */
+	private void writeIndex() {
+		final Set<String> lines = new TreeSet<>(index);
+		try (
+				final BufferedReader reader = new BufferedReader(processingEnv
+						.getFiler()
+						.getResource(StandardLocation.CLASS_OUTPUT, "", SubtypeIndex.RESOURCE)
+						.openReader(true))
+		) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				final int split = line.indexOf(' ');
+				if (split != -1 && !compiled.contains(line.substring(split + 1).trim()))
+					lines.add(line);
+			}
+		} catch (final IOException e) {
+			// No earlier index
+		}
+		if (lines.isEmpty())
+			return;
+		try (
+				final Writer writer = processingEnv
+						.getFiler()
+						.createResource(StandardLocation.CLASS_OUTPUT, "", SubtypeIndex.RESOURCE)
+						.openWriter()
+		) {
+			for (final String line : lines)
+				writer.write(String.format("%s\n", line));
+		} catch (final IOException e) {
+			processingEnv
+					.getMessager()
+					.printMessage(Diagnostic.Kind.ERROR,
+							String.format("Failed to write %s: %s", SubtypeIndex.RESOURCE, e.getMessage())
+					);
+		}
+	}
+
+	/**
+	 * @param element
+	 * @param suffix
+	 * @return the qualified name of the generated class for a type
+	 */
+	static String generatedName(final TypeElement element, final String suffix) {
+		final String packageName = packageOf(element);
+		return (packageName.isEmpty() ? "" : packageName + ".") + flatName(element) + suffix;
+	}
+
+	private static String packageOf(final Element element) {
+		Element at = element;
+		while (!(at instanceof PackageElement))
+			at = at.getEnclosingElement();
+		return ((PackageElement) at).getQualifiedName().toString();
+	}
+
+	/**
+	 * @return the names of the type and the types enclosing it joined with underscores
+	 */
+	private static String flatName(final TypeElement element) {
+		final Element enclosing = element.getEnclosingElement();
+		if (enclosing instanceof TypeElement)
+			return flatName((TypeElement) enclosing) + "_" + element.getSimpleName();
+		return element.getSimpleName().toString();
+	}
+
+	/**
+	 * Same as Walk.decideName
+	 */
+	private static String decideName(final Element element) {
+		final Configuration annotation = element.getAnnotation(Configuration.class);
+		if (annotation == null || annotation.name().isEmpty())
+			return element.getSimpleName().toString();
+		return annotation.name();
+	}
+
+	/**
+	 * @param value
+	 * @return Java source for a string literal of the value
+	 */
+	static String literal(final String value) {
+		final StringBuilder out = new StringBuilder("\"");
+		for (final char c : value.toCharArray()) {
+			switch (c) {
+				case '"':
+					out.append("\\\"");
+					break;
+				case '\\':
+					out.append("\\\\");
+					break;
+				default:
+					if (c < 0x20 || c > 0x7E)
+						out.append(String.format("\\u%04x", (int) c));
+					else
+						out.append(c);
+			}
+		}
+		return out.append('"').toString();
+	}
+
+	private static class FieldInfo {
+		final VariableElement element;
+		final String name;
+		final boolean required;
+
+		private FieldInfo(final VariableElement element, final String name, final boolean required) {
+			this.element = element;
+			this.name = name;
+			this.required = required;
+		}
+	}
+
+	private static class Info {
+		final TypeElement element;
+		final boolean isAbstract;
+		final List<FieldInfo> fields = new ArrayList<>();
+		final List<TypeElement> subtypes = new ArrayList<>();
+		final Set<TypeElement> dependencies = new LinkedHashSet<>();
+		FieldInfo abbreviation = null;
+		boolean accessible = true;
+		String readerProblem = null;
+		String writerProblem = null;
+
+		private Info(final TypeElement element, final boolean isAbstract) {
+			this.element = element;
+			this.isAbstract = isAbstract;
+		}
+
+		void problem(final String problem) {
+			if (readerProblem == null)
+				readerProblem = problem;
+			if (writerProblem == null)
+				writerProblem = problem;
+		}
+	}
+
+	private class Round {
+		private final Set<TypeElement> sources = new LinkedHashSet<>();
+		private final Map<TypeElement, Info> infos = new LinkedHashMap<>();
+		private final Deque<TypeElement> queue = new ArrayDeque<>();
+
+		private Round(final RoundEnvironment environment) {
+			for (final Element element : environment.getRootElements())
+				collect(element);
+			for (final Element element : environment.getElementsAnnotatedWith(Configuration.class))
+				if (element.getKind() == ElementKind.CLASS || element.getKind() == ElementKind.INTERFACE)
+					queue.add((TypeElement) element);
+		}
+
+		private void collect(final Element element) {
+			if (!(element instanceof TypeElement))
+				return;
+			sources.add((TypeElement) element);
+			compiled.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+			for (final Element child : element.getEnclosedElements())
+				collect(child);
+		}
+
+		void run() {
+			for (final TypeElement source : sources)
+				if (source.getKind() == ElementKind.CLASS &&
+						!source.getModifiers().contains(Modifier.ABSTRACT) &&
+						source.getAnnotation(Configuration.class) != null)
+					indexSupertypes(source, source.asType());
+			while (!queue.isEmpty()) {
+				final TypeElement element = queue.removeFirst();
+				if (!infos.containsKey(element))
+					infos.put(element, analyze(element));
+			}
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (final Info info : infos.values())
+					for (final TypeElement dependency : info.dependencies) {
+						if (info.readerProblem == null && !available(dependency, READER)) {
+							info.readerProblem = String.format("%s has no generated reader", dependency.getQualifiedName());
+							changed = true;
+						}
+						if (info.writerProblem == null && !available(dependency, WRITER)) {
+							info.writerProblem = String.format("%s has no generated writer", dependency.getQualifiedName());
+							changed = true;
+						}
+					}
+			}
+			for (final Info info : infos.values()) {
+				if (info.readerProblem == null)
+					emit(info, READER, info.isAbstract ? abstractReader(info) : concreteReader(info));
+				else
+					note(info, "reader", info.readerProblem);
+				if (info.writerProblem == null)
+					emit(info, WRITER, info.isAbstract ? abstractWriter(info) : concreteWriter(info));
+				else
+					note(info, "writer", info.writerProblem);
+				if (info.isAbstract && info.accessible)
+					emit(info, SUBTYPES, subtypes(info));
+			}
+		}
+
+		private void indexSupertypes(final TypeElement subtype, final TypeMirror type) {
+			for (final TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+				if (supertype.getKind() != TypeKind.DECLARED)
+					continue;
+				final TypeElement element = element(supertype);
+				if (element.getKind() == ElementKind.INTERFACE || element.getModifiers().contains(Modifier.ABSTRACT))
+					index.add(String.format("%s %s",
+							processingEnv.getElementUtils().getBinaryName(element),
+							processingEnv.getElementUtils().getBinaryName(subtype)
+					));
+				indexSupertypes(subtype, supertype);
+			}
+		}
+
+		private boolean available(final TypeElement element, final String suffix) {
+			final Info info = infos.get(element);
+			if (info != null)
+				return (suffix.equals(READER) ? info.readerProblem : info.writerProblem) == null;
+			return processingEnv.getElementUtils().getTypeElement(generatedName(element, suffix)) != null;
+		}
+
+		private void note(final Info info, final String what, final String problem) {
+			if (info.element.getAnnotation(Configuration.class) == null)
+				return;
+			processingEnv
+					.getMessager()
+					.printMessage(Diagnostic.Kind.NOTE,
+							String.format("No luxem %s generated: %s", what, problem),
+							info.element
+					);
+		}
+
+		private void emit(final Info info, final String suffix, final String source) {
+			final String name = generatedName(info.element, suffix);
+			if (!generated.add(name))
+				return;
+			try (
+					final Writer writer = processingEnv
+							.getFiler()
+							.createSourceFile(name, info.element)
+							.openWriter()
+			) {
+				writer.write(source);
+			} catch (final IOException e) {
+				processingEnv
+						.getMessager()
+						.printMessage(Diagnostic.Kind.ERROR,
+								String.format("Failed to write %s: %s", name, e.getMessage()),
+								info.element
+						);
+			}
+		}
+
+		// Analysis
+		// ====================================================================
+
+		private Info analyze(final TypeElement element) {
+			final Info info = new Info(element,
+					element.getKind() == ElementKind.INTERFACE || element.getModifiers().contains(Modifier.ABSTRACT)
+			);
+			final String access = access(element, packageOf(element));
+			if (access != null) {
+				info.accessible = false;
+				info.problem(access);
+				return info;
+			}
+			if (!element.getTypeParameters().isEmpty()) {
+				info.problem("it has type parameters");
+				return info;
+			}
+			if (info.isAbstract) {
+				for (final TypeElement source : sources)
+					if (source.getKind() == ElementKind.CLASS &&
+							!source.getModifiers().contains(Modifier.ABSTRACT) &&
+							source.getAnnotation(Configuration.class) != null &&
+							!source.equals(element) &&
+							isSubtype(source.asType(), element.asType()))
+						info.subtypes.add(source);
+				info.subtypes.sort(Comparator.comparing(s -> processingEnv
+						.getElementUtils()
+						.getBinaryName(s)
+						.toString()));
+				final Set<String> names = new HashSet<>();
+				for (final TypeElement subtype : info.subtypes) {
+					if (!names.add(decideName(subtype).toLowerCase()) && info.readerProblem == null)
+						info.readerProblem = String.format("subtypes share the name [%s]", decideName(subtype));
+					info.dependencies.add(subtype);
+					queue.add(subtype);
+				}
+				return info;
+			}
+			for (TypeElement at = element; at != null; at = superclass(at))
+				for (final VariableElement field : ElementFilter.fieldsIn(at.getEnclosedElements())) {
+					final Configuration annotation = field.getAnnotation(Configuration.class);
+					if (annotation == null ||
+							!field.getModifiers().contains(Modifier.PUBLIC) ||
+							field.getModifiers().contains(Modifier.STATIC))
+						continue;
+					final FieldInfo fieldInfo = new FieldInfo(field,
+							decideName(field),
+							!isSubtype(field.asType(), "java.util.Collection") &&
+									!isSubtype(field.asType(), "java.util.Map") &&
+									primitiveArray(field.asType()) == null &&
+									!annotation.optional()
+					);
+					info.fields.add(fieldInfo);
+					final String problem = check(field.asType(), info);
+					if (problem != null)
+						info.problem(String.format("field %s: %s", field.getSimpleName(), problem));
+					if (field.getModifiers().contains(Modifier.FINAL) && info.readerProblem == null)
+						info.readerProblem = String.format("field %s is final", field.getSimpleName());
+				}
+			final Set<String> names = new HashSet<>();
+			for (final FieldInfo field : info.fields)
+				if (!names.add(field.name) && info.readerProblem == null)
+					info.readerProblem = String.format("fields share the name [%s]", field.name);
+			if (info.readerProblem == null && !constructible(element))
+				info.readerProblem = "it has no non-private constructor without parameters";
+
+			final boolean[] required = new boolean[info.fields.size()];
+			for (int i = 0; i < info.fields.size(); ++i)
+				required[i] = info.fields.get(i).required;
+			final int abbreviated = ReadTypeGrammar.abbreviatedField(required);
+			if (abbreviated != -1)
+				info.abbreviation = info.fields.get(abbreviated);
+			if (info.abbreviation != null && info.readerProblem == null) {
+				final Kind kind = kind(info.abbreviation.element.asType());
+				if (kind == Kind.MAP || kind == Kind.CONCRETE)
+					info.readerProblem = String.format("its abbreviated form (field %s) could also start with a record",
+							info.abbreviation.element.getSimpleName()
+					);
+			}
+			return info;
+		}
+
+		/**
+		 * @param type
+		 * @param info the class being analyzed, to record the types it uses
+		 * @return a description of why the type can't be read and written, or null
+		 */
+		private String check(final TypeMirror type, final Info info) {
+			final Kind kind = kind(type);
+			if (kind == null)
+				return String.format("unsupported type %s", type);
+			final String packageName = packageOf(info.element);
+			switch (kind) {
+				case ENUM: {
+					final TypeElement element = element(type);
+					final String access = access(element, packageName);
+					if (access != null)
+						return access;
+					final Set<String> names = new HashSet<>();
+					for (final VariableElement constant : enumConstants(element))
+						if (!names.add(decideName(constant)))
+							return String.format("%s values share the name [%s]", type, decideName(constant));
+					return null;
+				}
+				case LIST:
+				case SET:
+				case MAP: {
+					if (!isSubtype(container(kind), type))
+						return String.format("%s can't hold a %s", type, container(kind));
+					final List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+					if (arguments.size() != (kind == Kind.MAP ? 2 : 1))
+						return String.format("unsupported type %s", type);
+					if (kind == Kind.MAP && kind(arguments.get(0)) != Kind.STRING)
+						return String.format("%s keys aren't strings", type);
+					return check(arguments.get(arguments.size() - 1), info);
+				}
+				case ABSTRACT:
+				case CONCRETE: {
+					final TypeElement element = element(type);
+					if (!element.getTypeParameters().isEmpty())
+						return String.format("%s has type parameters", type);
+					final String access = access(element, packageName);
+					if (access != null)
+						return access;
+					info.dependencies.add(element);
+					if (sources.contains(element))
+						queue.add(element);
+					return null;
+				}
+				default:
+					return null;
+			}
+		}
+
+		/**
+		 * @param element
+		 * @param from    the package the type is used from
+		 * @return a description of why the type can't be used, or null
+		 */
+		private String access(final TypeElement element, final String from) {
+			for (Element at = element; at instanceof TypeElement; at = at.getEnclosingElement()) {
+				final Set<Modifier> modifiers = at.getModifiers();
+				if (modifiers.contains(Modifier.PRIVATE))
+					return String.format("%s is private", at);
+				if (!modifiers.contains(Modifier.PUBLIC) && !packageOf(at).equals(from))
+					return String.format("%s isn't public", at);
+				if (at.getKind() == ElementKind.CLASS &&
+						at.getEnclosingElement() instanceof TypeElement &&
+						!modifiers.contains(Modifier.STATIC))
+					return String.format("%s isn't static", at);
+			}
+			return null;
+		}
+
+		private boolean constructible(final TypeElement element) {
+			final List<ExecutableElement> constructors = ElementFilter.constructorsIn(element.getEnclosedElements());
+			for (final ExecutableElement constructor : constructors)
+				if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE))
+					return true;
+			return false;
+		}
+
+		// Readers
+		// ====================================================================
+
+		private String concreteReader(final Info info) {
+			final Source source = new Source(info, READER);
+			final String type = info.element.getQualifiedName().toString();
+			final String name = literal(info.element.getSimpleName().toString());
+			final String fields = source.constant("Names",
+					String.format("new Names(%s)",
+							info.fields.stream().map(field -> literal(field.name)).collect(Collectors.joining(", "))
+					)
+			);
+			final Code code = source.body;
+			readerEntryPoints(source, type);
+			code.blank();
+			code.line("public static %s read(final Reading reading) {", type).indent();
+			code.line("final %s out = new %s();", type, type);
+			code.line("if (reading.token() != Token.RECORD_OPEN) {").indent();
+			if (info.abbreviation == null)
+				code.line("throw reading.unexpected(%s);",
+						literal(String.format("record for %s", info.element.getSimpleName()))
+				);
+			else {
+				code.line("out.%s = %s;",
+						info.abbreviation.element.getSimpleName(),
+						read(source, info.abbreviation.element.asType())
+				);
+				code.line("return out;");
+			}
+			code.dedent().line("}");
+			for (int i = 0; i < info.fields.size(); ++i)
+				code.line("boolean seen%s = false;", i);
+			code.line("while (reading.next() != Token.RECORD_CLOSE) {").indent();
+			code.line("switch (reading.lookup(%s)) {", fields).indent();
+			for (int i = 0; i < info.fields.size(); ++i) {
+				final FieldInfo field = info.fields.get(i);
+				code.line("case %s:", i).indent();
+				code.line("if (seen%s)", i);
+				code.indent().line("throw reading.duplicateField(%s, %s);", literal(field.name), name).dedent();
+				code.line("seen%s = true;", i);
+				code.line("reading.key(%s);", literal(field.name));
+				code.line("reading.next();");
+				code.line("out.%s = %s;", field.element.getSimpleName(), read(source, field.element.asType()));
+				code.line("break;");
+				code.dedent();
+			}
+			code.line("default:").indent().line("throw reading.unknownField(%s);", name).dedent();
+			code.dedent().line("}");
+			code.dedent().line("}");
+			for (int i = 0; i < info.fields.size(); ++i) {
+				final FieldInfo field = info.fields.get(i);
+				if (!field.required)
+					continue;
+				code.line("if (!seen%s)", i);
+				code.indent().line("throw reading.missingField(%s, %s);", literal(field.name), name).dedent();
+			}
+			code.line("return out;");
+			code.dedent().line("}");
+			return source.render(String.format("Reads {@link %s}.", type));
+		}
+
+		private String abstractReader(final Info info) {
+			final Source source = new Source(info, READER);
+			final String type = info.element.getQualifiedName().toString();
+			final String types = source.constant("Names",
+					String.format("new Names(%s)",
+							info.subtypes
+									.stream()
+									.map(subtype -> literal(decideName(subtype).toLowerCase()))
+									.collect(Collectors.joining(", "))
+					)
+			);
+			final Code code = source.body;
+			readerEntryPoints(source, type);
+			code.blank();
+			code.line("public static %s read(final Reading reading) {", type).indent();
+			code.line("reading.expect(Token.TYPE, %s);",
+					literal(String.format("type of %s", info.element.getSimpleName()))
+			);
+			code.line("switch (reading.lookup(%s)) {", types).indent();
+			for (int i = 0; i < info.subtypes.size(); ++i) {
+				code.line("case %s:", i).indent();
+				code.line("reading.next();");
+				code.line("return %s.read(reading);", generatedName(info.subtypes.get(i), READER));
+				code.dedent();
+			}
+			code.line("default:").indent();
+			code.line("throw reading.unknownType(%s);", literal(info.element.getSimpleName().toString()));
+			code.dedent();
+			code.dedent().line("}");
+			code.dedent().line("}");
+			return source.render(String.format("Reads {@link %s} as one of the subtypes in %s.",
+					type,
+					flatName(info.element) + SUBTYPES
+			));
+		}
+
+		private void readerEntryPoints(final Source source, final String type) {
+			final String self = flatName(source.info.element) + READER;
+			for (final String input : Arrays.asList("String", "java.io.InputStream", "java.nio.file.Path")) {
+				source.body.blank();
+				source.body.line("public static java.util.stream.Stream<%s> read(final %s data) {", type, input).indent();
+				source.body.line("return Reading.stream(data, %s::read);", self);
+				source.body.dedent().line("}");
+			}
+		}
+
+		/**
+		 * @param source
+		 * @param type
+		 * @return an expression reading a value of type from `reading`, which may use helpers added to source
+		 */
+		private String read(final Source source, final TypeMirror type) {
+			final Kind kind = kind(type);
+			switch (kind) {
+				case STRING:
+					return "reading.string()";
+				case INTEGER:
+					return "reading.parseInt()";
+				case DOUBLE:
+					return "reading.parseDouble()";
+				case BOOLEAN:
+					return "reading.parseBoolean()";
+				case ENUM: {
+					final TypeElement element = element(type);
+					final List<VariableElement> constants = enumConstants(element);
+					final String names = source.constant("Names",
+							String.format("new Names(%s)",
+									constants
+											.stream()
+											.map(constant -> literal(decideName(constant)))
+											.collect(Collectors.joining(", "))
+							)
+					);
+					final String values = source.constant(String.format("%s[]", element.getQualifiedName()),
+							String.format("{%s}",
+									constants
+											.stream()
+											.map(constant -> String.format("%s.%s",
+													element.getQualifiedName(),
+													constant.getSimpleName()
+											))
+											.collect(Collectors.joining(", "))
+							)
+					);
+					return String.format("%s[reading.value(%s)]", values, names);
+				}
+				case LIST:
+				case SET:
+				case MAP: {
+					final String existing = source.readers.get(type.toString());
+					if (existing != null)
+						return String.format("%s(reading)", existing);
+					final List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+					final String inner = read(source, arguments.get(arguments.size() - 1));
+					final String method = source.name("read");
+					source.readers.put(type.toString(), method);
+					final Code code = source.helpers;
+					code.blank();
+					code.line("private static %s %s(final Reading reading) {", type, method).indent();
+					if (kind == Kind.MAP) {
+						code.line("reading.expect(Token.RECORD_OPEN, \"record\");");
+						code.line("final %s out = new %s<>();", type, container(kind));
+						code.line("while (reading.next() != Token.RECORD_CLOSE) {").indent();
+						code.line("final String key = reading.text();");
+						code.line("reading.key(key);");
+						code.line("reading.next();");
+						code.line("out.put(key, %s);", inner);
+						code.dedent().line("}");
+					} else {
+						code.line("reading.expect(Token.ARRAY_OPEN, \"array\");");
+						code.line("final %s out = new %s<>();", type, container(kind));
+						code.line("while (reading.next() != Token.ARRAY_CLOSE)");
+						code.indent().line("out.add(%s);", inner).dedent();
+					}
+					code.line("return out;");
+					code.dedent().line("}");
+					return String.format("%s(reading)", method);
+				}
+				case PRIMITIVE_ARRAY: {
+					final String existing = source.readers.get(type.toString());
+					if (existing != null)
+						return String.format("%s(reading)", existing);
+					final PrimitiveArrays primitive = primitiveArray(type);
+					final String list = primitive.list.getName();
+					final String element = primitive.array.getComponentType().getName();
+					final String method = source.name("read");
+					source.readers.put(type.toString(), method);
+					final Code code = source.helpers;
+					code.blank();
+					code.line("private static %s %s(final Reading reading) {", type, method).indent();
+					code.line("reading.expect(Token.ARRAY_OPEN, \"array\");");
+					code.line("final %s out = new %s();", list, list);
+					code.line("while (reading.next() != Token.ARRAY_CLOSE)");
+					code
+							.indent()
+							.line("out.add(reading.parse%s%s());",
+									Character.toUpperCase(element.charAt(0)),
+									element.substring(1)
+							)
+							.dedent();
+					code.line(type.getKind() == TypeKind.ARRAY ? "return out.toArray();" : "return out;");
+					code.dedent().line("}");
+					return String.format("%s(reading)", method);
+				}
+				default:
+					return String.format("%s.read(reading)", generatedName(element(type), READER));
+			}
+		}
+
+		// Writers
+		// ====================================================================
+
+		private String concreteWriter(final Info info) {
+			final Source source = new Source(info, WRITER);
+			final String type = info.element.getQualifiedName().toString();
+			final Code code = source.body;
+			writerEntryPoint(source, type);
+			code.blank();
+			code.line("public static void write(final %s value, final RawWriter writer) throws java.io.IOException {",
+					type
+			).indent();
+			code.line("writer.recordBegin();");
+			for (final FieldInfo field : info.fields) {
+				final String value = String.format("value.%s", field.element.getSimpleName());
+				final boolean nullable = !field.element.asType().getKind().isPrimitive();
+				if (nullable)
+					code.line("if (%s != null) {", value).indent();
+				code.line("writer.key(%s);", source.bytes(field.name));
+				write(source, code, field.element.asType(), value, 0);
+				if (nullable)
+					code.dedent().line("}");
+			}
+			code.line("writer.recordEnd();");
+			code.dedent().line("}");
+			return source.render(String.format("Writes {@link %s}.", type));
+		}
+
+		private String abstractWriter(final Info info) {
+			final Source source = new Source(info, WRITER);
+			final String type = info.element.getQualifiedName().toString();
+			final Code code = source.body;
+			writerEntryPoint(source, type);
+			code.blank();
+			code.line("public static void write(final %s value, final RawWriter writer) throws java.io.IOException {",
+					type
+			).indent();
+			code.line("final Class<?> type = value.getClass();");
+			for (final TypeElement subtype : info.subtypes) {
+				code.line("if (type == %s.class) {", subtype.getQualifiedName()).indent();
+				code.line("writer.type(%s);", source.bytes(decideName(subtype)));
+				code.line("%s.write((%s) value, writer);", generatedName(subtype, WRITER), subtype.getQualifiedName());
+				code.line("return;");
+				code.dedent().line("}");
+			}
+			code.line("%s.writeTyped(writer, value);", TypeWriter.class.getName());
+			code.dedent().line("}");
+			return source.render(String.format(
+					"Writes {@link %s} with the generated writer for one of the subtypes in %s, or TypeWriter for others.",
+					type,
+					flatName(info.element) + SUBTYPES
+			));
+		}
+
+		private void writerEntryPoint(final Source source, final String type) {
+			source.body.blank();
+			source.body.line("public static void write(final %s value, final java.io.OutputStream stream) {", type).indent();
+			source.body.line("uncheck(() -> write(value, new RawWriter(stream)));");
+			source.body.dedent().line("}");
+		}
+
+		/**
+		 * Add statements writing value to code.
+		 *
+		 * @param source
+		 * @param code
+		 * @param type
+		 * @param value an expression of type
+		 * @param depth nesting level, for variable names
+		 */
+		private void write(
+				final Source source, final Code code, final TypeMirror type, final String value, final int depth
+		) {
+			final Kind kind = kind(type);
+			switch (kind) {
+				case STRING:
+					code.line("writer.quotedPrimitive(%s.getBytes(StandardCharsets.UTF_8));", value);
+					break;
+				case INTEGER:
+				case DOUBLE:
+				case BOOLEAN:
+					code.line("writer.quotedPrimitive(String.valueOf(%s).getBytes(StandardCharsets.UTF_8));", value);
+					break;
+				case ENUM: {
+					final String names = source.constant("byte[][]",
+							String.format("{%s}",
+									enumConstants(element(type))
+											.stream()
+											.map(constant -> String.format("%s.getBytes(StandardCharsets.UTF_8)",
+													literal(decideName(constant))
+											))
+											.collect(Collectors.joining(", "))
+							)
+					);
+					code.line("writer.quotedPrimitive(%s[%s.ordinal()]);", names, value);
+					break;
+				}
+				case LIST:
+				case SET: {
+					final TypeMirror inner = ((DeclaredType) type).getTypeArguments().get(0);
+					final String element = String.format("element%s", depth);
+					code.line("writer.arrayBegin();");
+					code.line("for (final %s %s : %s) {", inner, element, value).indent();
+					write(source, code, inner, element, depth + 1);
+					code.dedent().line("}");
+					code.line("writer.arrayEnd();");
+					break;
+				}
+				case MAP: {
+					final TypeMirror inner = ((DeclaredType) type).getTypeArguments().get(1);
+					final String entry = String.format("entry%s", depth);
+					code.line("writer.recordBegin();");
+					code.line("for (final java.util.Map.Entry<String, %s> %s : %s.entrySet()) {", inner, entry, value)
+							.indent();
+					code.line("writer.key(%s.getKey().getBytes(StandardCharsets.UTF_8));", entry);
+					write(source, code, inner, String.format("%s.getValue()", entry), depth + 1);
+					code.dedent().line("}");
+					code.line("writer.recordEnd();");
+					break;
+				}
+				case PRIMITIVE_ARRAY: {
+					final String elements = String.format("elements%s", depth);
+					final String index = String.format("index%s", depth);
+					code.line("writer.arrayBegin();");
+					code.line("final %s %s = %s;", type, elements, value);
+					if (type.getKind() == TypeKind.ARRAY) {
+						code.line("for (int %s = 0; %s < %s.length; ++%s)", index, index, elements, index);
+						code.indent().line("writer.quotedPrimitive(%s[%s]);",
+								elements,
+								index
+						).dedent();
+					} else {
+						code.line("for (int %s = 0; %s < %s.size(); ++%s)", index, index, elements, index);
+						code.indent().line("writer.quotedPrimitive(%s.get(%s));",
+								elements,
+								index
+						).dedent();
+					}
+					code.line("writer.arrayEnd();");
+					break;
+				}
+				default:
+					code.line("%s.write(%s, writer);", generatedName(element(type), WRITER), value);
+			}
+		}
+
+		// Subtype index
+		// ====================================================================
+
+		private String subtypes(final Info info) {
+			final Source source = new Source(info, SUBTYPES);
+			final String type = info.element.getQualifiedName().toString();
+			source.constants.line("public static final java.util.List<Class<? extends %s>> TYPES =", type);
+			source.constants
+					.indent()
+					.line("java.util.Collections.unmodifiableList(java.util.Arrays.asList(%s));",
+							info.subtypes
+									.stream()
+									.map(subtype -> String.format("%s.class", subtype.getQualifiedName()))
+									.collect(Collectors.joining(", "))
+					)
+					.dedent();
+			return source.render(String.format("The @Configuration subtypes of {@link %s} compiled with it.", type));
+		}
+
+		// Types
+		// ====================================================================
+
+		private Kind kind(final TypeMirror type) {
+			switch (type.getKind()) {
+				case INT:
+					return Kind.INTEGER;
+				case DOUBLE:
+					return Kind.DOUBLE;
+				case BOOLEAN:
+					return Kind.BOOLEAN;
+				case ARRAY:
+					return primitiveArray(type) == null ? null : Kind.PRIMITIVE_ARRAY;
+				case DECLARED:
+					break;
+				default:
+					return null;
+			}
+			if (primitiveArray(type) != null)
+				return Kind.PRIMITIVE_ARRAY;
+			final TypeElement element = element(type);
+			switch (element.getQualifiedName().toString()) {
+				case "java.lang.String":
+					return Kind.STRING;
+				case "java.lang.Integer":
+					return Kind.INTEGER;
+				case "java.lang.Double":
+					return Kind.DOUBLE;
+				case "java.lang.Boolean":
+					return Kind.BOOLEAN;
+			}
+			if (element.getKind() == ElementKind.ENUM)
+				return Kind.ENUM;
+			if (isSubtype(type, "java.util.List"))
+				return Kind.LIST;
+			if (isSubtype(type, "java.util.Set"))
+				return Kind.SET;
+			if (isSubtype(type, "java.util.Map"))
+				return Kind.MAP;
+			if (element.getKind() == ElementKind.INTERFACE || element.getModifiers().contains(Modifier.ABSTRACT))
+				return Kind.ABSTRACT;
+			if (element.getKind() != ElementKind.CLASS)
+				return null;
+			return Kind.CONCRETE;
+		}
+
+		/**
+		 * @param type
+		 * @return the kind of elements if type is a primitive array or one of the primitive lists, otherwise null
+		 */
+		private PrimitiveArrays primitiveArray(final TypeMirror type) {
+			final String name;
+			if (type.getKind() == TypeKind.ARRAY)
+				name = type.toString();
+			else if (type.getKind() == TypeKind.DECLARED)
+				name = element(type).getQualifiedName().toString();
+			else
+				return null;
+			for (final PrimitiveArrays value : PrimitiveArrays.values())
+				if (value.array.getCanonicalName().equals(name) || value.list.getName().equals(name))
+					return value;
+			return null;
+		}
+
+		private String container(final Kind kind) {
+			switch (kind) {
+				case LIST:
+					return "java.util.ArrayList";
+				case SET:
+					return "java.util.HashSet";
+				default:
+					return "java.util.HashMap";
+			}
+		}
+
+		private TypeElement element(final TypeMirror type) {
+			return (TypeElement) ((DeclaredType) type).asElement();
+		}
+
+		private TypeElement superclass(final TypeElement element) {
+			final TypeMirror superclass = element.getSuperclass();
+			if (superclass.getKind() != TypeKind.DECLARED)
+				return null;
+			return element(superclass);
+		}
+
+		private List<VariableElement> enumConstants(final TypeElement element) {
+			return ElementFilter
+					.fieldsIn(element.getEnclosedElements())
+					.stream()
+					.filter(field -> field.getKind() == ElementKind.ENUM_CONSTANT)
+					.collect(Collectors.toList());
+		}
+
+		private boolean isSubtype(final TypeMirror type, final TypeMirror parent) {
+			return processingEnv
+					.getTypeUtils()
+					.isAssignable(processingEnv.getTypeUtils().erasure(type),
+							processingEnv.getTypeUtils().erasure(parent)
+					);
+		}
+
+		private boolean isSubtype(final TypeMirror type, final String parent) {
+			return isSubtype(type, processingEnv.getElementUtils().getTypeElement(parent).asType());
+		}
+
+		private boolean isSubtype(final String type, final TypeMirror parent) {
+			return isSubtype(processingEnv.getElementUtils().getTypeElement(type).asType(), parent);
+		}
+	}
+
+	/**
+	 * A generated class.  Readers and writers add shared values to the constants and helper methods to the helpers
+	 * as they build the body.
+	 */
+	private static class Source {
+		final Info info;
+		final String suffix;
+		final Code constants = new Code().indent();
+		final Code body = new Code().indent();
+		final Code helpers = new Code().indent();
+		/**
+		 * Helper method names by the type they read.
+		 */
+		final Map<String, String> readers = new HashMap<>();
+		private final Map<String, String> constantNames = new HashMap<>();
+		private int count = 0;
+
+		private Source(final Info info, final String suffix) {
+			this.info = info;
+			this.suffix = suffix;
+		}
+
+		/**
+		 * @param prefix
+		 * @return a name unique in the class
+		 */
+		String name(final String prefix) {
+			return String.format("%s%s", prefix, count++);
+		}
+
+		/**
+		 * @param type
+		 * @param value
+		 * @return the name of a new constant
+		 */
+		String constant(final String type, final String value) {
+			final String key = String.format("%s %s", type, value);
+			final String existing = constantNames.get(key);
+			if (existing != null)
+				return existing;
+			final String name = name("CONSTANT");
+			constants.line("private static final %s %s = %s;", type, name, value);
+			constantNames.put(key, name);
+			return name;
+		}
+
+		/**
+		 * @param value
+		 * @return the name of a new constant with the UTF-8 bytes of value
+		 */
+		String bytes(final String value) {
+			return constant("byte[]", String.format("%s.getBytes(StandardCharsets.UTF_8)", literal(value)));
+		}
+
+		String render(final String description) {
+			final String packageName = packageOf(info.element);
+			final String name = flatName(info.element) + suffix;
+			final Code out = new Code();
+			if (!packageName.isEmpty())
+				out.line("package %s;", packageName).blank();
+			if (suffix.equals(READER)) {
+				out.line("import com.zarbosoft.luxem.generate.Names;");
+				out.line("import com.zarbosoft.luxem.generate.Reading;");
+				out.line("import com.zarbosoft.luxem.read.LuxemPullParser.Token;");
+			} else if (suffix.equals(WRITER)) {
+				out.line("import com.zarbosoft.luxem.write.RawWriter;");
+				out.blank();
+				out.line("import java.nio.charset.StandardCharsets;");
+				out.blank();
+				out.line("import static com.zarbosoft.rendaw.common.Common.uncheck;");
+			}
+			if (!suffix.equals(SUBTYPES))
+				out.blank();
+			out.line("/**");
+			out.line(" * %s", description);
+			out.line(" * Generated by %s.", CodecProcessor.class.getName());
+			out.line(" */");
+			out.line("public final class %s {", name);
+			out.append(constants);
+			if (!constants.isEmpty())
+				out.blank();
+			out.indent().line("private %s() {", name).line("}").dedent();
+			out.append(body);
+			out.append(helpers);
+			out.line("}");
+			return out.toString();
+		}
+	}
+
+	private static class Code {
+		private final StringBuilder out = new StringBuilder();
+		private int indent = 0;
+
+		Code indent() {
+			indent += 1;
+			return this;
+		}
+
+		Code dedent() {
+			indent -= 1;
+			return this;
+		}
+
+		Code line(final String format, final Object... args) {
+			for (int i = 0; i < indent; ++i)
+				out.append('\t');
+			out.append(String.format(format, args)).append('\n');
+			return this;
+		}
+
+		Code blank() {
+			out.append('\n');
+			return this;
+		}
+
+		Code append(final Code other) {
+			out.append(other.out);
+			return this;
+		}
+
+		boolean isEmpty() {
+			return out.length() == 0;
+		}
+
+		@Override
+		public String toString() {
+			return out.toString();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.zarbosoft.luxem.generate;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed lookup from undecoded UTF-8 names to their position in the constructor arguments, used by generated readers
+ * to switch on field, enum value, and type names without decoding them.
+ */
+public final class Names {
+	private final byte[][] keys;
+	private final int[] indexes;
+
+	public Names(final String... names) {
+		int capacity = 4;
+		while (capacity < names.length * 2)
+			capacity *= 2;
+		keys = new byte[capacity][];
+		indexes = new int[capacity];
+		for (int i = 0; i < names.length; ++i) {
+			final byte[] bytes = names[i].getBytes(StandardCharsets.UTF_8);
+			final int slot = slot(bytes, 0, bytes.length);
+			if (keys[slot] != null)
+				throw new IllegalArgumentException(String.format("Duplicate name [%s]", names[i]));
+			keys[slot] = bytes;
+			indexes[slot] = i;
+		}
+	}
+
+	/**
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @return the position of the name, or -1 if it isn't one of the names
+	 */
+	public int get(final byte[] buffer, final int offset, final int length) {
+		final int slot = slot(buffer, offset, length);
+		return keys[slot] == null ? -1 : indexes[slot];
+	}
+
+	/**
+	 * @return the slot holding the key, or the empty slot where it would go
+	 */
+	private int slot(final byte[] buffer, final int offset, final int length) {
+		int hash = 0;
+		for (int i = 0; i < length; ++i)
+			hash = 31 * hash + buffer[offset + i];
+		final int mask = keys.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (keys[slot] != null && !matches(keys[slot], buffer, offset, length))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static boolean matches(final byte[] key, final byte[] buffer, final int offset, final int length) {
+		if (key.length != length)
+			return false;
+		for (int i = 0; i < length; ++i)
+			if (key[i] != buffer[offset + i])
+				return false;
+		return true;
+	}
+}
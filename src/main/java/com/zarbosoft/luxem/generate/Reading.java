@@ -0,0 +1,228 @@
+package com.zarbosoft.luxem.generate;
+
+import com.zarbosoft.luxem.read.InvalidStream;
+import com.zarbosoft.luxem.read.LuxemPullParser;
+import com.zarbosoft.luxem.read.LuxemPullParser.Token;
+import com.zarbosoft.luxem.read.path.LuxemPathBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+
+/**
+ * Token cursor for generated readers.  Wraps a LuxemPullParser, tracking the path for error messages.
+ * <p>
+ * Each generated read method starts on the first token of its value and leaves the cursor on the value's last token.
+ * Errors in the document throw InvalidStream.
+ */
+public final class Reading {
+	private static final Names BOOLEANS = new Names("false", "true");
+
+	private final LuxemPullParser parser;
+	private final LuxemPathBuilder path = new LuxemPathBuilder();
+
+	public Reading(final LuxemPullParser parser) {
+		this.parser = parser;
+	}
+
+	/**
+	 * @param data
+	 * @param read  a generated read method for the root type
+	 * @param <T>
+	 * @return the root elements, read as they're requested
+	 */
+	public static <T> Stream<T> stream(final String data, final Function<Reading, T> read) {
+		return stream(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), read);
+	}
+
+	/**
+	 * @param data
+	 * @param read a generated read method for the root type
+	 * @param <T>
+	 * @return the root elements, read as they're requested
+	 */
+	public static <T> Stream<T> stream(final InputStream data, final Function<Reading, T> read) {
+		final Reading reading = new Reading(new LuxemPullParser(data));
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Iterator<T>() {
+			Token next = null;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null)
+					next = reading.next();
+				return next != Token.END;
+			}
+
+			@Override
+			public T next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				next = null;
+				return read.apply(reading);
+			}
+		}, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * @param path
+	 * @param read a generated read method for the root type
+	 * @param <T>
+	 * @return the root elements of the file, read as they're requested
+	 */
+	public static <T> Stream<T> stream(final Path path, final Function<Reading, T> read) {
+		final InputStream stream = uncheck(() -> Files.newInputStream(path));
+		return stream(stream, read).onClose(() -> uncheck(stream::close));
+	}
+
+	/**
+	 * Advance and track the path, except for keys which are tracked with `key`.
+	 *
+	 * @return the next token
+	 */
+	public Token next() {
+		final Token token = parser.next();
+		switch (token) {
+			case ARRAY_OPEN:
+				path.arrayBegin();
+				break;
+			case RECORD_OPEN:
+				path.recordBegin();
+				break;
+			case ARRAY_CLOSE:
+			case RECORD_CLOSE:
+				path.pop();
+				break;
+			case TYPE:
+				path.type();
+				break;
+			case PRIMITIVE:
+				path.value();
+				break;
+		}
+		return token;
+	}
+
+	public Token token() {
+		return parser.token();
+	}
+
+	/**
+	 * @return the decoded text of the current key, type, or primitive
+	 */
+	public String text() {
+		return parser.string();
+	}
+
+	/**
+	 * Record the key of the value about to be read.
+	 *
+	 * @param key
+	 */
+	public void key(final String key) {
+		path.key(key);
+	}
+
+	public void expect(final Token token, final String expected) {
+		if (parser.token() != token)
+			throw unexpected(expected);
+	}
+
+	/**
+	 * @param names
+	 * @return the position of the current token's text in names, or -1
+	 */
+	public int lookup(final Names names) {
+		return names.get(parser.textBuffer(), parser.textOffset(), parser.textLength());
+	}
+
+	public String string() {
+		expect(Token.PRIMITIVE, "primitive");
+		return parser.string();
+	}
+
+	public int parseInt() {
+		expect(Token.PRIMITIVE, "primitive");
+		try {
+			return parser.parseInt();
+		} catch (final NumberFormatException e) {
+			throw error("Invalid integer [%s]", parser.string());
+		}
+	}
+
+	public long parseLong() {
+		expect(Token.PRIMITIVE, "primitive");
+		try {
+			return parser.parseLong();
+		} catch (final NumberFormatException e) {
+			throw error("Invalid integer [%s]", parser.string());
+		}
+	}
+
+	public double parseDouble() {
+		expect(Token.PRIMITIVE, "primitive");
+		try {
+			return parser.parseDouble();
+		} catch (final NumberFormatException e) {
+			throw error("Invalid double [%s]", parser.string());
+		}
+	}
+
+	public boolean parseBoolean() {
+		return value(BOOLEANS) == 1;
+	}
+
+	/**
+	 * @param names
+	 * @return the position of the current primitive in names
+	 */
+	public int value(final Names names) {
+		expect(Token.PRIMITIVE, "primitive");
+		final int out = lookup(names);
+		if (out == -1)
+			throw error("Invalid value [%s]", parser.string());
+		return out;
+	}
+
+	public InvalidStream error(final String format, final Object... args) {
+		return new InvalidStream(String.format("%s at %s", String.format(format, args), path));
+	}
+
+	public InvalidStream unexpected(final String expected) {
+		final Token token = parser.token();
+		final String got;
+		switch (token) {
+			case KEY:
+			case TYPE:
+			case PRIMITIVE:
+				got = String.format("%s [%s]", token, parser.string());
+				break;
+			default:
+				got = token.toString();
+		}
+		return error("Expected %s but got %s", expected, got);
+	}
+
+	public InvalidStream unknownField(final String klass) {
+		return error("Unknown field [%s] in %s", parser.string(), klass);
+	}
+
+	public InvalidStream duplicateField(final String field, final String klass) {
+		return error("Duplicate field [%s] in %s", field, klass);
+	}
+
+	public InvalidStream missingField(final String field, final String klass) {
+		return error("Missing field [%s] in %s", field, klass);
+	}
+
+	public InvalidStream unknownType(final String klass) {
+		return error("Unknown type [%s] for %s", parser.string(), klass);
+	}
+}
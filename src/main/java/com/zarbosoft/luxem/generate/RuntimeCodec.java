@@ -0,0 +1,920 @@
+package com.zarbosoft.luxem.generate;
+
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.primitive.PrimitiveArrays;
+import com.zarbosoft.luxem.read.LuxemPullParser.Token;
+import com.zarbosoft.luxem.read.ReadTypeGrammar;
+import com.zarbosoft.luxem.read.TypeReader;
+import com.zarbosoft.luxem.write.RawWriter;
+import com.zarbosoft.luxem.write.TypeWriter;
+import com.zarbosoft.pidgoon.events.Grammar;
+import com.zarbosoft.rendaw.common.Pair;
+import javassist.*;
+import org.reflections.Reflections;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.zarbosoft.luxem.generate.CodecProcessor.literal;
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+
+/**
+ * Reads and writes a root type with classes generated when the codec is created, for types that weren't compiled with
+ * CodecProcessor such as plugins loaded at runtime.  Each concrete class gets a generated class with straight-line
+ * read and write methods like the ones CodecProcessor writes - fields are set and read directly and values are read
+ * and written inline rather than through per-field closures or accessors.
+ * <p>
+ * Classes are compiled with javassist and defined in a class loader owned by the codec, so only public classes and
+ * members can be used directly.  Other constructors and fields go through Accessors.  If documents of the type can't
+ * be read deterministically (see TypeReader) they're read with TypeReader instead.
+ *
+ * @param <T> the root type
+ */
+public class RuntimeCodec<T> {
+	private static final String READING = Reading.class.getName();
+	private static final String TOKEN = Token.class.getName();
+	private static final String WRITER = RawWriter.class.getName();
+	private static final String UTF8 = "java.nio.charset.StandardCharsets.UTF_8";
+	private static final AtomicInteger count = new AtomicInteger();
+
+	private final Generated root;
+	private final TypeReader<T> fallback;
+
+	/**
+	 * @param reflections used to locate subtypes of abstract types
+	 * @param rootType    the type of the top level objects
+	 */
+	public RuntimeCodec(final Reflections reflections, final Walk.TypeInfo rootType) {
+		this(reflections, rootType, () -> ReadTypeGrammar.buildGrammar(reflections, rootType));
+	}
+
+	/**
+	 * @param reflections  used to locate subtypes of abstract types, not kept
+	 * @param rootType     the type of the top level objects
+	 * @param buildGrammar supplies the ReadTypeGrammar grammar for rootType, see TypeReader
+	 */
+	public RuntimeCodec(
+			final Reflections reflections, final Walk.TypeInfo rootType, final Supplier<Grammar> buildGrammar
+	) {
+		final TypeReader<T> reader = new TypeReader<>(reflections, rootType, buildGrammar);
+		this.fallback = reader.ambiguous() ? reader : null;
+		this.root = new Generator(fallback == null).generate(reflections, rootType);
+	}
+
+	/**
+	 * @return true if documents are read with TypeReader rather than generated code
+	 */
+	public boolean ambiguous() {
+		return fallback != null;
+	}
+
+	public Stream<T> read(final String data) {
+		return read(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * @param data
+	 * @return the root elements, read as they're requested
+	 */
+	public Stream<T> read(final InputStream data) {
+		if (fallback != null)
+			return fallback.read(data);
+		return Reading.stream(data, reading -> (T) root.read(reading));
+	}
+
+	/**
+	 * @param path
+	 * @return the root elements of the file, read as they're requested
+	 */
+	public Stream<T> read(final Path path) {
+		if (fallback != null)
+			return fallback.read(path);
+		final InputStream stream = uncheck(() -> Files.newInputStream(path));
+		return read(stream).onClose(() -> uncheck(stream::close));
+	}
+
+	public void write(final T value, final OutputStream stream) {
+		uncheck(() -> write(value, new RawWriter(stream)));
+	}
+
+	public void write(final T value, final RawWriter writer) throws IOException {
+		root.write(writer, value);
+	}
+
+	/**
+	 * Superclass of the generated classes.  Only public for the generated classes to extend.
+	 */
+	public abstract static class Generated {
+		/**
+		 * Set the generated fields.  Called once, after every class for the codec is created.
+		 *
+		 * @param constants
+		 */
+		public abstract void link(Object[] constants);
+
+		/**
+		 * Read a value, starting with the current token and ending on the value's last token.  Codecs that read with
+		 * TypeReader never call this.
+		 *
+		 * @param reading
+		 * @return the value
+		 */
+		public abstract Object read(Reading reading);
+
+		public abstract void write(RawWriter writer, Object value) throws IOException;
+	}
+
+	/**
+	 * @param klass
+	 * @return true if generated code can refer to klass by name
+	 */
+	private static boolean accessible(final Class<?> klass) {
+		if (klass.isPrimitive())
+			return true;
+		if (klass.isArray())
+			return accessible(klass.getComponentType());
+		for (Class<?> at = klass; at != null; at = at.getEnclosingClass())
+			if (!Modifier.isPublic(at.getModifiers()))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param field
+	 * @return true if generated code can get and set field without Accessors
+	 */
+	private static boolean direct(final Field field) {
+		final int modifiers = field.getModifiers();
+		return Modifier.isPublic(modifiers) &&
+				!Modifier.isFinal(modifiers) &&
+				accessible(field.getDeclaringClass()) &&
+				accessible(field.getType());
+	}
+
+	private static boolean constructible(final Class<?> klass) {
+		if (!accessible(klass))
+			return false;
+		try {
+			return Modifier.isPublic(klass.getConstructor().getModifiers());
+		} catch (final NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param klass
+	 * @return the name of klass in generated code
+	 */
+	private static String name(final Class<?> klass) {
+		if (klass.isArray())
+			return String.format("%s[]", name(klass.getComponentType()));
+		return klass.getName();
+	}
+
+	/**
+	 * @param type
+	 * @param expression
+	 * @return expression cast to type, unless type is Object
+	 */
+	private static String cast(final String type, final String expression) {
+		if (type.equals("java.lang.Object"))
+			return expression;
+		return String.format("((%s) %s)", type, expression);
+	}
+
+	/**
+	 * Defines the generated classes.  Classes the generated code refers to are found with luxem's class loader or the
+	 * loaders of the @Configuration classes.
+	 */
+	private static class Loader extends ClassLoader {
+		private final Set<ClassLoader> loaders = new LinkedHashSet<>();
+
+		private Loader() {
+			super(RuntimeCodec.class.getClassLoader());
+		}
+
+		private void add(final ClassLoader loader) {
+			if (loader != null && loader != getParent())
+				loaders.add(loader);
+		}
+
+		private Class<?> define(final String name, final byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+		@Override
+		protected Class<?> findClass(final String name) throws ClassNotFoundException {
+			for (final ClassLoader loader : loaders) {
+				try {
+					return Class.forName(name, false, loader);
+				} catch (final ClassNotFoundException e) {
+					// Try the next
+				}
+			}
+			throw new ClassNotFoundException(name);
+		}
+
+		@Override
+		protected URL findResource(final String name) {
+			for (final ClassLoader loader : loaders) {
+				final URL out = loader.getResource(name);
+				if (out != null)
+					return out;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A generated class, for a concrete @Configuration class or the root type.
+	 */
+	private static class Part {
+		/**
+		 * null for the root
+		 */
+		final Class<?> klass;
+		List<Pair<Field, Value>> fields;
+		Emitter emitter;
+		Generated instance;
+
+		private Part(final Class<?> klass) {
+			this.klass = klass;
+		}
+	}
+
+	/**
+	 * Collects the fields and methods of one generated class.  Fields hold constants set by link.
+	 */
+	private static class Emitter {
+		final List<String> types = new ArrayList<>();
+		final List<Object> constants = new ArrayList<>();
+		final Map<Object, String> seen = new HashMap<>();
+		final List<String> methods = new ArrayList<>();
+		int locals = 0;
+
+		/**
+		 * @param type
+		 * @param key   constants with the same key are shared
+		 * @param value a value for the field, or a Part to link to that part's instance
+		 * @return an expression for the constant
+		 */
+		String constant(final String type, final Object key, final Object value) {
+			return seen.computeIfAbsent(Arrays.asList(type, key), k -> {
+				types.add(type);
+				constants.add(value);
+				return String.format("this.k%s", constants.size() - 1);
+			});
+		}
+
+		String bytes(final String value) {
+			return constant("byte[]", value, value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		String names(final List<String> names) {
+			return constant(Names.class.getName(), names, new Names(names.toArray(new String[names.size()])));
+		}
+
+		String codec(final Part part) {
+			return constant(Generated.class.getName(), part, part);
+		}
+
+		String local(final String prefix) {
+			return prefix + locals++;
+		}
+
+		/**
+		 * @param returnType
+		 * @param body       statements, with a `reading` parameter
+		 * @return an expression calling the new method
+		 */
+		String readMethod(final String returnType, final String body) {
+			final String name = String.format("read%s", methods.size());
+			methods.add(String.format("private %s %s(%s reading) {\n%s}", returnType, name, READING, body));
+			return String.format("%s(reading)", name);
+		}
+	}
+
+	/**
+	 * How to read and write one type in generated code.
+	 */
+	private abstract static class Value {
+		/**
+		 * @return the erased type of values as named in generated code
+		 */
+		abstract String type();
+
+		/**
+		 * @param out
+		 * @return an expression of type() that reads a value, starting on its first token
+		 */
+		abstract String read(Emitter out);
+
+		/**
+		 * Add statements to code that write value.
+		 *
+		 * @param out
+		 * @param code
+		 * @param value an expression of type(), or the primitive type for primitive fields
+		 */
+		abstract void write(Emitter out, StringBuilder code, String value);
+	}
+
+	private static class PrimitiveValue extends Value {
+		private final String type;
+		private final String read;
+		private final String box;
+
+		/**
+		 * @param type
+		 * @param read expression reading the value, unboxed for numbers and booleans
+		 * @param box  format boxing the read value, or null if it's already an object
+		 */
+		private PrimitiveValue(final String type, final String read, final String box) {
+			this.type = type;
+			this.read = read;
+			this.box = box;
+		}
+
+		@Override
+		String type() {
+			return type;
+		}
+
+		/**
+		 * @return an expression reading a value for a primitive field
+		 */
+		String readUnboxed() {
+			return read;
+		}
+
+		@Override
+		String read(final Emitter out) {
+			return box == null ? read : String.format(box, read);
+		}
+
+		@Override
+		void write(final Emitter out, final StringBuilder code, final String value) {
+			code.append(String.format("writer.quotedPrimitive(java.lang.String.valueOf(%s).getBytes(%s));\n",
+					value,
+					UTF8
+			));
+		}
+	}
+
+	private static class EnumValue extends Value {
+		private final Class<?> enumClass;
+
+		private EnumValue(final Class<?> enumClass) {
+			this.enumClass = enumClass;
+		}
+
+		@Override
+		String type() {
+			return accessible(enumClass) ? enumClass.getName() : "java.lang.Object";
+		}
+
+		@Override
+		String read(final Emitter out) {
+			final List<String> names = new ArrayList<>();
+			final List<Object> values = new ArrayList<>();
+			Walk.enumValues(enumClass).forEach(pair -> {
+				names.add(Walk.decideName(pair.second));
+				values.add(pair.first);
+			});
+			return cast(type(),
+					String.format("%s[reading.value(%s)]",
+							out.constant("java.lang.Object[]", enumClass, values.toArray()),
+							out.names(names)
+					)
+			);
+		}
+
+		@Override
+		void write(final Emitter out, final StringBuilder code, final String value) {
+			final Object[] constants = enumClass.getEnumConstants();
+			final byte[][] names = new byte[constants.length][];
+			for (int i = 0; i < constants.length; ++i)
+				names[i] = Walk.decideEnumName((Enum) constants[i]).getBytes(StandardCharsets.UTF_8);
+			code.append(String.format("writer.quotedPrimitive(%s[((java.lang.Enum) %s).ordinal()]);\n",
+					out.constant("byte[][]", enumClass, names),
+					value
+			));
+		}
+	}
+
+	private static class CollectionValue extends Value {
+		private final String type;
+		private final String create;
+		private final Value inner;
+
+		private CollectionValue(final String type, final String create, final Value inner) {
+			this.type = type;
+			this.create = create;
+			this.inner = inner;
+		}
+
+		@Override
+		String type() {
+			return type;
+		}
+
+		@Override
+		String read(final Emitter out) {
+			return out.readMethod(type,
+					String.format("reading.expect(%s.ARRAY_OPEN, \"array\");\n", TOKEN) +
+							String.format("%s out = new %s();\n", create, create) +
+							String.format("while (reading.next() != %s.ARRAY_CLOSE)\n", TOKEN) +
+							String.format("out.add(%s);\n", inner.read(out)) +
+							"return out;\n"
+			);
+		}
+
+		@Override
+		void write(final Emitter out, final StringBuilder code, final String value) {
+			final String iterator = out.local("iterator");
+			code.append("writer.arrayBegin();\n");
+			code.append(String.format("java.util.Iterator %s = %s.iterator();\n", iterator, value));
+			code.append(String.format("while (%s.hasNext()) {\n", iterator));
+			inner.write(out, code, cast(inner.type(), String.format("%s.next()", iterator)));
+			code.append("}\n");
+			code.append("writer.arrayEnd();\n");
+		}
+	}
+
+	private static class PrimitiveArrayValue extends Value {
+		private final PrimitiveArrays primitive;
+		private final boolean array;
+
+		private PrimitiveArrayValue(final PrimitiveArrays primitive, final boolean array) {
+			this.primitive = primitive;
+			this.array = array;
+		}
+
+		@Override
+		String type() {
+			return name(array ? primitive.array : primitive.list);
+		}
+
+		@Override
+		String read(final Emitter out) {
+			final String element = primitive.array.getComponentType().getName();
+			final String list = primitive.list.getName();
+			return out.readMethod(type(),
+					String.format("reading.expect(%s.ARRAY_OPEN, \"array\");\n", TOKEN) +
+							String.format("%s out = new %s();\n", list, list) +
+							String.format("while (reading.next() != %s.ARRAY_CLOSE)\n", TOKEN) +
+							String.format("out.add(reading.parse%s%s());\n",
+									Character.toUpperCase(element.charAt(0)),
+									element.substring(1)
+							) +
+							(array ? "return out.toArray();\n" : "return out;\n")
+			);
+		}
+
+		@Override
+		void write(final Emitter out, final StringBuilder code, final String value) {
+			final String local = out.local("elements");
+			final String index = out.local("index");
+			code.append("writer.arrayBegin();\n");
+			code.append(String.format("%s %s = %s;\n", type(), local, value));
+			code.append(String.format("for (int %s = 0; %s < %s; %s++)\n",
+					index,
+					index,
+					array ? String.format("%s.length", local) : String.format("%s.size()", local),
+					index
+			));
+			code.append(String.format("writer.quotedPrimitive(%s);\n",
+					array ? String.format("%s[%s]", local, index) : String.format("%s.get(%s)", local, index)
+			));
+			code.append("writer.arrayEnd();\n");
+		}
+	}
+
+	private static class MapValue extends Value {
+		private final Value inner;
+
+		private MapValue(final Value inner) {
+			this.inner = inner;
+		}
+
+		@Override
+		String type() {
+			return "java.util.Map";
+		}
+
+		@Override
+		String read(final Emitter out) {
+			return out.readMethod("java.util.Map",
+					String.format("reading.expect(%s.RECORD_OPEN, \"record\");\n", TOKEN) +
+							"java.util.HashMap out = new java.util.HashMap();\n" +
+							String.format("while (reading.next() != %s.RECORD_CLOSE) {\n", TOKEN) +
+							"java.lang.String key = reading.text();\n" +
+							"reading.key(key);\n" +
+							"reading.next();\n" +
+							String.format("out.put(key, %s);\n", inner.read(out)) +
+							"}\n" +
+							"return out;\n"
+			);
+		}
+
+		@Override
+		void write(final Emitter out, final StringBuilder code, final String value) {
+			final String iterator = out.local("iterator");
+			final String entry = out.local("entry");
+			code.append("writer.recordBegin();\n");
+			code.append(String.format("java.util.Iterator %s = %s.entrySet().iterator();\n", iterator, value));
+			code.append(String.format("while (%s.hasNext()) {\n", iterator));
+			code.append(String.format("java.util.Map.Entry %s = (java.util.Map.Entry) %s.next();\n", entry, iterator));
+			code.append(String.format("writer.key(((java.lang.String) %s.getKey()).getBytes(%s));\n", entry, UTF8));
+			inner.write(out, code, cast(inner.type(), String.format("%s.getValue()", entry)));
+			code.append("}\n");
+			code.append("writer.recordEnd();\n");
+		}
+	}
+
+	private static class AbstractValue extends Value {
+		private final Class<?> klass;
+		private final List<Pair<Class<?>, Value>> derived;
+
+		private AbstractValue(final Class<?> klass, final List<Pair<Class<?>, Value>> derived) {
+			this.klass = klass;
+			this.derived = derived;
+		}
+
+		@Override
+		String type() {
+			return accessible(klass) ? klass.getName() : "java.lang.Object";
+		}
+
+		@Override
+		String read(final Emitter out) {
+			final String name = literal(klass.getSimpleName());
+			final List<String> names = new ArrayList<>();
+			for (final Pair<Class<?>, Value> pair : derived)
+				names.add(Walk.decideName(pair.first).toLowerCase());
+			final StringBuilder body = new StringBuilder();
+			body.append(String.format("reading.expect(%s.TYPE, %s);\n",
+					TOKEN,
+					literal(String.format("type of %s", klass.getSimpleName()))
+			));
+			body.append(String.format("int type = reading.lookup(%s);\n", out.names(names)));
+			body.append(String.format("if (type == -1)\nthrow reading.unknownType(%s);\n", name));
+			body.append("reading.next();\n");
+			body.append("switch (type) {\n");
+			for (int i = 0; i < derived.size(); ++i) {
+				body.append(String.format("case %s:\nreturn %s;\n", i, derived.get(i).second.read(out)));
+			}
+			body.append("}\n");
+			body.append(String.format("throw reading.unknownType(%s);\n", name));
+			return cast(type(), out.readMethod("java.lang.Object", body.toString()));
+		}
+
+		@Override
+		void write(final Emitter out, final StringBuilder code, final String value) {
+			final String local = out.local("value");
+			final String type = out.local("type");
+			code.append(String.format("java.lang.Object %s = %s;\n", local, value));
+			code.append(String.format("java.lang.Class %s = %s.getClass();\n", type, local));
+			for (final Pair<Class<?>, Value> pair : derived) {
+				code.append(String.format("if (%s == %s) {\n",
+						type,
+						out.constant("java.lang.Class", pair.first, pair.first)
+				));
+				code.append(String.format("writer.type(%s);\n", out.bytes(Walk.decideName(pair.first))));
+				pair.second.write(out, code, cast(pair.second.type(), local));
+				code.append("} else ");
+			}
+			code.append(String.format("%s.writeTyped(writer, %s);\n", TypeWriter.class.getName(), local));
+		}
+	}
+
+	private static class ConcreteValue extends Value {
+		private final Part part;
+
+		private ConcreteValue(final Part part) {
+			this.part = part;
+		}
+
+		@Override
+		String type() {
+			return accessible(part.klass) ? part.klass.getName() : "java.lang.Object";
+		}
+
+		@Override
+		String read(final Emitter out) {
+			return cast(type(), String.format("%s.read(reading)", out.codec(part)));
+		}
+
+		@Override
+		void write(final Emitter out, final StringBuilder code, final String value) {
+			code.append(String.format("%s.write(writer, %s);\n", out.codec(part), value));
+		}
+	}
+
+	private static class Generator implements Walk.Visitor<Value> {
+		private final boolean reads;
+		private final Map<Class<?>, Part> parts = new LinkedHashMap<>();
+		private final Loader loader = new Loader();
+		private final ClassPool pool = new ClassPool(true);
+
+		/**
+		 * @param reads false if reads go through TypeReader, so read methods only throw
+		 */
+		private Generator(final boolean reads) {
+			this.reads = reads;
+			pool.appendClassPath(new LoaderClassPath(loader));
+		}
+
+		private Generated generate(final Reflections reflections, final Walk.TypeInfo rootType) {
+			final Value value = Walk.walk(reflections, rootType, this);
+			final List<Part> parts = new ArrayList<>(this.parts.values());
+			final Part root;
+			if (value instanceof ConcreteValue)
+				root = ((ConcreteValue) value).part;
+			else {
+				root = new Part(null);
+				parts.add(root);
+			}
+			for (final Part part : parts) {
+				part.emitter = new Emitter();
+				final String read;
+				final String write;
+				if (!reads)
+					// Javassist picks AssertionError's private String constructor without the cast
+					read = "throw new java.lang.AssertionError((java.lang.Object) \"Reads go through the TypeReader " +
+							"fallback\");\n";
+				else if (part.klass == null)
+					read = String.format("return %s;\n", value.read(part.emitter));
+				else
+					read = readConcrete(part);
+				if (part.klass == null) {
+					final StringBuilder code = new StringBuilder();
+					value.write(part.emitter, code, cast(value.type(), "value0"));
+					write = code.toString();
+				} else
+					write = writeConcrete(part);
+				part.instance = compile(part, read, write);
+			}
+			for (final Part part : parts) {
+				final Object[] constants = part.emitter.constants.toArray();
+				for (int i = 0; i < constants.length; ++i)
+					if (constants[i] instanceof Part)
+						constants[i] = ((Part) constants[i]).instance;
+				part.instance.link(constants);
+			}
+			return root.instance;
+		}
+
+		private String readConcrete(final Part part) {
+			final Emitter out = part.emitter;
+			final Class<?> klass = part.klass;
+			final String self = accessible(klass) ? klass.getName() : "java.lang.Object";
+			final String name = literal(klass.getSimpleName());
+			final StringBuilder code = new StringBuilder();
+			if (constructible(klass))
+				code.append(String.format("%s out = new %s();\n", self, self));
+			else
+				code.append(String.format("%s out = %s;\n",
+						self,
+						cast(self,
+								String.format("%s.get()",
+										out.constant("java.util.function.Supplier",
+												klass,
+												Accessors.constructor(klass)
+										)
+								)
+						)
+				));
+
+			final boolean[] required = new boolean[part.fields.size()];
+			for (int i = 0; i < part.fields.size(); ++i)
+				required[i] = ReadTypeGrammar.fieldIsRequired(part.fields.get(i).first);
+			final int abbreviated = ReadTypeGrammar.abbreviatedField(required);
+			final Pair<Field, Value> abbreviation = abbreviated == -1 ? null : part.fields.get(abbreviated);
+
+			code.append(String.format("if (reading.token() != %s.RECORD_OPEN) {\n", TOKEN));
+			if (abbreviation == null)
+				code.append(String.format("throw reading.unexpected(%s);\n",
+						literal(String.format("record for %s", klass.getSimpleName()))
+				));
+			else {
+				assign(out, code, abbreviation.first, abbreviation.second);
+				code.append("return out;\n");
+			}
+			code.append("}\n");
+			final List<String> names = new ArrayList<>();
+			for (int i = 0; i < part.fields.size(); ++i) {
+				names.add(Walk.decideName(part.fields.get(i).first));
+				code.append(String.format("boolean seen%s = false;\n", i));
+			}
+			code.append(String.format("while (reading.next() != %s.RECORD_CLOSE) {\n", TOKEN));
+			code.append(String.format("switch (reading.lookup(%s)) {\n", out.names(names)));
+			for (int i = 0; i < part.fields.size(); ++i) {
+				final Pair<Field, Value> pair = part.fields.get(i);
+				final String fieldName = literal(Walk.decideName(pair.first));
+				code.append(String.format("case %s:\n", i));
+				code.append(String.format("if (seen%s)\nthrow reading.duplicateField(%s, %s);\n", i, fieldName, name));
+				code.append(String.format("seen%s = true;\n", i));
+				code.append(String.format("reading.key(%s);\n", fieldName));
+				code.append("reading.next();\n");
+				assign(out, code, pair.first, pair.second);
+				code.append("break;\n");
+			}
+			code.append(String.format("default:\nthrow reading.unknownField(%s);\n", name));
+			code.append("}\n");
+			code.append("}\n");
+			for (int i = 0; i < part.fields.size(); ++i)
+				if (required[i])
+					code.append(String.format("if (!seen%s)\nthrow reading.missingField(%s, %s);\n",
+							i,
+							literal(Walk.decideName(part.fields.get(i).first)),
+							name
+					));
+			code.append("return out;\n");
+			return code.toString();
+		}
+
+		private void assign(final Emitter out, final StringBuilder code, final Field field, final Value value) {
+			if (direct(field)) {
+				final String read;
+				if (field.getType().isPrimitive())
+					read = ((PrimitiveValue) value).readUnboxed();
+				else
+					read = cast(name(field.getType()), value.read(out));
+				code.append(String.format("out.%s = %s;\n", field.getName(), read));
+			} else
+				code.append(String.format("%s.set(out, %s);\n",
+						out.constant(Accessors.Setter.class.getName(), field, Accessors.setter(field)),
+						value.read(out)
+				));
+		}
+
+		private String writeConcrete(final Part part) {
+			final Emitter out = part.emitter;
+			final String self = accessible(part.klass) ? part.klass.getName() : "java.lang.Object";
+			final StringBuilder code = new StringBuilder();
+			code.append(String.format("%s value = %s;\n", self, cast(self, "value0")));
+			code.append("writer.recordBegin();\n");
+			for (final Pair<Field, Value> pair : part.fields) {
+				final Field field = pair.first;
+				final String key = out.bytes(Walk.decideName(field));
+				if (direct(field) && field.getType().isPrimitive()) {
+					code.append(String.format("writer.key(%s);\n", key));
+					pair.second.write(out, code, String.format("value.%s", field.getName()));
+					continue;
+				}
+				final String local = out.local("field");
+				final String get;
+				if (direct(field))
+					get = String.format("value.%s", field.getName());
+				else
+					get = cast(pair.second.type(),
+							String.format("%s.get(value)",
+									out.constant(Accessors.Getter.class.getName(), field, Accessors.getter(field))
+							)
+					);
+				code.append(String.format("%s %s = %s;\n", pair.second.type(), local, get));
+				code.append(String.format("if (%s != null) {\n", local));
+				code.append(String.format("writer.key(%s);\n", key));
+				pair.second.write(out, code, local);
+				code.append("}\n");
+			}
+			code.append("writer.recordEnd();\n");
+			return code.toString();
+		}
+
+		/**
+		 * @param part
+		 * @param read  the body of read
+		 * @param write the body of write
+		 * @return an instance of the generated class
+		 */
+		private Generated compile(final Part part, final String read, final String write) {
+			final Emitter out = part.emitter;
+			final String name = String.format("%s$%s%s",
+					RuntimeCodec.class.getName(),
+					part.klass == null ? "Root" : part.klass.getSimpleName(),
+					count.incrementAndGet()
+			);
+			final List<String> methods = new ArrayList<>(out.methods);
+			final StringBuilder link = new StringBuilder();
+			for (int i = 0; i < out.types.size(); ++i)
+				link.append(String.format("this.k%s = (%s) $1[%s];\n", i, out.types.get(i), i));
+			methods.add(String.format("public void link(java.lang.Object[] constants) {\n%s}", link));
+			methods.add(String.format("public java.lang.Object read(%s reading) {\n%s}", READING, read));
+			methods.add(String.format(
+					"public void write(%s writer, java.lang.Object value0) throws java.io.IOException {\n%s}",
+					WRITER,
+					write
+			));
+			String source = null;
+			try {
+				final CtClass ct = pool.makeClass(name, pool.get(Generated.class.getName()));
+				for (int i = 0; i < out.types.size(); ++i) {
+					source = String.format("private %s k%s;", out.types.get(i), i);
+					ct.addField(CtField.make(source, ct));
+				}
+				ct.addConstructor(CtNewConstructor.defaultConstructor(ct));
+				for (final String method : methods) {
+					source = method;
+					ct.addMethod(CtNewMethod.make(method, ct));
+				}
+				final byte[] bytes = ct.toBytecode();
+				ct.detach();
+				return (Generated) loader.define(name, bytes).getConstructor().newInstance();
+			} catch (final CannotCompileException | NotFoundException e) {
+				throw new IllegalStateException(String.format("Failed to generate code for %s:\n%s",
+						part.klass == null ? "root" : part.klass,
+						source
+				), e);
+			} catch (final IOException | ReflectiveOperationException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public Value visitString(final Field field) {
+			return new PrimitiveValue("java.lang.String", "reading.string()", null);
+		}
+
+		@Override
+		public Value visitInteger(final Field field) {
+			return new PrimitiveValue("java.lang.Integer", "reading.parseInt()", "java.lang.Integer.valueOf(%s)");
+		}
+
+		@Override
+		public Value visitDouble(final Field field) {
+			return new PrimitiveValue("java.lang.Double", "reading.parseDouble()", "java.lang.Double.valueOf(%s)");
+		}
+
+		@Override
+		public Value visitBoolean(final Field field) {
+			return new PrimitiveValue("java.lang.Boolean",
+					"reading.parseBoolean()",
+					"java.lang.Boolean.valueOf(%s)"
+			);
+		}
+
+		@Override
+		public Value visitEnum(final Field field, final Class<?> enumClass) {
+			loader.add(enumClass.getClassLoader());
+			return new EnumValue(enumClass);
+		}
+
+		@Override
+		public Value visitList(final Field field, final Value inner) {
+			return new CollectionValue("java.util.List", "java.util.ArrayList", inner);
+		}
+
+		@Override
+		public Value visitSet(final Field field, final Value inner) {
+			return new CollectionValue("java.util.Set", "java.util.HashSet", inner);
+		}
+
+		@Override
+		public Value visitMap(final Field field, final Value inner) {
+			return new MapValue(inner);
+		}
+
+		@Override
+		public Value visitAbstract(
+				final Field field, final Class<?> klass, final List<Pair<Class<?>, Value>> derived
+		) {
+			final PrimitiveArrays primitive = PrimitiveArrays.of(klass);
+			if (primitive != null)
+				return new PrimitiveArrayValue(primitive, primitive.isArray(klass));
+			loader.add(klass.getClassLoader());
+			return new AbstractValue(klass, derived);
+		}
+
+		@Override
+		public Value visitConcreteShort(final Field field, final Class<?> klass) {
+			final PrimitiveArrays primitive = PrimitiveArrays.of(klass);
+			if (primitive != null)
+				return new PrimitiveArrayValue(primitive, primitive.isArray(klass));
+			return new ConcreteValue(parts.computeIfAbsent(klass, Part::new));
+		}
+
+		@Override
+		public void visitConcrete(
+				final Field field, final Class<?> klass, final List<Pair<Field, Value>> fields
+		) {
+			if (PrimitiveArrays.of(klass) != null)
+				return;
+			loader.add(klass.getClassLoader());
+			parts.computeIfAbsent(klass, Part::new).fields = fields;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.zarbosoft.luxem.generate;
+
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Set;
+
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+
+/**
+ * Subtypes of abstract types from the index CodecProcessor writes to META-INF, as a Reflections that can be passed
+ * anywhere a scanned Reflections is used to find @Configuration subtypes.  Loading the index only reads the index
+ * resources rather than every class on the class path.
+ * <p>
+ * The index is a text file with a line for each abstract type and concrete @Configuration subtype, as the two binary
+ * class names separated by a space.  Every jar built with the processor has one.  Abstract types with no subtypes in
+ * the index fall back to a scan of the class path, unless only the index is used with `load`.  Subtypes in jars built
+ * without the processor won't be found for abstract types that also have indexed subtypes.
+ */
+public class SubtypeIndex {
+	public static final String RESOURCE = "META-INF/luxem/subtypes";
+
+	private static Reflections shared = null;
+
+	/**
+	 * @return the index for the class loader that loaded luxem, falling back to a scan.  Loaded once.
+	 */
+	public static synchronized Reflections shared() {
+		if (shared == null)
+			shared = reflections(SubtypeIndex.class.getClassLoader());
+		return shared;
+	}
+
+	/**
+	 * @param loader
+	 * @return the index on the class path of loader, scanning the class path for abstract types the index has no
+	 * subtypes for
+	 */
+	public static Reflections reflections(final ClassLoader loader) {
+		final Index out = new Index(loader, true);
+		read(loader, out);
+		return out;
+	}
+
+	/**
+	 * @return a Reflections that finds no subtypes, for walking types when subtypes are taken from values instead
+	 */
+	public static Reflections empty() {
+		return new Index(SubtypeIndex.class.getClassLoader(), false);
+	}
+
+	/**
+	 * Use only the index, without scanning.  Subtypes in jars built without the processor won't be found.
+	 *
+	 * @param loader
+	 * @return the index on the class path of loader, or null if there is no index
+	 */
+	public static Reflections load(final ClassLoader loader) {
+		final Index out = new Index(loader, false);
+		if (!read(loader, out))
+			return null;
+		return out;
+	}
+
+	/**
+	 * @param loader
+	 * @param out
+	 * @return false if there are no index resources
+	 */
+	private static boolean read(final ClassLoader loader, final Index out) {
+		final Enumeration<URL> resources = uncheck(() -> loader.getResources(RESOURCE));
+		if (!resources.hasMoreElements())
+			return false;
+		while (resources.hasMoreElements()) {
+			final URL resource = resources.nextElement();
+			uncheck(() -> {
+				try (
+						final BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(),
+								StandardCharsets.UTF_8
+						))
+				) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						line = line.trim();
+						if (line.isEmpty())
+							continue;
+						final int split = line.indexOf(' ');
+						if (split == -1)
+							throw new IllegalArgumentException(String.format("Invalid line in %s: [%s]", resource, line));
+						out.add(line.substring(0, split), line.substring(split + 1).trim());
+					}
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	 * Reflections answering getSubTypesOf from the index, optionally scanning for types missing from it.
+	 */
+	private static class Index extends Reflections {
+		private static final String INDEX = SubTypesScanner.class.getSimpleName();
+
+		private final ClassLoader loader;
+		private final boolean scan;
+		private Reflections scanned = null;
+
+		private Index(final ClassLoader loader, final boolean scan) {
+			super();
+			this.loader = loader;
+			this.scan = scan;
+			((ConfigurationBuilder) configuration).addClassLoader(loader);
+			// Queries for a missing index throw rather than finding nothing
+			store.getOrCreate(INDEX);
+		}
+
+		private void add(final String supertype, final String subtype) {
+			store.getOrCreate(INDEX).put(supertype, subtype);
+		}
+
+		@Override
+		public <T> Set<Class<? extends T>> getSubTypesOf(final Class<T> type) {
+			final Set<Class<? extends T>> out = super.getSubTypesOf(type);
+			if (!out.isEmpty() || !scan)
+				return out;
+			return scanned().getSubTypesOf(type);
+		}
+
+		private synchronized Reflections scanned() {
+			if (scanned == null) {
+				Collection<URL> urls = ClasspathHelper.forClassLoader(loader);
+				// Since Java 9 the application class loader doesn't list its class path
+				if (urls.isEmpty())
+					urls = ClasspathHelper.forJavaClassPath();
+				scanned = new Reflections(new ConfigurationBuilder().setUrls(urls).addClassLoader(loader));
+			}
+			return scanned;
+		}
+	}
+}
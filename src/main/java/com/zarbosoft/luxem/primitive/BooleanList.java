@@ -0,0 +1,95 @@
+package com.zarbosoft.luxem.primitive;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of booleans.  Fields of this type are read and written as luxem arrays without boxing the elements.
+ */
+public class BooleanList {
+	private boolean[] values;
+	private int size = 0;
+
+	public BooleanList() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity initial space for elements
+	 */
+	public BooleanList(final int capacity) {
+		values = new boolean[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * @param values
+	 * @return a list containing a copy of values
+	 */
+	public static BooleanList of(final boolean... values) {
+		final BooleanList out = new BooleanList(values.length);
+		System.arraycopy(values, 0, out.values, 0, values.length);
+		out.size = values.length;
+		return out;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean get(final int index) {
+		check(index);
+		return values[index];
+	}
+
+	public void set(final int index, final boolean value) {
+		check(index);
+		values[index] = value;
+	}
+
+	public void add(final boolean value) {
+		if (size == values.length)
+			values = Arrays.copyOf(values, values.length * 2);
+		values[size++] = value;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return a copy of the elements
+	 */
+	public boolean[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	private void check(final int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(String.format("Index %s, size %s", index, size));
+	}
+
+	@Override
+	public boolean equals(final Object object) {
+		if (!(object instanceof BooleanList))
+			return false;
+		final BooleanList other = (BooleanList) object;
+		if (size != other.size)
+			return false;
+		for (int i = 0; i < size; ++i)
+			if (values[i] != other.values[i])
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int out = 1;
+		for (int i = 0; i < size; ++i)
+			out = 31 * out + Boolean.hashCode(values[i]);
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,95 @@
+package com.zarbosoft.luxem.primitive;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of doubles.  Fields of this type are read and written as luxem arrays without boxing the elements.
+ */
+public class DoubleList {
+	private double[] values;
+	private int size = 0;
+
+	public DoubleList() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity initial space for elements
+	 */
+	public DoubleList(final int capacity) {
+		values = new double[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * @param values
+	 * @return a list containing a copy of values
+	 */
+	public static DoubleList of(final double... values) {
+		final DoubleList out = new DoubleList(values.length);
+		System.arraycopy(values, 0, out.values, 0, values.length);
+		out.size = values.length;
+		return out;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double get(final int index) {
+		check(index);
+		return values[index];
+	}
+
+	public void set(final int index, final double value) {
+		check(index);
+		values[index] = value;
+	}
+
+	public void add(final double value) {
+		if (size == values.length)
+			values = Arrays.copyOf(values, values.length * 2);
+		values[size++] = value;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return a copy of the elements
+	 */
+	public double[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	private void check(final int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(String.format("Index %s, size %s", index, size));
+	}
+
+	@Override
+	public boolean equals(final Object object) {
+		if (!(object instanceof DoubleList))
+			return false;
+		final DoubleList other = (DoubleList) object;
+		if (size != other.size)
+			return false;
+		for (int i = 0; i < size; ++i)
+			if (Double.compare(values[i], other.values[i]) != 0)
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int out = 1;
+		for (int i = 0; i < size; ++i)
+			out = 31 * out + Double.hashCode(values[i]);
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,95 @@
+package com.zarbosoft.luxem.primitive;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of longs.  Fields of this type are read and written as luxem arrays without boxing the elements.
+ */
+public class LongList {
+	private long[] values;
+	private int size = 0;
+
+	public LongList() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity initial space for elements
+	 */
+	public LongList(final int capacity) {
+		values = new long[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * @param values
+	 * @return a list containing a copy of values
+	 */
+	public static LongList of(final long... values) {
+		final LongList out = new LongList(values.length);
+		System.arraycopy(values, 0, out.values, 0, values.length);
+		out.size = values.length;
+		return out;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long get(final int index) {
+		check(index);
+		return values[index];
+	}
+
+	public void set(final int index, final long value) {
+		check(index);
+		values[index] = value;
+	}
+
+	public void add(final long value) {
+		if (size == values.length)
+			values = Arrays.copyOf(values, values.length * 2);
+		values[size++] = value;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return a copy of the elements
+	 */
+	public long[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	private void check(final int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(String.format("Index %s, size %s", index, size));
+	}
+
+	@Override
+	public boolean equals(final Object object) {
+		if (!(object instanceof LongList))
+			return false;
+		final LongList other = (LongList) object;
+		if (size != other.size)
+			return false;
+		for (int i = 0; i < size; ++i)
+			if (values[i] != other.values[i])
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int out = 1;
+		for (int i = 0; i < size; ++i)
+			out = 31 * out + Long.hashCode(values[i]);
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,108 @@
+package com.zarbosoft.luxem.primitive;
+
+import com.zarbosoft.luxem.write.RawWriter;
+
+import java.io.IOException;
+
+/**
+ * The primitive array types and the lists in this package, which typed readers and writers fill and write element
+ * by element without boxing.  Each is a luxem array of integers, doubles, or booleans.
+ * <p>
+ * Walk doesn't know these types - arrays reach visitors as abstract classes (array classes are abstract) and the lists
+ * as concrete classes without fields - so visitors check for them with `of` first.
+ * <p>
+ * Like collections, fields of these types are always optional.
+ */
+public enum PrimitiveArrays {
+	INT(int[].class, IntList.class) {
+		@Override
+		public int size(final Object value) {
+			return value instanceof int[] ? ((int[]) value).length : ((IntList) value).size();
+		}
+
+		@Override
+		public void write(final RawWriter writer, final Object value, final int index) throws IOException {
+			writer.quotedPrimitive(value instanceof int[] ? ((int[]) value)[index] : ((IntList) value).get(index));
+		}
+	},
+	LONG(long[].class, LongList.class) {
+		@Override
+		public int size(final Object value) {
+			return value instanceof long[] ? ((long[]) value).length : ((LongList) value).size();
+		}
+
+		@Override
+		public void write(final RawWriter writer, final Object value, final int index) throws IOException {
+			writer.quotedPrimitive(value instanceof long[] ? ((long[]) value)[index] : ((LongList) value).get(index));
+		}
+	},
+	DOUBLE(double[].class, DoubleList.class) {
+		@Override
+		public int size(final Object value) {
+			return value instanceof double[] ? ((double[]) value).length : ((DoubleList) value).size();
+		}
+
+		@Override
+		public void write(final RawWriter writer, final Object value, final int index) throws IOException {
+			writer.quotedPrimitive(value instanceof double[] ?
+					((double[]) value)[index] :
+					((DoubleList) value).get(index));
+		}
+	},
+	BOOLEAN(boolean[].class, BooleanList.class) {
+		@Override
+		public int size(final Object value) {
+			return value instanceof boolean[] ? ((boolean[]) value).length : ((BooleanList) value).size();
+		}
+
+		@Override
+		public void write(final RawWriter writer, final Object value, final int index) throws IOException {
+			writer.quotedPrimitive(value instanceof boolean[] ?
+					((boolean[]) value)[index] :
+					((BooleanList) value).get(index));
+		}
+	};
+
+	public final Class<?> array;
+	public final Class<?> list;
+
+	PrimitiveArrays(final Class<?> array, final Class<?> list) {
+		this.array = array;
+		this.list = list;
+	}
+
+	/**
+	 * @param klass
+	 * @return the kind of elements if klass is a primitive array or list, otherwise null
+	 */
+	public static PrimitiveArrays of(final Class<?> klass) {
+		for (final PrimitiveArrays value : values())
+			if (value.array == klass || value.list == klass)
+				return value;
+		return null;
+	}
+
+	/**
+	 * @param value an array or list of this kind
+	 * @return the number of elements
+	 */
+	public abstract int size(Object value);
+
+	/**
+	 * Write an element as a primitive, without boxing it or creating a string.
+	 *
+	 * @param writer
+	 * @param value  an array or list of this kind
+	 * @param index
+	 * @throws IOException
+	 */
+	public abstract void write(RawWriter writer, Object value, int index) throws IOException;
+
+	/**
+	 * @param klass
+	 * @return true if klass is the array type rather than the list
+	 */
+	public boolean isArray(final Class<?> klass) {
+		return klass == array;
+	}
+}
@@ -1,6 +1,6 @@
 package com.zarbosoft.luxem.read;
 
-import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
 /**
  * Extension for RawReader that buffers primitives, keys, and types.
@@ -30,7 +30,23 @@ public class BufferedRawReader extends RawReader {
 	public VoidConsumer eatKeyEnd = () -> {
 	};
 
-	private ByteArrayOutputStream top = new ByteArrayOutputStream();
+	/*
+	 * Whole tokens (or chunks) as slices.  If a token has no escapes and is lexed from a single buffer the slice
+	 * points into that buffer, otherwise into a reused scratch buffer.  The slice is only valid for the duration of
+	 * the call.  By default these copy the slice and pass it to eatPrimitive, eatType, and eatKey.
+	 */
+	public SliceConsumer eatPrimitiveSlice =
+			(buffer, offset, length) -> eatPrimitive.accept(Arrays.copyOfRange(buffer, offset, offset + length));
+	public SliceConsumer eatTypeSlice =
+			(buffer, offset, length) -> eatType.accept(Arrays.copyOfRange(buffer, offset, offset + length));
+	public SliceConsumer eatKeySlice =
+			(buffer, offset, length) -> eatKey.accept(Arrays.copyOfRange(buffer, offset, offset + length));
+
+	private byte[] scratch = new byte[64];
+	private int scratchLength = 0;
+	private byte[] run = null;
+	private int runOffset;
+	private int runLength;
 	boolean sent = false;
 	private final Integer chunked;
 
@@ -38,67 +54,113 @@ public class BufferedRawReader extends RawReader {
 		this(null);
 	}
 
+	/**
+	 * @param newChunked if not null, tokens are delivered in pieces once at least this many bytes are buffered
+	 */
 	public BufferedRawReader(final Integer newChunked) {
 		this.chunked = newChunked;
 		super.eatPrimitiveBegin = () -> {
 			eatPrimitiveBegin.run();
-			top = new ByteArrayOutputStream();
-			sent = false;
+			begin();
 		};
-		super.eatPrimitive = b -> {
-			top.write(b);
-			if (chunked != null && top.size() >= chunked) {
-				eatPrimitive.accept(top.toByteArray());
-				top.reset();
-				sent = true;
-			}
+		super.eatPrimitiveSlice = (buffer, offset, length) -> {
+			accumulate(buffer, offset, length);
+			chunk(eatPrimitiveSlice);
 		};
 		super.eatPrimitiveEnd = () -> {
-			if (!sent || top.size() > 0) {
-				eatPrimitive.accept(top.toByteArray());
-				top.reset();
-			}
+			end(eatPrimitiveSlice);
 			eatPrimitiveEnd.run();
 		};
 		super.eatTypeBegin = () -> {
 			eatTypeBegin.run();
-			top = new ByteArrayOutputStream();
-			sent = false;
+			begin();
 		};
-		super.eatType = b -> {
-			top.write(b);
-			if (chunked != null && top.size() >= chunked) {
-				eatType.accept(top.toByteArray());
-				top.reset();
-				sent = true;
-			}
+		super.eatTypeSlice = (buffer, offset, length) -> {
+			accumulate(buffer, offset, length);
+			chunk(eatTypeSlice);
 		};
 		super.eatTypeEnd = () -> {
-			if (!sent || top.size() > 0) {
-				eatType.accept(top.toByteArray());
-				top.reset();
-			}
+			end(eatTypeSlice);
 			eatTypeEnd.run();
 		};
 		super.eatKeyBegin = () -> {
 			eatKeyBegin.run();
-			top = new ByteArrayOutputStream();
-			sent = false;
+			begin();
 		};
-		super.eatKey = b -> {
-			top.write(b);
-			if (chunked != null && top.size() >= chunked) {
-				eatKey.accept(top.toByteArray());
-				top.reset();
-				sent = true;
-			}
+		super.eatKeySlice = (buffer, offset, length) -> {
+			accumulate(buffer, offset, length);
+			chunk(eatKeySlice);
 		};
 		super.eatKeyEnd = () -> {
-			if (!sent || top.size() > 0) {
-				eatKey.accept(top.toByteArray());
-				top.reset();
-			}
+			end(eatKeySlice);
 			eatKeyEnd.run();
 		};
 	}
+
+	@Override
+	public int eat(final byte[] buffer, final int offset, final int length) {
+		final int consumed = super.eat(buffer, offset, length);
+		// The caller may reuse the buffer, so a token that continues into the next buffer must be copied out
+		if (run != null)
+			spill();
+		return consumed;
+	}
+
+	private void begin() {
+		run = null;
+		scratchLength = 0;
+		sent = false;
+	}
+
+	private void accumulate(final byte[] buffer, final int offset, final int length) {
+		if (run == null && scratchLength == 0) {
+			run = buffer;
+			runOffset = offset;
+			runLength = length;
+		} else {
+			if (run != null)
+				spill();
+			append(buffer, offset, length);
+		}
+	}
+
+	private void spill() {
+		append(run, runOffset, runLength);
+		run = null;
+	}
+
+	private void append(final byte[] buffer, final int offset, final int length) {
+		if (scratchLength + length > scratch.length)
+			scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+		System.arraycopy(buffer, offset, scratch, scratchLength, length);
+		scratchLength += length;
+	}
+
+	private int size() {
+		return run == null ? scratchLength : runLength;
+	}
+
+	private void chunk(final SliceConsumer consumer) {
+		if (chunked != null && size() >= chunked) {
+			deliver(consumer);
+			sent = true;
+		}
+	}
+
+	private void end(final SliceConsumer consumer) {
+		if (!sent || size() > 0)
+			deliver(consumer);
+	}
+
+	private void deliver(final SliceConsumer consumer) {
+		if (run != null) {
+			final byte[] temp = run;
+			run = null;
+			consumer.accept(temp, runOffset, runLength);
+		} else {
+			final int length = scratchLength;
+			scratchLength = 0;
+			consumer.accept(scratch, 0, length);
+		}
+	}
 }
@@ -0,0 +1,100 @@
+package com.zarbosoft.luxem.read;
+
+import com.zarbosoft.pidgoon.events.Event;
+import com.zarbosoft.rendaw.common.Pair;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+
+/**
+ * Non-blocking reading for NIO.  Feed data as it arrives and root elements are passed on as soon as they're
+ * complete.  Lexer and parser state is kept between feeds, so no thread waits on the source.  Not thread safe - use
+ * one per connection.
+ */
+public class ChannelReader {
+	private final RawReader reader;
+	private ByteBuffer buffer = null;
+	private boolean finished = false;
+
+	/**
+	 * @param reader a reader that passes on root elements, like from TreeReader.reader or Parse.reader
+	 */
+	public ChannelReader(final RawReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * @param out receives root elements as trees of Lists, String Maps, Strings, and Typeds
+	 * @return a reader
+	 */
+	public static ChannelReader tree(final Consumer<Object> out) {
+		return new ChannelReader(new TreeReader().reader(out));
+	}
+
+	/**
+	 * @param parse
+	 * @param out   receives deserialized root elements
+	 * @param <T>
+	 * @return a reader
+	 */
+	public static <T> ChannelReader parse(final Parse<T> parse, final Consumer<T> out) {
+		return new ChannelReader(parse.reader(out));
+	}
+
+	/**
+	 * @param factory
+	 * @param out     receives each event paired with its luxem path
+	 * @return a reader
+	 */
+	public static ChannelReader events(
+			final RawReader.EventFactory factory, final Consumer<Pair<Event, Object>> out
+	) {
+		return new ChannelReader(RawReader.eventReader(new BufferedRawReader(), factory, out));
+	}
+
+	/**
+	 * Lex the remaining bytes in data.  The position is advanced to the limit.
+	 *
+	 * @param data
+	 */
+	public void feed(final ByteBuffer data) {
+		reader.eat(data);
+	}
+
+	/**
+	 * Read and lex whatever is available from a non-blocking channel.  At the end of the stream the document is
+	 * finished.
+	 *
+	 * @param channel
+	 * @return false once the end of the stream was reached
+	 */
+	public boolean read(final ReadableByteChannel channel) {
+		if (finished)
+			return false;
+		if (buffer == null)
+			buffer = ByteBuffer.allocate(8192);
+		while (true) {
+			buffer.clear();
+			final int read = uncheck(() -> channel.read(buffer));
+			if (read < 0) {
+				finish();
+				return false;
+			}
+			if (read == 0)
+				return true;
+			buffer.flip();
+			reader.eat(buffer);
+		}
+	}
+
+	/**
+	 * Signal the end of the document.
+	 */
+	public void finish() {
+		finished = true;
+		reader.finish();
+	}
+}
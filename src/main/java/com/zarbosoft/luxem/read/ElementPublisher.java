@@ -0,0 +1,177 @@
+package com.zarbosoft.luxem.read;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+
+/**
+ * Publishes root elements with backpressure.  The document is only read, lexed, and deserialized as far as needed to
+ * produce the elements requested.  Elements are delivered on the thread calling `request`.
+ * <p>
+ * The interfaces match java.util.concurrent.Flow and Reactive Streams method for method so they can be adapted
+ * directly.
+ *
+ * @param <T>
+ */
+public class ElementPublisher<T> {
+	public interface Subscriber<T> {
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	public interface Subscription {
+		void request(long n);
+
+		void cancel();
+	}
+
+	private final ParallelReader.ReaderFactory<T> factory;
+	private final InputStream source;
+	private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+	/**
+	 * @param factory creates a reader that passes each complete root element to its argument
+	 * @param source
+	 */
+	public ElementPublisher(final ParallelReader.ReaderFactory<T> factory, final InputStream source) {
+		this.factory = factory;
+		this.source = source;
+	}
+
+	/**
+	 * Publish root elements as trees of Lists, String Maps, Strings, and Typeds.
+	 *
+	 * @param source
+	 * @return a publisher
+	 */
+	public static ElementPublisher<Object> tree(final InputStream source) {
+		return new ElementPublisher<>(out -> new TreeReader().reader(out), source);
+	}
+
+	/**
+	 * Only one subscriber is supported, since the source is consumed.
+	 *
+	 * @param subscriber
+	 */
+	public void subscribe(final Subscriber<? super T> subscriber) {
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Subscription() {
+				@Override
+				public void request(final long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("Publisher already has a subscriber."));
+			return;
+		}
+		final Emitter emitter = new Emitter(subscriber);
+		subscriber.onSubscribe(emitter);
+	}
+
+	private class Emitter implements Subscription {
+		private final Subscriber<? super T> subscriber;
+		private final AtomicLong demand = new AtomicLong(0);
+		private final AtomicInteger work = new AtomicInteger(0);
+		private volatile boolean cancelled = false;
+		private boolean done = false;
+		private volatile Throwable error = null;
+
+		private final Deque<T> pending = new ArrayDeque<>();
+		private RawReader reader;
+		private final byte[] buffer = new byte[4096];
+		private int offset = 0;
+		private int limit = 0;
+		private boolean ended = false;
+
+		private Emitter(final Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+			reader = factory.create(element -> {
+				pending.addLast(element);
+				reader.pause();
+			});
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("Request must be positive.");
+				cancelled = true;
+			} else
+				demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * Emit elements while there's demand.  Reentrant calls (from onNext) and concurrent calls hand their work to
+		 * the call already emitting.
+		 */
+		private void drain() {
+			if (work.getAndIncrement() != 0)
+				return;
+			do {
+				if (error != null && !done) {
+					done = true;
+					subscriber.onError(error);
+				}
+				while (!done && !cancelled && demand.get() > 0) {
+					final T next;
+					try {
+						next = next();
+					} catch (final RuntimeException e) {
+						done = true;
+						subscriber.onError(e);
+						break;
+					}
+					if (next == null) {
+						done = true;
+						subscriber.onComplete();
+						break;
+					}
+					demand.decrementAndGet();
+					subscriber.onNext(next);
+				}
+			} while (work.decrementAndGet() != 0);
+		}
+
+		/**
+		 * @return the next root element, or null at the end of the document
+		 */
+		private T next() {
+			while (pending.isEmpty()) {
+				if (offset < limit) {
+					offset += reader.eat(buffer, offset, limit - offset);
+				} else if (ended) {
+					return null;
+				} else {
+					final int read = uncheck(() -> source.read(buffer));
+					if (read < 0) {
+						ended = true;
+						reader.finish();
+					} else {
+						offset = 0;
+						limit = read;
+					}
+				}
+			}
+			return pending.pollFirst();
+		}
+	}
+}
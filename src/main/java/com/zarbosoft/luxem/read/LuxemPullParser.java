@@ -0,0 +1,176 @@
+package com.zarbosoft.luxem.read;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+
+/**
+ * Pull style luxem reader.  Call `next` to advance to the next token, then read the token's text with the
+ * accessors.  Text is only valid until the following call to `next`, and isn't decoded unless requested.
+ */
+public class LuxemPullParser {
+	public enum Token {
+		ARRAY_OPEN,
+		ARRAY_CLOSE,
+		RECORD_OPEN,
+		RECORD_CLOSE,
+		KEY,
+		TYPE,
+		PRIMITIVE,
+		END
+	}
+
+	private final BufferedRawReader reader = new BufferedRawReader();
+	private final InputStream stream;
+	private final byte[] buffer;
+	private int offset;
+	private int limit;
+	private boolean finished = false;
+
+	private Token token = null;
+	private byte[] textBuffer = null;
+	private int textOffset = 0;
+	private int textLength = 0;
+
+	public LuxemPullParser(final InputStream stream) {
+		this(stream, new byte[4096], 0, 0);
+	}
+
+	public LuxemPullParser(final byte[] data) {
+		this(null, data, 0, data.length);
+	}
+
+	public LuxemPullParser(final byte[] data, final int offset, final int length) {
+		this(null, data, offset, offset + length);
+	}
+
+	private LuxemPullParser(final InputStream stream, final byte[] buffer, final int offset, final int limit) {
+		this.stream = stream;
+		this.buffer = buffer;
+		this.offset = offset;
+		this.limit = limit;
+		reader.eatArrayBegin = () -> found(Token.ARRAY_OPEN);
+		reader.eatArrayEnd = () -> found(Token.ARRAY_CLOSE);
+		reader.eatRecordBegin = () -> found(Token.RECORD_OPEN);
+		reader.eatRecordEnd = () -> found(Token.RECORD_CLOSE);
+		reader.eatKeySlice = (b, o, l) -> found(Token.KEY, b, o, l);
+		reader.eatTypeSlice = (b, o, l) -> found(Token.TYPE, b, o, l);
+		reader.eatPrimitiveSlice = (b, o, l) -> found(Token.PRIMITIVE, b, o, l);
+	}
+
+	private void found(final Token token) {
+		this.token = token;
+		reader.pause();
+	}
+
+	private void found(final Token token, final byte[] buffer, final int offset, final int length) {
+		textBuffer = buffer;
+		textOffset = offset;
+		textLength = length;
+		found(token);
+	}
+
+	/**
+	 * Advance to the next token.
+	 *
+	 * @return the token kind, END once the document is exhausted
+	 */
+	public Token next() {
+		token = null;
+		while (true) {
+			if (offset < limit) {
+				offset += reader.eat(buffer, offset, limit - offset);
+				if (token != null)
+					return token;
+			} else if (finished) {
+				return token = Token.END;
+			} else if (!fill()) {
+				finished = true;
+				reader.finish();
+				if (token != null)
+					return token;
+			}
+		}
+	}
+
+	private boolean fill() {
+		if (stream == null)
+			return false;
+		final int read = uncheck(() -> stream.read(buffer));
+		if (read < 0)
+			return false;
+		offset = 0;
+		limit = read;
+		return true;
+	}
+
+	/**
+	 * Skip the rest of the array or record just opened, or the value after the key or type just read.  The next
+	 * token is whatever follows the skipped value.  See RawReader.skipValue.
+	 */
+	public void skipValue() {
+		reader.skipValue();
+	}
+
+	/**
+	 * @return the last token returned by `next`, or null before the first call
+	 */
+	public Token token() {
+		return token;
+	}
+
+	/**
+	 * @return the array holding the text of the current key, type, or primitive
+	 */
+	public byte[] textBuffer() {
+		return textBuffer;
+	}
+
+	public int textOffset() {
+		return textOffset;
+	}
+
+	public int textLength() {
+		return textLength;
+	}
+
+	/**
+	 * @return a copy of the text of the current key, type, or primitive
+	 */
+	public byte[] bytes() {
+		return Arrays.copyOfRange(textBuffer, textOffset, textOffset + textLength);
+	}
+
+	/**
+	 * @return the decoded text of the current key, type, or primitive
+	 */
+	public String string() {
+		return new String(textBuffer, textOffset, textLength, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the current key, type, or primitive parsed as an int without decoding
+	 * @throws NumberFormatException if the text isn't an int
+	 */
+	public int parseInt() {
+		return Numbers.parseInt(textBuffer, textOffset, textLength);
+	}
+
+	/**
+	 * @return the current key, type, or primitive parsed as a long without decoding
+	 * @throws NumberFormatException if the text isn't a long
+	 */
+	public long parseLong() {
+		return Numbers.parseLong(textBuffer, textOffset, textLength);
+	}
+
+	/**
+	 * @return the current key, type, or primitive parsed as a double without decoding
+	 * @throws NumberFormatException if the text isn't a double
+	 */
+	public double parseDouble() {
+		return Numbers.parseDouble(textBuffer, textOffset, textLength);
+	}
+}
@@ -0,0 +1,280 @@
+package com.zarbosoft.luxem.read;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Number parsing directly from UTF-8 bytes.  Results and accepted syntax match Integer.valueOf, Long.valueOf, and
+ * Double.valueOf - anything outside the common plain decimal forms is decoded and passed to those.
+ * <p>
+ * Doubles use the Clinger fast path when exact, otherwise the Eisel-Lemire algorithm with a 128 bit power of 5
+ * table, falling back to Double.valueOf for more than 19 significant digits or the rare ambiguous case.
+ */
+public final class Numbers {
+	private static final int MIN_POWER = -342;
+	private static final int MAX_POWER = 308;
+
+	/**
+	 * Truncated 128 bit normalized 5^q for q from MIN_POWER to MAX_POWER, high and low words interleaved.
+	 */
+	private static final long[] POWERS_OF_FIVE = new long[(MAX_POWER - MIN_POWER + 1) * 2];
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+			1e19, 1e20, 1e21, 1e22
+	};
+
+	static {
+		final BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+		final BigInteger two127 = BigInteger.ONE.shiftLeft(127);
+		for (int q = MIN_POWER; q <= MAX_POWER; ++q) {
+			BigInteger value;
+			if (q < 0) {
+				final BigInteger power = BigInteger.valueOf(5).pow(-q);
+				final int z = power.subtract(BigInteger.ONE).bitLength();
+				final int b = q >= -27 ? z + 127 : 2 * z + 128;
+				value = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+			} else {
+				value = BigInteger.valueOf(5).pow(q);
+				if (value.compareTo(two127) < 0)
+					value = value.shiftLeft(127 - value.bitLength() + 1);
+			}
+			if (value.compareTo(two128) >= 0)
+				value = value.shiftRight(value.bitLength() - 128);
+			final int index = (q - MIN_POWER) * 2;
+			POWERS_OF_FIVE[index] = value.shiftRight(64).longValue();
+			POWERS_OF_FIVE[index + 1] = value.longValue();
+		}
+	}
+
+	private Numbers() {
+	}
+
+	public static int parseInt(final byte[] buffer, final int offset, final int length) {
+		final long out = parse(buffer, offset, length, Integer.MIN_VALUE);
+		if (out == FALLBACK)
+			return Integer.valueOf(decode(buffer, offset, length));
+		return (int) out;
+	}
+
+	public static long parseLong(final byte[] buffer, final int offset, final int length) {
+		final long out = parse(buffer, offset, length, Long.MIN_VALUE);
+		if (out == FALLBACK)
+			return Long.valueOf(decode(buffer, offset, length));
+		return out;
+	}
+
+	/**
+	 * Marker result for input with non-ASCII bytes, which may be non-ASCII digits.  A real result with this value
+	 * also takes the slow path but gets the same answer.
+	 */
+	private static final long FALLBACK = Long.MIN_VALUE + 1;
+
+	/**
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @param min    the minimum value of the result type
+	 * @return the value, or FALLBACK
+	 */
+	private static long parse(final byte[] buffer, final int offset, final int length, final long min) {
+		if (length == 0)
+			throw invalid(buffer, offset, length);
+		int i = offset;
+		final int end = offset + length;
+		boolean negative = false;
+		if (buffer[i] == '-' || buffer[i] == '+') {
+			negative = buffer[i] == '-';
+			if (++i == end)
+				throw invalid(buffer, offset, length);
+		}
+		// Accumulate negatively like Long.parseLong, since the negative range is larger
+		final long limit = negative ? min : min + 1;
+		final long multiplyLimit = limit / 10;
+		long out = 0;
+		for (; i < end; ++i) {
+			final int b = buffer[i];
+			if (b < 0)
+				return FALLBACK;
+			final int digit = b - '0';
+			if (digit < 0 || digit > 9 || out < multiplyLimit)
+				throw invalid(buffer, offset, length);
+			out *= 10;
+			if (out < limit + digit)
+				throw invalid(buffer, offset, length);
+			out -= digit;
+		}
+		return negative ? out : -out;
+	}
+
+	public static double parseDouble(final byte[] buffer, final int offset, final int length) {
+		final int end = offset + length;
+		int i = offset;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			++i;
+		}
+		long significand = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false;
+		while (i < end && buffer[i] == '0') {
+			any = true;
+			++i;
+		}
+		for (; i < end; ++i) {
+			final int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9)
+				break;
+			any = true;
+			if (digits < 19) {
+				significand = significand * 10 + digit;
+				++digits;
+			} else
+				return fallback(buffer, offset, length);
+		}
+		if (i < end && buffer[i] == '.') {
+			++i;
+			if (digits == 0)
+				while (i < end && buffer[i] == '0') {
+					any = true;
+					exponent -= 1;
+					++i;
+				}
+			for (; i < end; ++i) {
+				final int digit = buffer[i] - '0';
+				if (digit < 0 || digit > 9)
+					break;
+				any = true;
+				if (digits < 19) {
+					significand = significand * 10 + digit;
+					++digits;
+					exponent -= 1;
+				} else
+					return fallback(buffer, offset, length);
+			}
+		}
+		if (!any)
+			return fallback(buffer, offset, length);
+		if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+			++i;
+			boolean negativeExponent = false;
+			if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+				negativeExponent = buffer[i] == '-';
+				++i;
+			}
+			if (i == end)
+				return fallback(buffer, offset, length);
+			int explicit = 0;
+			for (; i < end; ++i) {
+				final int digit = buffer[i] - '0';
+				if (digit < 0 || digit > 9)
+					break;
+				if (explicit < 100000)
+					explicit = explicit * 10 + digit;
+			}
+			exponent += negativeExponent ? -explicit : explicit;
+		}
+		if (i != end)
+			return fallback(buffer, offset, length);
+		final double out = compute(significand, exponent);
+		if (Double.isNaN(out))
+			return fallback(buffer, offset, length);
+		return negative ? -out : out;
+	}
+
+	/**
+	 * @param significand up to 19 decimal digits, unsigned
+	 * @param exponent    decimal exponent
+	 * @return the closest double to significand * 10^exponent, or NaN if it couldn't be determined
+	 */
+	private static double compute(final long significand, final int exponent) {
+		if (significand == 0 || exponent < MIN_POWER)
+			return 0.0;
+		if (exponent > MAX_POWER)
+			return Double.POSITIVE_INFINITY;
+
+		// Clinger - both operands exact so the result is correctly rounded
+		if (exponent >= -22 && exponent <= 22 && significand >= 0 && significand <= 1L << 53) {
+			if (exponent < 0)
+				return significand / POWERS_OF_TEN[-exponent];
+			return significand * POWERS_OF_TEN[exponent];
+		}
+
+		// Eisel-Lemire
+		final int leadingZeros = Long.numberOfLeadingZeros(significand);
+		final long w = significand << leadingZeros;
+		final int index = (exponent - MIN_POWER) * 2;
+		long high = multiplyHigh(w, POWERS_OF_FIVE[index]);
+		long low = w * POWERS_OF_FIVE[index];
+		if ((high & 0x1FF) == 0x1FF) {
+			final long secondHigh = multiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+			low += secondHigh;
+			if (Long.compareUnsigned(secondHigh, low) > 0)
+				high += 1;
+		}
+		if (low == -1L && (exponent < -27 || exponent > 55))
+			return Double.NaN;
+		final int upperBit = (int) (high >>> 63);
+		long mantissa = high >>> (upperBit + 9);
+		int power = (((152170 + 65536) * exponent) >> 16) + 63 + upperBit - leadingZeros + 1023;
+		if (power <= 0) {
+			// Subnormal
+			if (-power + 1 >= 64)
+				return 0.0;
+			mantissa >>>= -power + 1;
+			mantissa += mantissa & 1;
+			mantissa >>>= 1;
+			power = mantissa < 1L << 52 ? 0 : 1;
+			return Double.longBitsToDouble(mantissa & ((1L << 52) - 1) | (long) power << 52);
+		}
+		if (Long.compareUnsigned(low, 1) <= 0 &&
+				exponent >= -4 &&
+				exponent <= 23 &&
+				(mantissa & 3) == 1 &&
+				mantissa << (upperBit + 9) == high) {
+			// Exactly halfway, round to even
+			mantissa &= ~1L;
+		}
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if (mantissa >= 2L << 52) {
+			mantissa = 1L << 52;
+			power += 1;
+		}
+		mantissa &= ~(1L << 52);
+		if (power >= 0x7FF)
+			return Double.POSITIVE_INFINITY;
+		return Double.longBitsToDouble(mantissa | (long) power << 52);
+	}
+
+	/**
+	 * @param a
+	 * @param b
+	 * @return the high 64 bits of the unsigned 128 bit product
+	 */
+	private static long multiplyHigh(final long a, final long b) {
+		final long aLow = a & 0xFFFFFFFFL;
+		final long aHigh = a >>> 32;
+		final long bLow = b & 0xFFFFFFFFL;
+		final long bHigh = b >>> 32;
+		final long lowLow = aLow * bLow;
+		final long highLow = aHigh * bLow;
+		final long lowHigh = aLow * bHigh;
+		final long cross = (lowLow >>> 32) + (highLow & 0xFFFFFFFFL) + lowHigh;
+		return aHigh * bHigh + (highLow >>> 32) + (cross >>> 32);
+	}
+
+	private static double fallback(final byte[] buffer, final int offset, final int length) {
+		return Double.valueOf(decode(buffer, offset, length));
+	}
+
+	private static String decode(final byte[] buffer, final int offset, final int length) {
+		return new String(buffer, offset, length, StandardCharsets.UTF_8);
+	}
+
+	private static NumberFormatException invalid(final byte[] buffer, final int offset, final int length) {
+		return new NumberFormatException(String.format("For input string: \"%s\"", decode(buffer, offset, length)));
+	}
+}
@@ -0,0 +1,353 @@
+package com.zarbosoft.luxem.read;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a document in memory (or mapped) on multiple threads.
+ * <p>
+ * The document is divided into chunks, and each chunk is scanned in parallel for commas between root elements.  The
+ * scan tracks quotes, types, comments and escapes, but since a chunk may start anywhere it's done for the three
+ * likely starting cases (between elements, inside an unquoted word, or inside a quoted string) and the right case is
+ * picked by chaining the chunk results in order.  Segments between the chosen commas are then lexed and deserialized
+ * in parallel.
+ * <p>
+ * The split is speculative: if a segment doesn't end exactly between root elements the following segment is lexed
+ * again, in order, continuing from the previous segment's reader.  Results are the same as a sequential read.
+ */
+public class ParallelReader {
+	@FunctionalInterface
+	public interface ReaderFactory<T> {
+		/**
+		 * @param out
+		 * @return a reader that passes each complete root element to `out`
+		 */
+		RawReader create(Consumer<T> out);
+	}
+
+	/**
+	 * The first three modes are scanned speculatively for every chunk, and index the scan results.
+	 */
+	private static final int MODE_STRUCTURE = 0;
+	private static final int MODE_WORD = 1;
+	private static final int MODE_QUOTED = 2;
+	private static final int MODE_TYPE = 3;
+	private static final int MODE_COMMENT = 4;
+
+	/**
+	 * Commas deeper than this relative to the chunk start aren't recorded.
+	 */
+	private static final int MAX_DEPTH = 64;
+
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private int chunkSize = 16 * 1024 * 1024;
+	private int window = -1;
+
+	public ParallelReader pool(final ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * @param size approximate number of bytes lexed by each task
+	 * @return this
+	 */
+	public ParallelReader chunkSize(final int size) {
+		if (size < 1)
+			throw new IllegalArgumentException("Chunk size must be positive");
+		this.chunkSize = size;
+		return this;
+	}
+
+	/**
+	 * @param window maximum number of segments lexed ahead of the consumer, defaults to twice the pool parallelism
+	 * @return this
+	 */
+	public ParallelReader window(final int window) {
+		if (window < 1)
+			throw new IllegalArgumentException("Window must be positive");
+		this.window = window;
+		return this;
+	}
+
+	/**
+	 * Read root elements as trees of Lists, String Maps, Strings, and Typeds.
+	 *
+	 * @param data luxem, from the position to the limit
+	 * @return root elements in document order
+	 */
+	public Stream<Object> read(final ByteBuffer data) {
+		return read(data, out -> new TreeReader().reader(out));
+	}
+
+	/**
+	 * Read root elements as deserialized objects.
+	 *
+	 * @param data  luxem, from the position to the limit
+	 * @param parse
+	 * @param <T>
+	 * @return root elements in document order
+	 */
+	public <T> Stream<T> read(final ByteBuffer data, final Parse<T> parse) {
+		return read(data, parse::reader);
+	}
+
+	/**
+	 * @param data    luxem, from the position to the limit
+	 * @param factory creates a reader for each segment, called from pool threads
+	 * @param <T>
+	 * @return root elements in document order
+	 */
+	public <T> Stream<T> read(final ByteBuffer data, final ReaderFactory<T> factory) {
+		final ByteBuffer source = data.slice();
+		final int[] splits = split(source);
+		final List<Segment> segments = new ArrayList<>();
+		for (int i = 0; i < splits.length - 1; ++i)
+			segments.add(new Segment(splits[i], splits[i + 1], i == splits.length - 2));
+		final int window = this.window == -1 ? pool.getParallelism() * 2 : this.window;
+		final Iterator<List<T>> iterator = new Iterator<List<T>>() {
+			private final Deque<ForkJoinTask<Lexer<T>>> pending = new ArrayDeque<>();
+			private int submitted = 0;
+			private int consumed = 0;
+			private Lexer<T> previous = null;
+
+			@Override
+			public boolean hasNext() {
+				return consumed < segments.size();
+			}
+
+			@Override
+			public List<T> next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				while (pending.size() < window && submitted < segments.size()) {
+					final Segment segment = segments.get(submitted++);
+					pending.addLast(pool.submit(() -> {
+						final Lexer<T> lexer = new Lexer<>(factory);
+						segment.eat(source, lexer.reader);
+						return lexer;
+					}));
+				}
+				final ForkJoinTask<Lexer<T>> task = pending.pollFirst();
+				final Segment segment = segments.get(consumed++);
+				final Lexer<T> lexer;
+				if (previous != null && !previous.reader.atRoot()) {
+					// Misspeculated split - the segment's lexer started in the wrong state
+					task.cancel(false);
+					lexer = previous;
+					lexer.out = new ArrayList<>();
+					segment.eat(source, lexer.reader);
+				} else
+					lexer = task.join();
+				previous = lexer;
+				return lexer.out;
+			}
+		};
+		return StreamSupport
+				.stream(Spliterators.spliterator(iterator, segments.size(), Spliterator.ORDERED), false)
+				.flatMap(List::stream);
+	}
+
+	/**
+	 * @param source
+	 * @return segment boundaries, including the start and end of the source
+	 */
+	private int[] split(final ByteBuffer source) {
+		final int length = source.remaining();
+		final int chunks = Math.max(1, (length + chunkSize - 1) / chunkSize);
+		final List<ForkJoinTask<Scan[]>> scans = new ArrayList<>();
+		for (int i = 0; i < chunks; ++i) {
+			final int start = i * chunkSize;
+			final int end = Math.min(length, start + chunkSize);
+			if (i == 0)
+				scans.add(pool.submit(() -> new Scan[] {new Scan(MODE_STRUCTURE).scan(source, start, end)}));
+			else
+				scans.add(pool.submit(() -> new Scan[] {
+						new Scan(MODE_STRUCTURE).scan(source, start, end),
+						new Scan(MODE_WORD).scan(source, start, end),
+						new Scan(MODE_QUOTED).scan(source, start, end)
+				}));
+		}
+
+		final List<Integer> splits = new ArrayList<>();
+		splits.add(0);
+		int mode = MODE_STRUCTURE;
+		boolean escape = false;
+		int depth = 0;
+		for (int i = 0; i < chunks; ++i) {
+			if (depth < 0)
+				// Confused by something the scan doesn't model, lex the rest in order
+				break;
+			final Scan scan;
+			if (mode <= MODE_QUOTED && !escape)
+				scan = scans.get(i).join()[mode];
+			else {
+				// Escapes, types and comments are rare at chunk boundaries
+				final int start = i * chunkSize;
+				final Scan temp = new Scan(mode);
+				temp.escape = escape;
+				scan = temp.scan(source, start, Math.min(length, start + chunkSize));
+			}
+			if (i > 0 && depth < MAX_DEPTH && scan.commas[depth] != -1)
+				splits.add(scan.commas[depth] + 1);
+			depth += scan.depth;
+			mode = scan.mode;
+			escape = scan.escape;
+		}
+		if (splits.get(splits.size() - 1) != length)
+			splits.add(length);
+		final int[] out = new int[splits.size()];
+		for (int i = 0; i < out.length; ++i)
+			out[i] = splits.get(i);
+		return out;
+	}
+
+	/**
+	 * Approximates the lexer closely enough to find root element commas.
+	 */
+	private static class Scan {
+		int mode;
+		boolean escape = false;
+
+		/**
+		 * Depth change over the chunk.
+		 */
+		int depth = 0;
+
+		/**
+		 * Position of the first comma at each depth at or above the starting depth, indexed by -relative depth.
+		 */
+		final int[] commas = new int[MAX_DEPTH];
+
+		private Scan(final int mode) {
+			this.mode = mode;
+			Arrays.fill(commas, -1);
+		}
+
+		public Scan scan(final ByteBuffer source, final int start, final int end) {
+			if (source.hasArray()) {
+				scan(source.array(), source.arrayOffset(), start, end);
+			} else {
+				final byte[] buffer = new byte[Math.min(end - start, 65536)];
+				final ByteBuffer view = source.duplicate();
+				view.position(start);
+				for (int at = start; at < end; at += buffer.length) {
+					final int length = Math.min(buffer.length, end - at);
+					view.get(buffer, 0, length);
+					scan(buffer, -at, at, at + length);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * @param buffer
+		 * @param base   index in buffer of source position 0
+		 * @param start  source position
+		 * @param end    source position
+		 */
+		private void scan(final byte[] buffer, final int base, final int start, final int end) {
+			for (int i = start; i < end; ++i) {
+				final byte next = buffer[base + i];
+				if (escape) {
+					escape = false;
+					continue;
+				}
+				if (next == '\\') {
+					escape = true;
+					if (mode == MODE_STRUCTURE)
+						mode = MODE_WORD;
+					continue;
+				}
+				switch (mode) {
+					case MODE_STRUCTURE:
+					case MODE_WORD:
+						switch (next) {
+							case ' ':
+							case '\t':
+							case '\n':
+							case ':':
+								mode = MODE_STRUCTURE;
+								break;
+							case '*':
+								mode = MODE_COMMENT;
+								break;
+							case ',':
+								if (depth <= 0 && -depth < MAX_DEPTH && commas[-depth] == -1)
+									commas[-depth] = i;
+								mode = MODE_STRUCTURE;
+								break;
+							case ']':
+							case '}':
+								depth -= 1;
+								mode = MODE_STRUCTURE;
+								break;
+							case '[':
+							case '{':
+								if (mode == MODE_STRUCTURE)
+									depth += 1;
+								break;
+							case '"':
+								if (mode == MODE_STRUCTURE)
+									mode = MODE_QUOTED;
+								break;
+							case '(':
+								if (mode == MODE_STRUCTURE)
+									mode = MODE_TYPE;
+								break;
+							default:
+								mode = MODE_WORD;
+						}
+						break;
+					case MODE_QUOTED:
+						if (next == '"')
+							mode = MODE_STRUCTURE;
+						break;
+					case MODE_TYPE:
+						if (next == ')')
+							mode = MODE_STRUCTURE;
+						break;
+					case MODE_COMMENT:
+						if (next == '*')
+							mode = MODE_STRUCTURE;
+						break;
+				}
+			}
+		}
+	}
+
+	private static class Segment {
+		final int start;
+		final int end;
+		final boolean last;
+
+		private Segment(final int start, final int end, final boolean last) {
+			this.start = start;
+			this.end = end;
+			this.last = last;
+		}
+
+		public void eat(final ByteBuffer source, final RawReader reader) {
+			final ByteBuffer view = source.duplicate();
+			view.limit(end);
+			view.position(start);
+			reader.eat(view);
+			if (last)
+				reader.finish();
+		}
+	}
+
+	private static class Lexer<T> {
+		final RawReader reader;
+		List<T> out = new ArrayList<>();
+
+		private Lexer(final ReaderFactory<T> factory) {
+			reader = factory.create(value -> out.add(value));
+		}
+	}
+}
@@ -10,21 +10,28 @@ import com.zarbosoft.rendaw.common.Pair;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import static com.zarbosoft.rendaw.common.Common.concatNull;
+import static com.zarbosoft.rendaw.common.Common.drain;
 import static com.zarbosoft.rendaw.common.Common.iterable;
 
 public class Parse<O> extends BaseParse<Parse<O>> {
 
 	private int eventUncertainty = 20;
 	private RawReader.EventFactory factory = null;
+	private StringCache cache = null;
 
 	private Parse(final Parse<O> other) {
 		super(other);
 		this.eventUncertainty = other.eventUncertainty;
 		this.factory = other.factory;
+		this.cache = other.cache;
 	}
 
 	@Override
@@ -51,24 +58,46 @@ public class Parse<O> extends BaseParse<Parse<O>> {
 		return out;
 	}
 
+	/**
+	 * Intern keys, types, and primitives.
+	 *
+	 * @param cache
+	 * @return a copy of this parse with the cache set
+	 */
+	public Parse<O> stringCache(final StringCache cache) {
+		if (this.cache != null)
+			throw new IllegalArgumentException("String cache already set");
+		final Parse<O> out = split();
+		out.cache = cache;
+		return out;
+	}
+
 	public O parse(final String string) {
 		return parse(new ByteArrayInputStream(string.getBytes(StandardCharsets.UTF_8)));
 	}
 
 	public O parse(final InputStream stream) {
-		return parse(RawReader.streamEvents(stream, factory == null ? new RawReader.DefaultEventFactory() : factory));
+		final Whole whole = new Whole();
+		RawReader.stream(whole.reader, stream).forEach(last -> {
+		});
+		return whole.stream.finish();
+	}
+
+	/**
+	 * Parse a file read through a memory mapping rather than stream reads.
+	 *
+	 * @param path
+	 * @return the parsed document
+	 */
+	public O parse(final Path path) {
+		final Whole whole = new Whole();
+		RawReader.stream(whole.reader, path).forEach(last -> {
+		});
+		return whole.stream.finish();
 	}
 
 	public O parse(final Stream<Pair<Event, Object>> stream) {
-		EventStream<O> stream1 = new com.zarbosoft.pidgoon.events.Parse<O>()
-				.grammar(grammar)
-				.root(root)
-				.stack(initialStack)
-				.errorHistory(errorHistoryLimit)
-				.dumpAmbiguity(dumpAmbiguity)
-				.uncertainty(eventUncertainty)
-				.callbacks((Map<Object, Callback<Store>>) (Object) callbacks)
-				.parse();
+		EventStream<O> stream1 = start();
 		for (final Pair<Event, Object> pair : iterable(stream))
 			stream1 = stream1.push(pair.first, pair.second);
 		return stream1.finish();
@@ -79,48 +108,113 @@ public class Parse<O> extends BaseParse<Parse<O>> {
 	}
 
 	public Stream<O> parseByElement(final InputStream stream) {
-		return parseByElement(RawReader.streamEvents(stream,
-				factory == null ? new RawReader.DefaultEventFactory() : factory
-		));
+		final Deque<O> out = new ArrayDeque<>();
+		return RawReader.stream(reader(out::addLast), stream).flatMap(last -> drain(out));
 	}
 
-	public Stream<O> parseByElement(final Stream<Pair<Event, Object>> stream) {
-		class State {
-			EventStream<O> stream = null;
-
-			private void createStream() {
-				stream = new com.zarbosoft.pidgoon.events.Parse<O>()
-						.grammar(grammar)
-						.root(root)
-						.stack(initialStack)
-						.errorHistory(errorHistoryLimit)
-						.dumpAmbiguity(dumpAmbiguity)
-						.uncertainty(eventUncertainty)
-						.callbacks((Map<Object, Callback<Store>>) (Object) callbacks)
-						.parse();
-			}
+	/**
+	 * Parse a file read through a memory mapping rather than stream reads.
+	 *
+	 * @param path
+	 * @return root elements as they're completed
+	 */
+	public Stream<O> parseByElement(final Path path) {
+		final Deque<O> out = new ArrayDeque<>();
+		return RawReader.stream(reader(out::addLast), path).flatMap(last -> drain(out));
+	}
 
-			public void handleEvent(final Pair<Event, Object> pair) {
-				stream = stream.push(pair.first, pair.second);
-			}
-		}
-		final State state = new State();
+	public Stream<O> parseByElement(final Stream<Pair<Event, Object>> stream) {
+		final Elements elements = new Elements();
 		return concatNull(stream).map(pair -> {
 			if (pair == null) {
-				if (state.stream == null)
-					return null;
-				else
-					throw new InvalidStream("Input stream ended mid-element.");
+				elements.finish();
+				return null;
 			}
-			if (state.stream == null)
-				state.createStream();
-			state.handleEvent(pair);
-			if (state.stream.ended()) {
-				O result = state.stream.finish();
-				state.stream = null;
+			return elements.push(pair.first, pair.second);
+		}).filter(o -> o != null);
+	}
+
+	/**
+	 * Deserialize root elements only as they're requested.
+	 *
+	 * @param stream
+	 * @return a publisher of root elements
+	 */
+	public ElementPublisher<O> publishByElement(final InputStream stream) {
+		return new ElementPublisher<>(this::reader, stream);
+	}
+
+	/**
+	 * Create a reader that deserializes each root element and passes it to `out` as soon as it's complete.
+	 *
+	 * @param out
+	 * @return a reader to feed the document to
+	 */
+	public RawReader reader(final Consumer<O> out) {
+		final Elements elements = new Elements();
+		return RawReader.pathEventReader(new BufferedRawReader() {
+			@Override
+			public void finish() {
+				super.finish();
+				elements.finish();
+			}
+		}, factory == null ? new RawReader.DefaultEventFactory() : factory, (event, at) -> {
+			final O result = elements.push(event, at);
+			if (result != null)
+				out.accept(result);
+		}, cache);
+	}
+
+	private EventStream<O> start() {
+		return new com.zarbosoft.pidgoon.events.Parse<O>()
+				.grammar(grammar)
+				.root(root)
+				.stack(initialStack)
+				.errorHistory(errorHistoryLimit)
+				.dumpAmbiguity(dumpAmbiguity)
+				.uncertainty(eventUncertainty)
+				.callbacks((Map<Object, Callback<Store>>) (Object) callbacks)
+				.parse();
+	}
+
+	/**
+	 * Parses the whole document as events are lexed rather than queueing them through streamEvents.
+	 */
+	private class Whole {
+		EventStream<O> stream = start();
+		final RawReader reader = RawReader.pathEventReader(new BufferedRawReader(),
+				factory == null ? new RawReader.DefaultEventFactory() : factory,
+				(event, at) -> stream = stream.push(event, at),
+				cache
+		);
+	}
+
+	/**
+	 * Parses events for one root element at a time.
+	 */
+	private class Elements {
+		EventStream<O> stream = null;
+
+		/**
+		 * @param event
+		 * @param at    the luxem path of the event
+		 * @return the deserialized element if this event completed it, otherwise null
+		 */
+		public O push(final Event event, final Object at) {
+			if (stream == null)
+				stream = start();
+			stream = stream.push(event, at);
+			if (stream.ended()) {
+				final O result = stream.finish();
+				stream = null;
 				return result;
 			} else
 				return null;
-		}).filter(o -> o != null);
+		}
+
+		public void finish() {
+			if (stream != null)
+				throw new InvalidStream("Input stream ended mid-element.");
+		}
 	}
 }
@@ -0,0 +1,364 @@
+package com.zarbosoft.luxem.read;
+
+import com.zarbosoft.luxem.read.path.LuxemArrayPath;
+import com.zarbosoft.luxem.read.path.LuxemObjectPath;
+import com.zarbosoft.luxem.read.path.LuxemPath;
+import com.zarbosoft.rendaw.common.Pair;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads only the parts of a document matching a set of path patterns, as trees.  Everything else is skipped in the
+ * lexer without buffering or decoding.
+ * <p>
+ * Patterns are written like the string form of LuxemPath: a segment per level starting with the index of the root
+ * element, like `/0/metrics/latency`.  A segment can be `*` to match any key or index, and can be prefixed with a
+ * type like `/(event)*` to match only values with that type.  Matching values are read like TreeReader, with a
+ * Typed wrapper if the value has a type.  Matches within another match's value aren't reported separately.
+ */
+public class ProjectionReader {
+	private static class Segment {
+		final String type;
+
+		/**
+		 * Null for any.
+		 */
+		final String name;
+
+		/**
+		 * The array index name stands for, or -1 if it isn't one.
+		 */
+		final int index;
+
+		private Segment(final String type, final String name) {
+			this.type = type;
+			this.name = name;
+			this.index = index(name);
+		}
+
+		private static int index(final String name) {
+			if (name == null || name.isEmpty() || name.length() > 10)
+				return -1;
+			for (int i = 0; i < name.length(); ++i) {
+				final char c = name.charAt(i);
+				if (c < '0' || c > '9' || (c == '0' && i == 0 && name.length() > 1))
+					return -1;
+			}
+			final long out = Long.parseLong(name);
+			return out > Integer.MAX_VALUE ? -1 : (int) out;
+		}
+	}
+
+	private final List<Segment[]> patterns = new ArrayList<>();
+
+	public ProjectionReader(final String... patterns) {
+		for (final String pattern : patterns)
+			this.patterns.add(parse(pattern));
+	}
+
+	private static Segment[] parse(final String pattern) {
+		if (!pattern.startsWith("/") || pattern.length() == 1)
+			throw new IllegalArgumentException(String.format("Pattern [%s] must start with / and have a segment",
+					pattern
+			));
+		final String[] parts = pattern.substring(1).split("/", -1);
+		final Segment[] out = new Segment[parts.length];
+		for (int i = 0; i < parts.length; ++i) {
+			String part = parts[i];
+			String type = null;
+			if (part.startsWith("(")) {
+				final int close = part.indexOf(')');
+				if (close == -1)
+					throw new IllegalArgumentException(String.format("Unclosed type in pattern [%s]", pattern));
+				type = part.substring(1, close);
+				part = part.substring(close + 1);
+			}
+			out[i] = new Segment(type, part.equals("*") || (part.isEmpty() && type != null) ? null : part);
+		}
+		return out;
+	}
+
+	/**
+	 * Read matches from a document.
+	 *
+	 * @param stream
+	 * @return the path and value of each match, in document order
+	 */
+	public List<Pair<LuxemPath, Object>> read(final InputStream stream) {
+		final List<Pair<LuxemPath, Object>> out = new ArrayList<>();
+		RawReader.stream(reader((path, value) -> out.add(new Pair<>(path, value))), stream).forEach(b -> {
+		});
+		return out;
+	}
+
+	/**
+	 * Read matches from a file through a memory mapping rather than stream reads.
+	 *
+	 * @param path
+	 * @return the path and value of each match, in document order
+	 */
+	public List<Pair<LuxemPath, Object>> read(final Path path) {
+		final List<Pair<LuxemPath, Object>> out = new ArrayList<>();
+		RawReader.stream(reader((path1, value) -> out.add(new Pair<>(path1, value))), path).forEach(b -> {
+		});
+		return out;
+	}
+
+	/**
+	 * Create a reader that passes each match to `out` as soon as it's complete.
+	 *
+	 * @param out
+	 * @return a reader to feed the document to
+	 */
+	public RawReader reader(final BiConsumer<LuxemPath, Object> out) {
+		return new Projection(out).reader;
+	}
+
+	/**
+	 * A container along the path to a possible match.  Frames are reused for each container at the same depth.
+	 */
+	private static class Frame {
+		boolean record;
+
+		/**
+		 * The path of this container, null for the root.
+		 */
+		LuxemPath path;
+
+		/**
+		 * Patterns that match up to this container.
+		 */
+		final BitSet active = new BitSet();
+
+		int index;
+		String key;
+		String type;
+
+		/**
+		 * Active patterns matching the current element so far.
+		 */
+		final BitSet candidates = new BitSet();
+
+		private void reset(final boolean record, final LuxemPath path) {
+			this.record = record;
+			this.path = path;
+			active.clear();
+			index = -1;
+			key = null;
+			type = null;
+			candidates.clear();
+		}
+
+		public LuxemPath element() {
+			if (record)
+				return new LuxemObjectPath(path, key);
+			else
+				return new LuxemArrayPath(path, false, index);
+		}
+	}
+
+	private class Projection {
+		final BufferedRawReader reader = new BufferedRawReader();
+		final BiConsumer<LuxemPath, Object> out;
+
+		/**
+		 * Frames by depth, the root at 0.  Only frames up to `depth` are in use.
+		 */
+		final List<Frame> stack = new ArrayList<>();
+		int depth = -1;
+		TreeReader capture = null;
+
+		private Projection(final BiConsumer<LuxemPath, Object> out) {
+			this.out = out;
+			push(false, null).active.set(0, patterns.size());
+			reader.eatKeySlice = (buffer, offset, length) -> {
+				final String key = new String(buffer, offset, length, StandardCharsets.UTF_8);
+				if (capture != null) {
+					capture.key(key);
+					return;
+				}
+				final Frame frame = stack.get(depth);
+				frame.key = key;
+				element(frame);
+				if (!captureUntyped(frame) && frame.candidates.isEmpty())
+					reader.skipValue();
+			};
+			reader.eatTypeSlice = (buffer, offset, length) -> {
+				final String type = new String(buffer, offset, length, StandardCharsets.UTF_8);
+				if (capture != null) {
+					capture.type(type);
+					return;
+				}
+				final Frame frame = stack.get(depth);
+				if (!frame.record) {
+					frame.index += 1;
+					element(frame);
+					if (captureUntyped(frame)) {
+						capture.type(type);
+						return;
+					}
+				}
+				filter(frame, type);
+				if (complete(frame)) {
+					startCapture(frame);
+					capture.type(type);
+				} else if (frame.candidates.isEmpty())
+					reader.skipValue();
+				else
+					frame.type = type;
+			};
+			reader.eatPrimitiveBegin = () -> {
+				if (capture != null)
+					return;
+				if (valueBegin(stack.get(depth)))
+					return;
+				reader.skipValue();
+			};
+			reader.eatPrimitiveSlice = (buffer, offset, length) -> {
+				if (capture != null)
+					capture.primitive(new String(buffer, offset, length, StandardCharsets.UTF_8));
+			};
+			reader.eatArrayBegin = () -> containerBegin(false);
+			reader.eatRecordBegin = () -> containerBegin(true);
+			reader.eatArrayEnd = reader.eatRecordEnd = () -> {
+				if (capture != null)
+					capture.end();
+				else
+					depth -= 1;
+			};
+		}
+
+		private Frame push(final boolean record, final LuxemPath path) {
+			depth += 1;
+			if (stack.size() == depth)
+				stack.add(new Frame());
+			final Frame frame = stack.get(depth);
+			frame.reset(record, path);
+			return frame;
+		}
+
+		private void containerBegin(final boolean record) {
+			if (capture != null) {
+				if (record)
+					capture.recordBegin();
+				else
+					capture.arrayBegin();
+				return;
+			}
+			final Frame frame = stack.get(depth);
+			if (valueBegin(frame)) {
+				if (record)
+					capture.recordBegin();
+				else
+					capture.arrayBegin();
+				return;
+			}
+			if (frame.candidates.isEmpty()) {
+				reader.skipValue();
+				return;
+			}
+			final BitSet active = push(record, frame.element()).active;
+			for (int i = frame.candidates.nextSetBit(0); i >= 0; i = frame.candidates.nextSetBit(i + 1))
+				if (patterns.get(i).length > depth)
+					active.set(i);
+		}
+
+		/**
+		 * Handle the start of a value that isn't captured yet.
+		 *
+		 * @param frame
+		 * @return true if the value is now being captured
+		 */
+		private boolean valueBegin(final Frame frame) {
+			final boolean typed = frame.type != null;
+			frame.type = null;
+			if (!typed) {
+				if (!frame.record) {
+					frame.index += 1;
+					element(frame);
+				}
+				if (captureUntyped(frame))
+					return true;
+				filter(frame, null);
+			}
+			if (complete(frame)) {
+				startCapture(frame);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Set the candidates for a new element, the current key in a record or index in an array.
+		 *
+		 * @param frame
+		 */
+		private void element(final Frame frame) {
+			final BitSet candidates = frame.candidates;
+			candidates.clear();
+			for (int i = frame.active.nextSetBit(0); i >= 0; i = frame.active.nextSetBit(i + 1)) {
+				final Segment segment = patterns.get(i)[depth];
+				if (segment.name == null ||
+						(frame.record ? segment.name.equals(frame.key) : segment.index == frame.index))
+					candidates.set(i);
+			}
+		}
+
+		/**
+		 * Remove candidates with a different type.
+		 *
+		 * @param frame
+		 * @param type  null if the value has no type
+		 */
+		private void filter(final Frame frame, final String type) {
+			final BitSet candidates = frame.candidates;
+			for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+				final Segment segment = patterns.get(i)[depth];
+				if (segment.type != null && !segment.type.equals(type))
+					candidates.clear(i);
+			}
+		}
+
+		/**
+		 * @param frame
+		 * @return true if a candidate pattern ends at this element
+		 */
+		private boolean complete(final Frame frame) {
+			for (int i = frame.candidates.nextSetBit(0); i >= 0; i = frame.candidates.nextSetBit(i + 1))
+				if (patterns.get(i).length == depth + 1)
+					return true;
+			return false;
+		}
+
+		/**
+		 * Start capturing before the type if a candidate pattern ends at this element regardless of type.
+		 *
+		 * @param frame
+		 * @return true if capturing started
+		 */
+		private boolean captureUntyped(final Frame frame) {
+			for (int i = frame.candidates.nextSetBit(0); i >= 0; i = frame.candidates.nextSetBit(i + 1)) {
+				final Segment[] pattern = patterns.get(i);
+				if (pattern.length == depth + 1 && pattern[depth].type == null) {
+					startCapture(frame);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void startCapture(final Frame frame) {
+			final LuxemPath path = frame.element();
+			frame.type = null;
+			capture = new TreeReader();
+			capture.begin(value -> {
+				capture = null;
+				out.accept(path, value);
+			});
+		}
+	}
+}
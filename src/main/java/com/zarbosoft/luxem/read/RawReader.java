@@ -5,19 +5,30 @@ import com.zarbosoft.luxem.read.path.LuxemObjectPath;
 import com.zarbosoft.luxem.read.path.LuxemPath;
 import com.zarbosoft.luxem.read.source.*;
 import com.zarbosoft.pidgoon.events.Event;
+import com.zarbosoft.rendaw.common.Assertion;
 import com.zarbosoft.rendaw.common.Common;
 import com.zarbosoft.rendaw.common.Pair;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.zarbosoft.rendaw.common.Common.drain;
+import static com.zarbosoft.rendaw.common.Common.uncheck;
 
 /**
  * Luxem lexer.  Calls the various `eat*` methods when tokens are found.
+ * <p>
+ * The lexer state is a stack of integer states and each byte is dispatched through a byte class table and a
+ * state/class action table, so lexing doesn't allocate once the stack has grown to the document depth.
  */
 public class RawReader {
 	@FunctionalInterface
@@ -30,6 +41,11 @@ public class RawReader {
 		void accept(byte b);
 	}
 
+	@FunctionalInterface
+	public interface SliceConsumer {
+		void accept(byte[] buffer, int offset, int length);
+	}
+
 	public VoidConsumer eatPrimitiveBegin = () -> {
 	};
 	public ByteConsumer eatPrimitive = b -> {
@@ -57,33 +73,278 @@ public class RawReader {
 	public VoidConsumer eatRecordEnd = () -> {
 	};
 
-	private abstract static class State {
-		public abstract boolean eat(RawReader raw, byte next);
+	/*
+	 * Text is delivered through these in runs.  A slice is only valid for the duration of the call and must not be
+	 * modified.  By default they pass each byte on to eatPrimitive, eatType, and eatKey.
+	 */
+	public SliceConsumer eatPrimitiveSlice = (buffer, offset, length) -> {
+		if (eatPrimitive == null)
+			return;
+		for (int i = offset; i < offset + length; ++i)
+			eatPrimitive.accept(buffer[i]);
+	};
+	public SliceConsumer eatTypeSlice = (buffer, offset, length) -> {
+		for (int i = offset; i < offset + length; ++i)
+			eatType.accept(buffer[i]);
+	};
+	public SliceConsumer eatKeySlice = (buffer, offset, length) -> {
+		if (eatKey == null)
+			return;
+		for (int i = offset; i < offset + length; ++i)
+			eatKey.accept(buffer[i]);
+	};
 
-		public void finish(final RawReader raw) {
-			throw new InvalidStream("End reached mid-element.");
+	/*
+	 * Byte classes.  Every state dispatches on the class of the next byte rather than the byte itself.
+	 */
+	static final int CLASS_OTHER = 0;
+	static final int CLASS_SPACE = 1;
+	static final int CLASS_COMMENT = 2;
+	static final int CLASS_COMMA = 3;
+	static final int CLASS_COLON = 4;
+	static final int CLASS_ARRAY_OPEN = 5;
+	static final int CLASS_ARRAY_CLOSE = 6;
+	static final int CLASS_RECORD_OPEN = 7;
+	static final int CLASS_RECORD_CLOSE = 8;
+	static final int CLASS_TYPE_OPEN = 9;
+	static final int CLASS_TYPE_CLOSE = 10;
+	static final int CLASS_QUOTE = 11;
+	static final int CLASS_ESCAPE = 12;
+	static final int CLASS_COUNT = 13;
+
+	/*
+	 * Lexer states.  States from STATE_TYPE on are text states, which consume bytes into a token until an ending
+	 * byte is found.
+	 */
+	static final int STATE_ROOT = 0;
+	static final int STATE_ROOT_BORDER = 1;
+	static final int STATE_VALUE = 2;
+	static final int STATE_UNTYPED_VALUE = 3;
+	static final int STATE_ARRAY = 4;
+	static final int STATE_ARRAY_BORDER = 5;
+	static final int STATE_RECORD = 6;
+	static final int STATE_RECORD_SEPARATOR = 7;
+	static final int STATE_RECORD_BORDER = 8;
+	static final int STATE_TYPE = 9;
+	static final int STATE_KEY = 10;
+	static final int STATE_QUOTED_KEY = 11;
+	static final int STATE_PRIMITIVE = 12;
+	static final int STATE_QUOTED_PRIMITIVE = 13;
+	static final int STATE_COMMENT = 14;
+	static final int STATE_COUNT = 15;
+
+	/*
+	 * Actions, looked up by state and byte class.
+	 */
+	private static final byte ACTION_SKIP = 0;
+	private static final byte ACTION_ERROR = 1;
+	private static final byte ACTION_COMMENT = 2;
+	private static final byte ACTION_POP = 3;
+	private static final byte ACTION_POP_TASTE = 4;
+	private static final byte ACTION_ROOT_ELEMENT = 5;
+	private static final byte ACTION_TYPE = 6;
+	private static final byte ACTION_ARRAY = 7;
+	private static final byte ACTION_RECORD = 8;
+	private static final byte ACTION_PRIMITIVE = 9;
+	private static final byte ACTION_QUOTED_PRIMITIVE = 10;
+	private static final byte ACTION_ARRAY_ELEMENT = 11;
+	private static final byte ACTION_ARRAY_END = 12;
+	private static final byte ACTION_RECORD_ELEMENT = 13;
+	private static final byte ACTION_QUOTED_RECORD_ELEMENT = 14;
+	private static final byte ACTION_RECORD_END = 15;
+	private static final byte ACTION_TEXT = 16;
+	private static final byte ACTION_TEXT_ESCAPE = 17;
+	private static final byte ACTION_TEXT_END = 18;
+	private static final byte ACTION_TEXT_END_TASTE = 19;
+	private static final byte ACTION_TEXT_END_COMMENT = 20;
+
+	/*
+	 * Skip modes, a reduced lexer that only tracks what's needed to find the end of a value.
+	 */
+	private static final int SKIP_STRUCTURE = 0;
+	private static final int SKIP_WORD = 1;
+	private static final int SKIP_QUOTED = 2;
+	private static final int SKIP_TYPE = 3;
+	private static final int SKIP_COMMENT = 4;
+
+	static final byte[] CLASSES = new byte[256];
+	private static final byte[] ACTIONS = new byte[STATE_COUNT * CLASS_COUNT];
+
+	/*
+	 * Indexed by byte, used as single byte slice sources.
+	 */
+	private static final byte[] BYTES = new byte[256];
+	private static final byte[] ESCAPES = new byte[256];
+
+	static {
+		CLASSES['\t'] = CLASS_SPACE;
+		CLASSES['\n'] = CLASS_SPACE;
+		CLASSES[' '] = CLASS_SPACE;
+		CLASSES['*'] = CLASS_COMMENT;
+		CLASSES[','] = CLASS_COMMA;
+		CLASSES[':'] = CLASS_COLON;
+		CLASSES['['] = CLASS_ARRAY_OPEN;
+		CLASSES[']'] = CLASS_ARRAY_CLOSE;
+		CLASSES['{'] = CLASS_RECORD_OPEN;
+		CLASSES['}'] = CLASS_RECORD_CLOSE;
+		CLASSES['('] = CLASS_TYPE_OPEN;
+		CLASSES[')'] = CLASS_TYPE_CLOSE;
+		CLASSES['"'] = CLASS_QUOTE;
+		CLASSES['\\'] = CLASS_ESCAPE;
+
+		for (int i = 0; i < 256; ++i) {
+			BYTES[i] = (byte) i;
+			ESCAPES[i] = (byte) i;
 		}
+		ESCAPES['n'] = '\n';
+		ESCAPES['r'] = '\r';
+		ESCAPES['t'] = '\t';
+
+		action(STATE_ROOT, ACTION_ROOT_ELEMENT);
+		interstitial(STATE_ROOT);
+
+		action(STATE_ROOT_BORDER, ACTION_ERROR);
+		interstitial(STATE_ROOT_BORDER);
+		action(STATE_ROOT_BORDER, CLASS_COMMA, ACTION_POP);
+
+		action(STATE_VALUE, ACTION_PRIMITIVE);
+		interstitial(STATE_VALUE);
+		action(STATE_VALUE, CLASS_TYPE_OPEN, ACTION_TYPE);
+		action(STATE_VALUE, CLASS_ARRAY_OPEN, ACTION_ARRAY);
+		action(STATE_VALUE, CLASS_RECORD_OPEN, ACTION_RECORD);
+		action(STATE_VALUE, CLASS_QUOTE, ACTION_QUOTED_PRIMITIVE);
+
+		action(STATE_UNTYPED_VALUE, ACTION_PRIMITIVE);
+		interstitial(STATE_UNTYPED_VALUE);
+		action(STATE_UNTYPED_VALUE, CLASS_ARRAY_OPEN, ACTION_ARRAY);
+		action(STATE_UNTYPED_VALUE, CLASS_RECORD_OPEN, ACTION_RECORD);
+		action(STATE_UNTYPED_VALUE, CLASS_QUOTE, ACTION_QUOTED_PRIMITIVE);
+
+		action(STATE_ARRAY, ACTION_ARRAY_ELEMENT);
+		interstitial(STATE_ARRAY);
+		action(STATE_ARRAY, CLASS_ARRAY_CLOSE, ACTION_ARRAY_END);
+
+		action(STATE_ARRAY_BORDER, ACTION_ERROR);
+		interstitial(STATE_ARRAY_BORDER);
+		action(STATE_ARRAY_BORDER, CLASS_COMMA, ACTION_POP);
+		action(STATE_ARRAY_BORDER, CLASS_ARRAY_CLOSE, ACTION_POP_TASTE);
+
+		action(STATE_RECORD, ACTION_RECORD_ELEMENT);
+		interstitial(STATE_RECORD);
+		action(STATE_RECORD, CLASS_QUOTE, ACTION_QUOTED_RECORD_ELEMENT);
+		action(STATE_RECORD, CLASS_RECORD_CLOSE, ACTION_RECORD_END);
+
+		action(STATE_RECORD_SEPARATOR, ACTION_ERROR);
+		interstitial(STATE_RECORD_SEPARATOR);
+		action(STATE_RECORD_SEPARATOR, CLASS_COLON, ACTION_POP);
+
+		action(STATE_RECORD_BORDER, ACTION_ERROR);
+		interstitial(STATE_RECORD_BORDER);
+		action(STATE_RECORD_BORDER, CLASS_COMMA, ACTION_POP);
+		action(STATE_RECORD_BORDER, CLASS_RECORD_CLOSE, ACTION_POP_TASTE);
+
+		text(STATE_TYPE);
+		action(STATE_TYPE, CLASS_TYPE_CLOSE, ACTION_TEXT_END);
+
+		text(STATE_KEY);
+		action(STATE_KEY, CLASS_SPACE, ACTION_TEXT_END);
+		action(STATE_KEY, CLASS_COMMENT, ACTION_TEXT_END_COMMENT);
+		action(STATE_KEY, CLASS_COLON, ACTION_TEXT_END_TASTE);
+
+		text(STATE_QUOTED_KEY);
+		action(STATE_QUOTED_KEY, CLASS_QUOTE, ACTION_TEXT_END);
+
+		text(STATE_PRIMITIVE);
+		action(STATE_PRIMITIVE, CLASS_SPACE, ACTION_TEXT_END);
+		action(STATE_PRIMITIVE, CLASS_COMMENT, ACTION_TEXT_END_COMMENT);
+		action(STATE_PRIMITIVE, CLASS_ARRAY_CLOSE, ACTION_TEXT_END_TASTE);
+		action(STATE_PRIMITIVE, CLASS_RECORD_CLOSE, ACTION_TEXT_END_TASTE);
+		action(STATE_PRIMITIVE, CLASS_COMMA, ACTION_TEXT_END_TASTE);
+
+		text(STATE_QUOTED_PRIMITIVE);
+		action(STATE_QUOTED_PRIMITIVE, CLASS_QUOTE, ACTION_TEXT_END);
+
+		text(STATE_COMMENT);
+		action(STATE_COMMENT, CLASS_COMMENT, ACTION_TEXT_END);
+	}
 
-		protected void finished(final RawReader raw) {
-			raw.stack.pollLast();
-		}
+	private static void action(final int state, final byte action) {
+		for (int i = 0; i < CLASS_COUNT; ++i)
+			ACTIONS[state * CLASS_COUNT + i] = action;
+	}
+
+	private static void action(final int state, final int byteClass, final byte action) {
+		ACTIONS[state * CLASS_COUNT + byteClass] = action;
 	}
 
-	private final Deque<State> stack = new ArrayDeque<>();
+	private static void interstitial(final int state) {
+		action(state, CLASS_SPACE, ACTION_SKIP);
+		action(state, CLASS_COMMENT, ACTION_COMMENT);
+	}
+
+	private static void text(final int state) {
+		action(state, ACTION_TEXT);
+		action(state, CLASS_ESCAPE, ACTION_TEXT_ESCAPE);
+	}
+
+	/**
+	 * Largest mapping used when reading files.
+	 */
+	private static final int MAP_WINDOW = 1 << 30;
+
+	/**
+	 * Most bytes of a mapping lexed per stream element, so lazily read elements are returned without lexing the whole
+	 * window.
+	 */
+	private static final int MAP_SLICE = 1 << 16;
+
+	private int[] stack = new int[16];
+	private int depth = 0;
+	private boolean escape = false;
+	private boolean textBegun = false;
+	private byte[] chunk = null;
+	private boolean paused = false;
+	private StructuralIndex index = null;
+
+	/**
+	 * Depth of the value being skipped, or -1.
+	 */
+	private int skip = -1;
+	private int skipMode;
+	private int skipNest;
 
 	public RawReader() {
-		stack.addLast(new RootArray());
+		push(STATE_ROOT);
 	}
 
-	private void finish() {
-		if (stack.size() >= 3) {
-			if (stack.size() == 3 && stack.peekLast().getClass() == Primitive.class)
-				stack.peekLast().finish(this);
-			else
+	private void push(final int state) {
+		if (depth == stack.length)
+			stack = Arrays.copyOf(stack, depth * 2);
+		stack[depth++] = state;
+	}
+
+	/**
+	 * Signal the end of the document.  Completes a trailing root primitive.
+	 */
+	public void finish() {
+		if (depth == skip && skipMode == SKIP_WORD && skipNest == 0)
+			skipped();
+		if (depth >= 3) {
+			if (depth == 3 && stack[2] == STATE_PRIMITIVE) {
+				textEnd(STATE_PRIMITIVE);
+				depth -= 1;
+			} else
 				throw new InvalidStream("End reached mid-element.");
 		}
 	}
 
+	/**
+	 * @return true if the reader is between root elements, outside comments
+	 */
+	boolean atRoot() {
+		return depth == 1;
+	}
+
 	public static Stream<Boolean> stream(final RawReader reader, final InputStream source) {
 		return Common.concatNull(Common.stream(source)).map(bytes -> {
 			if (bytes == null) {
@@ -91,418 +352,756 @@ public class RawReader {
 				reader.finish();
 				return true;
 			} else {
-				for (final byte b : bytes)
-					reader.eat(b);
+				reader.eat(bytes, 0, bytes.length);
 				return false;
 			}
 		});
 	}
 
-	public static Stream<Pair<Event, Object>> streamEvents(final InputStream source, final EventFactory factory) {
-		class State {
-			LuxemPath path = new LuxemArrayPath(null);
-			Deque<Pair<Event, Object>> events = new ArrayDeque<>();
-		}
-		final State state = new State();
-		final BufferedRawReader reader = new BufferedRawReader();
-		reader.eatRecordBegin = () -> {
-			state.path = new LuxemObjectPath(state.path.value());
-			state.events.addLast(new Pair<>(factory.objectOpen(), state.path));
-		};
-		reader.eatRecordEnd = () -> {
-			state.path = state.path.pop();
-			state.events.addLast(new Pair<>(factory.objectClose(), state.path));
-		};
-		reader.eatArrayBegin = () -> {
-			state.path = new LuxemArrayPath(state.path.value());
-			state.events.addLast(new Pair<>(factory.arrayOpen(), state.path));
-		};
-		reader.eatArrayEnd = () -> {
-			state.path = state.path.pop();
-			state.events.addLast(new Pair<>(factory.arrayClose(), state.path));
-		};
-		reader.eatKey = bytes -> {
-			final String string = new String(bytes, StandardCharsets.UTF_8);
-			state.path = state.path.key(string);
-			state.events.addLast(new Pair<>(factory.key(string), state.path));
-		};
-		reader.eatType = bytes -> {
-			state.path = state.path.type();
-			state.events.addLast(new Pair<>(factory.type(new String(bytes, StandardCharsets.UTF_8)), state.path));
-		};
-		reader.eatPrimitive = bytes -> {
-			state.path = state.path.value();
-			state.events.addLast(new Pair<>(factory.primitive(new String(bytes, StandardCharsets.UTF_8)), state.path));
-		};
-		return RawReader.stream(reader, source).flatMap(last -> {
-			return drain(state.events);
-		});
+	/**
+	 * Like stream(RawReader, InputStream) but reads the file through memory mapped windows rather than stream reads.
+	 *
+	 * @param reader
+	 * @param source
+	 * @return a stream that lexes up to 64K per element, true for the final element
+	 */
+	public static Stream<Boolean> stream(final RawReader reader, final Path source) {
+		return stream(reader, map(source));
 	}
 
-	public void eat(final byte next) {
-		while (!stack.peekLast().eat(this, next)) {
-		}
+	/**
+	 * Like stream(RawReader, InputStream) but reads the file through memory mapped windows rather than stream
+	 * reads, starting at the channel's position.
+	 *
+	 * @param reader
+	 * @param source
+	 * @return a stream that lexes up to 64K per element, true for the final element
+	 */
+	public static Stream<Boolean> stream(final RawReader reader, final FileChannel source) {
+		return stream(reader, map(source));
 	}
 
-	private boolean eatInterstitial(final byte next) {
-		switch (next) {
-			case (byte) '\t':
-				return true;
-			case (byte) '\n':
-				return true;
-			case (byte) ' ':
-				return true;
-			case (byte) '*':
-				stack.addLast(new Comment());
+	private static Stream<Boolean> stream(final RawReader reader, final List<ByteBuffer> windows) {
+		final Iterator<ByteBuffer> slices = new Iterator<ByteBuffer>() {
+			int next = 0;
+			ByteBuffer window = null;
+
+			@Override
+			public boolean hasNext() {
+				while (window == null || !window.hasRemaining()) {
+					if (next == windows.size())
+						return false;
+					window = windows.get(next++).duplicate();
+				}
 				return true;
-		}
-		return false;
-	}
+			}
 
-	private static class RootArray extends State {
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			raw.stack.addLast(new RootArrayBorder());
-			raw.stack.addLast(new Value());
-			return false;
-		}
+			@Override
+			public ByteBuffer next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				final ByteBuffer slice = window.duplicate();
+				slice.limit(Math.min(window.limit(), window.position() + MAP_SLICE));
+				window.position(slice.limit());
+				return slice;
+			}
+		};
+		return Common
+				.concatNull(StreamSupport.stream(Spliterators.spliteratorUnknownSize(slices, Spliterator.ORDERED),
+						false
+				))
+				.map(slice -> {
+					if (slice == null) {
+						// Post-last slice
+						reader.finish();
+						return true;
+					} else {
+						reader.eat(slice);
+						return false;
+					}
+				});
 	}
 
-	private static class RootArrayBorder extends State {
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			switch (next) {
-				case (byte) ',':
-					finished(raw);
-					return true;
+	/**
+	 * Map a file for reading.  The mappings stay valid after the file is closed.
+	 *
+	 * @param path
+	 * @return windows covering the file in order
+	 */
+	public static List<ByteBuffer> map(final Path path) {
+		return uncheck(() -> {
+			try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				return map(channel);
 			}
-			throw new InvalidStream("Expected [,].");
-		}
+		});
 	}
 
-	private static class Type extends TextState {
-		public void begin(final RawReader raw) {
-			raw.eatTypeBegin.run();
-		}
+	/**
+	 * Map a file for reading, from the channel's position to the end.  A single buffer can't address more than 2GB
+	 * so larger files are mapped as multiple windows.
+	 *
+	 * @param channel
+	 * @return windows covering the file in order
+	 */
+	public static List<ByteBuffer> map(final FileChannel channel) {
+		return map(channel, MAP_WINDOW);
+	}
 
-		protected void eatMiddle(final RawReader raw, final byte next) {
-			raw.eatType.accept(next);
-		}
+	/**
+	 * @param channel
+	 * @param window  the largest window size
+	 * @return windows covering the file in order
+	 */
+	public static List<ByteBuffer> map(final FileChannel channel, final int window) {
+		return uncheck(() -> {
+			final List<ByteBuffer> out = new ArrayList<>();
+			final long size = channel.size();
+			for (long at = channel.position(); at < size; at += window)
+				out.add(channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(window, size - at)));
+			return out;
+		});
+	}
 
-		@Override
-		protected void end(final RawReader raw) {
-			raw.eatTypeEnd.run();
-		}
+	public static Stream<Pair<Event, Object>> streamEvents(final InputStream source, final EventFactory factory) {
+		return streamEvents(source, factory, null);
+	}
 
-		protected Resolution eatEnd(final RawReader raw, final byte next) {
-			return next == (byte) ')' ? Resolution.ATE : Resolution.REJECTED;
-		}
+	public static Stream<Pair<Event, Object>> streamEvents(
+			final InputStream source, final EventFactory factory, final StringCache cache
+	) {
+		final Deque<Pair<Event, Object>> events = new ArrayDeque<>();
+		final BufferedRawReader reader = eventReader(new BufferedRawReader(), factory, events::addLast, cache);
+		return RawReader.stream(reader, source).flatMap(last -> {
+			return drain(events);
+		});
 	}
 
-	private static class Value extends State {
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			if (next == (byte) '(') {
-				finished(raw);
-				raw.stack.addLast(new UntypedValue());
-				raw.stack.addLast(new Type());
-				return true;
-			}
-			return UntypedValue.eatStatic(this, raw, next);
-		}
+	public static Stream<Pair<Event, Object>> streamEvents(final Path source, final EventFactory factory) {
+		return streamEvents(source, factory, null);
 	}
 
-	private static class UntypedValue extends State {
+	public static Stream<Pair<Event, Object>> streamEvents(
+			final Path source, final EventFactory factory, final StringCache cache
+	) {
+		final Deque<Pair<Event, Object>> events = new ArrayDeque<>();
+		final BufferedRawReader reader = eventReader(new BufferedRawReader(), factory, events::addLast, cache);
+		return RawReader.stream(reader, source).flatMap(last -> {
+			return drain(events);
+		});
+	}
 
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			return eatStatic(this, raw, next);
-		}
+	/**
+	 * Set up a reader to pass pidgoon events to a sink, each paired with the luxem path of the event.
+	 *
+	 * @param reader
+	 * @param factory
+	 * @param sink
+	 * @param <R>
+	 * @return reader
+	 */
+	public static <R extends BufferedRawReader> R eventReader(
+			final R reader, final EventFactory factory, final Consumer<Pair<Event, Object>> sink
+	) {
+		return eventReader(reader, factory, sink, null);
+	}
 
-		public static boolean eatStatic(final State state, final RawReader raw, final byte next) {
-			state.finished(raw);
-			switch (next) {
-				case (byte) '[':
-					raw.eatArrayBegin.run();
-					raw.stack.addLast(new Array());
-					return true;
-				case (byte) '{':
-					raw.eatRecordBegin.run();
-					raw.stack.addLast(new Record());
-					return true;
-				case (byte) '"':
-					raw.stack.addLast(new QuotedPrimitive());
-					return true;
-			}
-			raw.stack.addLast(new Primitive());
-			return false;
-		}
+	/**
+	 * Set up a reader to pass pidgoon events to a sink, each paired with the luxem path of the event.  Each path is
+	 * immutable, so events and paths can be kept.
+	 *
+	 * @param reader
+	 * @param factory
+	 * @param sink
+	 * @param cache   if not null, interns keys, types, and primitives
+	 * @param <R>
+	 * @return reader
+	 */
+	public static <R extends BufferedRawReader> R eventReader(
+			final R reader,
+			final EventFactory factory,
+			final Consumer<Pair<Event, Object>> sink,
+			final StringCache cache
+	) {
+		return pathEventReader(reader, factory, (event, path) -> sink.accept(new Pair<>(event, path)), cache);
 	}
 
-	private static class Array extends State {
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			if (next == (byte) ']') {
-				raw.eatArrayEnd.run();
-				finished(raw);
-				return true;
-			}
-			raw.stack.addLast(new ArrayBorder());
-			raw.stack.addLast(new Value());
-			return false;
+	/**
+	 * Like eventReader, but passes the event and path separately so nothing else is allocated per event.
+	 *
+	 * @param reader
+	 * @param factory
+	 * @param sink
+	 * @param cache   if not null, interns keys, types, and primitives
+	 * @param <R>
+	 * @return reader
+	 */
+	static <R extends BufferedRawReader> R pathEventReader(
+			final R reader,
+			final EventFactory factory,
+			final BiConsumer<Event, LuxemPath> sink,
+			final StringCache cache
+	) {
+		class State {
+			LuxemPath path = new LuxemArrayPath(null);
 		}
+		final State state = new State();
+		return stepEventReader(reader, factory, (event, step) -> {
+			if (step instanceof String)
+				state.path = state.path.key((String) step);
+			else
+				switch ((PathStep) step) {
+					case RECORD_BEGIN:
+						state.path = new LuxemObjectPath(state.path.value());
+						break;
+					case ARRAY_BEGIN:
+						state.path = new LuxemArrayPath(state.path.value());
+						break;
+					case END:
+						state.path = state.path.pop();
+						break;
+					case TYPE:
+						state.path = state.path.type();
+						break;
+					case VALUE:
+						state.path = state.path.value();
+						break;
+				}
+			sink.accept(event, state.path);
+		}, cache);
+	}
 
+	/**
+	 * How an event moves the path.  Keys pass the key instead.
+	 */
+	private enum PathStep {
+		RECORD_BEGIN,
+		ARRAY_BEGIN,
+		END,
+		TYPE,
+		VALUE
 	}
 
-	private static class ArrayBorder extends State {
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			switch (next) {
-				case (byte) ',':
-					finished(raw);
-					return true;
-				case (byte) ']':
-					finished(raw);
-					return false;
-			}
-			throw new InvalidStream("Expected [,] or []].");
-		}
+	/**
+	 * @param reader
+	 * @param factory
+	 * @param sink    receives each event with its PathStep, or the key for keys
+	 * @param cache
+	 * @param <R>
+	 * @return reader
+	 */
+	private static <R extends BufferedRawReader> R stepEventReader(
+			final R reader, final EventFactory factory, final BiConsumer<Event, Object> sink, final StringCache cache
+	) {
+		reader.eatRecordBegin = () -> sink.accept(factory.objectOpen(), PathStep.RECORD_BEGIN);
+		reader.eatRecordEnd = () -> sink.accept(factory.objectClose(), PathStep.END);
+		reader.eatArrayBegin = () -> sink.accept(factory.arrayOpen(), PathStep.ARRAY_BEGIN);
+		reader.eatArrayEnd = () -> sink.accept(factory.arrayClose(), PathStep.END);
+		reader.eatKeySlice = (buffer, offset, length) -> {
+			final String string = decode(cache, buffer, offset, length);
+			sink.accept(factory.key(string), string);
+		};
+		reader.eatTypeSlice = (buffer, offset, length) -> {
+			sink.accept(factory.type(decode(cache, buffer, offset, length)), PathStep.TYPE);
+		};
+		reader.eatPrimitiveSlice = (buffer, offset, length) -> {
+			final String string = decode(cache, buffer, offset, length);
+			sink.accept(factory.primitive(string), PathStep.VALUE);
+		};
+		return reader;
 	}
 
-	private static class Record extends State {
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			if (next == (byte) '}') {
-				raw.eatRecordEnd.run();
-				finished(raw);
-				return true;
-			}
-			raw.stack.addLast(new RecordBorder());
-			raw.stack.addLast(new Value());
-			raw.stack.addLast(new RecordSeparator());
-			raw.stack.addLast(new UndifferentiatedKey());
-			return false;
-		}
+	private static String decode(final StringCache cache, final byte[] buffer, final int offset, final int length) {
+		if (cache == null)
+			return new String(buffer, offset, length, StandardCharsets.UTF_8);
+		return cache.get(buffer, offset, length);
 	}
 
-	private static class RecordSeparator extends State {
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			if (next == (byte) ':') {
-				finished(raw);
-				return true;
-			}
-			throw new InvalidStream("Expected [:].");
+	public void eat(final byte next) {
+		if (depth == skip && skip(BYTES, next & 0xFF, (next & 0xFF) + 1) != (next & 0xFF))
+			return;
+		final int byteClass = CLASSES[next & 0xFF];
+		while (!step(next, byteClass)) {
 		}
 	}
 
-	private static class RecordBorder extends State {
-		public boolean eat(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return true;
-			switch (next) {
-				case (byte) ',':
-					finished(raw);
-					return true;
-				case (byte) '}':
-					finished(raw);
-					return false;
-			}
-			throw new InvalidStream("Expected [,] or [}].");
-		}
+	/**
+	 * Lex bulk input in two stages: first index the bytes the lexer may act on, then visit only those.  Text bytes
+	 * and interstitial whitespace are skipped a word at a time, which is fastest on text heavy documents.
+	 *
+	 * @param indexed
+	 */
+	public void indexed(final boolean indexed) {
+		index = indexed ? new StructuralIndex() : null;
 	}
 
-	private static class UndifferentiatedKey extends State {
+	/**
+	 * Stop the current bulk `eat` after the token being handled.  Call from a callback.
+	 */
+	public void pause() {
+		paused = true;
+	}
 
-		public boolean eat(final RawReader raw, final byte next) {
-			finished(raw);
-			if (raw.eatInterstitial(next))
-				return true;
-			if (next == (byte) '"') {
-				raw.stack.addLast(new QuotedKey());
-				return true;
-			} else {
-				raw.stack.addLast(new Key());
-				return false;
+	/**
+	 * Skip the rest of the current value without lexing it fully.  Call from a callback or between pull parser
+	 * tokens.  Called when an array or record begins, it skips to the end of it.  Called when a primitive begins, it
+	 * skips the primitive.  Called after a key or type, it skips the value that follows.
+	 * <p>
+	 * No callbacks are made for anything skipped, including the end of the skipped array or record.  Skipped data is
+	 * scanned only for nesting, quotes, escapes, types and comments so errors within it may not be detected.
+	 */
+	public void skipValue() {
+		int at = depth;
+		while (true) {
+			switch (stack[at - 1]) {
+				case STATE_VALUE:
+				case STATE_UNTYPED_VALUE:
+					skipMode = SKIP_STRUCTURE;
+					skipNest = 0;
+					break;
+				case STATE_ARRAY:
+				case STATE_RECORD:
+					skipMode = SKIP_STRUCTURE;
+					skipNest = 1;
+					break;
+				case STATE_PRIMITIVE:
+					skipMode = SKIP_WORD;
+					skipNest = 0;
+					break;
+				case STATE_QUOTED_PRIMITIVE:
+					skipMode = SKIP_QUOTED;
+					skipNest = 0;
+					break;
+				case STATE_TYPE:
+				case STATE_KEY:
+				case STATE_QUOTED_KEY:
+				case STATE_RECORD_SEPARATOR:
+				case STATE_COMMENT:
+					at -= 1;
+					continue;
+				default:
+					throw new IllegalStateException("No value to skip.");
 			}
+			break;
 		}
+		skip = at;
 	}
 
-	private static class QuotedKey extends TextState {
-		public void begin(final RawReader raw) {
-			if (raw.eatKeyBegin != null)
-				raw.eatKeyBegin.run();
-		}
-
-		protected void end(final RawReader raw) {
-			if (raw.eatKeyEnd != null)
-				raw.eatKeyEnd.run();
-		}
-
-		protected void eatMiddle(final RawReader raw, final byte next) {
-			if (raw.eatKey != null)
-				raw.eatKey.accept(next);
-		}
-
-		protected Resolution eatEnd(final RawReader raw, final byte next) {
-			return next == (byte) '"' ? Resolution.ATE : Resolution.REJECTED;
-		}
+	private void skipped() {
+		depth -= 1;
+		skip = -1;
 	}
 
-	private static class Key extends TextState {
-		public void begin(final RawReader raw) {
-			if (raw.eatKeyBegin != null)
-				raw.eatKeyBegin.run();
-		}
-
-		protected void end(final RawReader raw) {
-			if (raw.eatKeyEnd != null)
-				raw.eatKeyEnd.run();
-		}
-
-		protected void eatMiddle(final RawReader raw, final byte next) {
-			if (raw.eatKey != null)
-				raw.eatKey.accept(next);
-		}
-
-		protected Resolution eatEnd(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return Resolution.ATE;
-			if (next == (byte) ':')
-				return Resolution.TASTED;
-			return Resolution.REJECTED;
+	/**
+	 * Consume bytes of the value being skipped.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return the index of the first unconsumed byte - less than end if the value ended
+	 */
+	private int skip(final byte[] buffer, final int start, final int end) {
+		int i = start;
+		while (i < end) {
+			final byte next = buffer[i];
+			if (escape) {
+				escape = false;
+				++i;
+				continue;
+			}
+			final int byteClass = CLASSES[next & 0xFF];
+			switch (skipMode) {
+				case SKIP_STRUCTURE:
+					switch (byteClass) {
+						case CLASS_SPACE:
+							break;
+						case CLASS_COMMENT:
+							skipMode = SKIP_COMMENT;
+							break;
+						case CLASS_TYPE_OPEN:
+							skipMode = SKIP_TYPE;
+							break;
+						case CLASS_QUOTE:
+							skipMode = SKIP_QUOTED;
+							break;
+						case CLASS_ARRAY_OPEN:
+						case CLASS_RECORD_OPEN:
+							skipNest += 1;
+							break;
+						case CLASS_ARRAY_CLOSE:
+						case CLASS_RECORD_CLOSE:
+						case CLASS_COMMA:
+						case CLASS_COLON:
+							if (skipNest == 0) {
+								// An empty primitive, same as the lexer
+								skipMode = SKIP_WORD;
+								continue;
+							}
+							if (byteClass == CLASS_ARRAY_CLOSE || byteClass == CLASS_RECORD_CLOSE) {
+								skipNest -= 1;
+								if (skipNest == 0) {
+									skipped();
+									return i + 1;
+								}
+							}
+							break;
+						default:
+							skipMode = SKIP_WORD;
+							continue;
+					}
+					break;
+				case SKIP_WORD:
+					switch (byteClass) {
+						case CLASS_ESCAPE:
+							escape = true;
+							break;
+						case CLASS_SPACE:
+							if (skipNest == 0) {
+								skipped();
+								return i + 1;
+							}
+							skipMode = SKIP_STRUCTURE;
+							break;
+						case CLASS_COMMENT:
+							if (skipNest == 0) {
+								skipped();
+								push(STATE_COMMENT);
+								return i + 1;
+							}
+							skipMode = SKIP_COMMENT;
+							break;
+						case CLASS_ARRAY_CLOSE:
+						case CLASS_RECORD_CLOSE:
+						case CLASS_COMMA:
+							if (skipNest == 0) {
+								skipped();
+								return i;
+							}
+							skipMode = SKIP_STRUCTURE;
+							continue;
+						case CLASS_COLON:
+							// Ends keys, which are never at the top level of a skipped value
+							if (skipNest > 0)
+								skipMode = SKIP_STRUCTURE;
+							break;
+					}
+					break;
+				case SKIP_QUOTED:
+					if (byteClass == CLASS_ESCAPE)
+						escape = true;
+					else if (byteClass == CLASS_QUOTE) {
+						if (skipNest == 0) {
+							skipped();
+							return i + 1;
+						}
+						skipMode = SKIP_STRUCTURE;
+					}
+					break;
+				case SKIP_TYPE:
+					if (byteClass == CLASS_ESCAPE)
+						escape = true;
+					else if (byteClass == CLASS_TYPE_CLOSE)
+						skipMode = SKIP_STRUCTURE;
+					break;
+				case SKIP_COMMENT:
+					if (byteClass == CLASS_ESCAPE)
+						escape = true;
+					else if (byteClass == CLASS_COMMENT)
+						skipMode = SKIP_STRUCTURE;
+					break;
+			}
+			++i;
 		}
+		return i;
 	}
 
-	private static class QuotedPrimitive extends TextState {
-		public void begin(final RawReader raw) {
-			if (raw.eatPrimitiveBegin != null)
-				raw.eatPrimitiveBegin.run();
-		}
-
-		protected void end(final RawReader raw) {
-			if (raw.eatPrimitiveEnd != null)
-				raw.eatPrimitiveEnd.run();
-		}
-
-		protected void eatMiddle(final RawReader raw, final byte next) {
-			if (raw.eatPrimitive != null)
-				raw.eatPrimitive.accept(next);
-		}
-
-		protected Resolution eatEnd(final RawReader raw, final byte next) {
-			return next == (byte) '"' ? Resolution.ATE : Resolution.REJECTED;
+	/**
+	 * Lex a range of a buffer.  Within primitives, keys, and types, runs of bytes that don't end the token are
+	 * scanned without dispatch and delivered in one slice.
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @return the number of bytes consumed - less than length only if a callback called pause()
+	 */
+	public int eat(final byte[] buffer, final int offset, final int length) {
+		paused = false;
+		if (index != null)
+			return eatIndexed(buffer, offset, length);
+		final int end = offset + length;
+		int i = offset;
+		while (i < end && !paused) {
+			if (depth == skip) {
+				i = skip(buffer, i, end);
+				continue;
+			}
+			final int state = stack[depth - 1];
+			if (state >= STATE_TYPE && !escape) {
+				if (!textBegun) {
+					textBegun = true;
+					textBegin(state);
+				}
+				final int base = state * CLASS_COUNT;
+				int j = i;
+				while (j < end && ACTIONS[base + CLASSES[buffer[j] & 0xFF]] == ACTION_TEXT)
+					++j;
+				if (j > i) {
+					textSlice(state, buffer, i, j - i);
+					i = j;
+					continue;
+				}
+			}
+			final byte next = buffer[i];
+			if (step(next, CLASSES[next & 0xFF]))
+				++i;
 		}
+		return i - offset;
 	}
 
-	private static class Primitive extends TextState {
-		protected void begin(final RawReader raw) {
-			if (raw.eatPrimitiveBegin != null)
-				raw.eatPrimitiveBegin.run();
-		}
-
-		protected void end(final RawReader raw) {
-			if (raw.eatPrimitiveEnd != null)
-				raw.eatPrimitiveEnd.run();
+	private int eatIndexed(final byte[] buffer, final int offset, final int length) {
+		final int end = offset + length;
+		index.feed(buffer, offset, end);
+		int i = offset;
+		while (i < end && !paused) {
+			if (depth == skip) {
+				i = skip(buffer, i, end);
+				continue;
+			}
+			final int state = stack[depth - 1];
+			if (state >= STATE_TYPE) {
+				if (!escape) {
+					if (!textBegun) {
+						textBegun = true;
+						textBegin(state);
+					}
+					final int j = state == STATE_QUOTED_PRIMITIVE || state == STATE_QUOTED_KEY ?
+							index.nextQuote(i) :
+							index.nextSpecial(i);
+					if (j > i) {
+						textSlice(state, buffer, i, j - i);
+						i = j;
+						continue;
+					}
+				}
+			} else {
+				// Whitespace is skipped in every non-text state
+				i = index.nextNonSpace(i);
+				if (i == end)
+					break;
+			}
+			final byte next = buffer[i];
+			if (step(next, CLASSES[next & 0xFF]))
+				++i;
 		}
+		index.stopped(i);
+		return i - offset;
+	}
 
-		protected void eatMiddle(final RawReader raw, final byte next) {
-			if (raw.eatPrimitive != null)
-				raw.eatPrimitive.accept(next);
+	/**
+	 * Lex the remaining bytes in a buffer.  The buffer position is advanced past the consumed bytes, which is to the
+	 * limit unless a callback called pause().
+	 * <p>
+	 * Heap buffers are lexed in place.  Direct buffers, including mappings, are copied to the lexer 4K at a time.
+	 *
+	 * @param buffer
+	 */
+	public void eat(final ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			buffer.position(buffer.position() +
+					eat(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()));
+			return;
 		}
-
-		protected Resolution eatEnd(final RawReader raw, final byte next) {
-			if (raw.eatInterstitial(next))
-				return Resolution.ATE;
-			switch (next) {
-				case (byte) ']':
-				case (byte) '}':
-				case (byte) ',':
-					return Resolution.TASTED;
+		if (chunk == null)
+			chunk = new byte[4096];
+		while (buffer.hasRemaining()) {
+			final int length = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, length);
+			final int consumed = eat(chunk, 0, length);
+			if (consumed < length) {
+				buffer.position(buffer.position() - (length - consumed));
+				return;
 			}
-			return Resolution.REJECTED;
 		}
 	}
 
-	private static class Comment extends TextState {
-		protected void begin(final RawReader raw) {
-
+	/**
+	 * @param next
+	 * @param byteClass
+	 * @return true if the byte was consumed, false if it should be fed to the new state
+	 */
+	private boolean step(final byte next, final int byteClass) {
+		final int state = stack[depth - 1];
+		if (state >= STATE_TYPE && !textBegun) {
+			textBegun = true;
+			textBegin(state);
 		}
-
-		protected void end(final RawReader raw) {
-
+		if (escape) {
+			escape = false;
+			textSlice(state, ESCAPES, next & 0xFF, 1);
+			return true;
 		}
-
-		protected void eatMiddle(final RawReader raw, final byte next) {
-
+		switch (ACTIONS[state * CLASS_COUNT + byteClass]) {
+			case ACTION_SKIP:
+				return true;
+			case ACTION_ERROR:
+				throw new InvalidStream(expected(state));
+			case ACTION_COMMENT:
+				push(STATE_COMMENT);
+				return true;
+			case ACTION_POP:
+				depth -= 1;
+				return true;
+			case ACTION_POP_TASTE:
+				depth -= 1;
+				return false;
+			case ACTION_ROOT_ELEMENT:
+				push(STATE_ROOT_BORDER);
+				push(STATE_VALUE);
+				return false;
+			case ACTION_TYPE:
+				stack[depth - 1] = STATE_UNTYPED_VALUE;
+				push(STATE_TYPE);
+				textBegun = false;
+				return true;
+			case ACTION_ARRAY:
+				stack[depth - 1] = STATE_ARRAY;
+				eatArrayBegin.run();
+				return true;
+			case ACTION_RECORD:
+				stack[depth - 1] = STATE_RECORD;
+				eatRecordBegin.run();
+				return true;
+			case ACTION_PRIMITIVE:
+				stack[depth - 1] = STATE_PRIMITIVE;
+				textBegun = false;
+				return false;
+			case ACTION_QUOTED_PRIMITIVE:
+				stack[depth - 1] = STATE_QUOTED_PRIMITIVE;
+				textBegun = false;
+				return true;
+			case ACTION_ARRAY_ELEMENT:
+				push(STATE_ARRAY_BORDER);
+				push(STATE_VALUE);
+				return false;
+			case ACTION_ARRAY_END:
+				depth -= 1;
+				eatArrayEnd.run();
+				return true;
+			case ACTION_RECORD_ELEMENT:
+				push(STATE_RECORD_BORDER);
+				push(STATE_VALUE);
+				push(STATE_RECORD_SEPARATOR);
+				push(STATE_KEY);
+				textBegun = false;
+				return false;
+			case ACTION_QUOTED_RECORD_ELEMENT:
+				push(STATE_RECORD_BORDER);
+				push(STATE_VALUE);
+				push(STATE_RECORD_SEPARATOR);
+				push(STATE_QUOTED_KEY);
+				textBegun = false;
+				return true;
+			case ACTION_RECORD_END:
+				depth -= 1;
+				eatRecordEnd.run();
+				return true;
+			case ACTION_TEXT:
+				textSlice(state, BYTES, next & 0xFF, 1);
+				return true;
+			case ACTION_TEXT_ESCAPE:
+				escape = true;
+				return true;
+			case ACTION_TEXT_END:
+				depth -= 1;
+				textEnd(state);
+				return true;
+			case ACTION_TEXT_END_TASTE:
+				depth -= 1;
+				textEnd(state);
+				return false;
+			case ACTION_TEXT_END_COMMENT:
+				stack[depth - 1] = STATE_COMMENT;
+				textEnd(state);
+				return true;
+			default:
+				throw new Assertion();
 		}
+	}
 
-		protected Resolution eatEnd(final RawReader raw, final byte next) {
-			return next == (byte) '*' ? Resolution.ATE : Resolution.REJECTED;
+	private static String expected(final int state) {
+		switch (state) {
+			case STATE_ROOT_BORDER:
+				return "Expected [,].";
+			case STATE_ARRAY_BORDER:
+				return "Expected [,] or []].";
+			case STATE_RECORD_SEPARATOR:
+				return "Expected [:].";
+			case STATE_RECORD_BORDER:
+				return "Expected [,] or [}].";
+			default:
+				throw new Assertion();
 		}
 	}
 
-	private static abstract class TextState extends State {
-		boolean first = true;
-		boolean escape = false;
-
-		public enum Resolution {
-			ATE,
-			TASTED,
-			REJECTED
+	private void textBegin(final int state) {
+		if (skip != -1)
+			return;
+		switch (state) {
+			case STATE_TYPE:
+				eatTypeBegin.run();
+				break;
+			case STATE_KEY:
+			case STATE_QUOTED_KEY:
+				if (eatKeyBegin != null)
+					eatKeyBegin.run();
+				break;
+			case STATE_PRIMITIVE:
+			case STATE_QUOTED_PRIMITIVE:
+				if (eatPrimitiveBegin != null)
+					eatPrimitiveBegin.run();
+				break;
 		}
+	}
 
-		@Override
-		public final boolean eat(final RawReader raw, final byte next) {
-			if (first) {
-				first = false;
-				begin(raw);
-			}
-			if (!escape) {
-				if ((byte) next == '\\') {
-					escape = true;
-					return true;
-				}
-				final Resolution ended = eatEnd(raw, next);
-				if (ended != Resolution.REJECTED) {
-					end(raw);
-					finished(raw);
-					return ended == Resolution.ATE ? true : false;
-				}
-			}
-			if (escape && next == 'n')
-				eatMiddle(raw, (byte) '\n');
-			else if (escape && next == 'r')
-				eatMiddle(raw, (byte) '\r');
-			else if (escape && next == 't')
-				eatMiddle(raw, (byte) '\t');
-			else
-				eatMiddle(raw, next);
-			escape = false;
-			return true;
+	private void textSlice(final int state, final byte[] buffer, final int offset, final int length) {
+		if (skip != -1)
+			return;
+		switch (state) {
+			case STATE_TYPE:
+				eatTypeSlice.accept(buffer, offset, length);
+				break;
+			case STATE_KEY:
+			case STATE_QUOTED_KEY:
+				eatKeySlice.accept(buffer, offset, length);
+				break;
+			case STATE_PRIMITIVE:
+			case STATE_QUOTED_PRIMITIVE:
+				eatPrimitiveSlice.accept(buffer, offset, length);
+				break;
 		}
+	}
 
-		@Override
-		public void finish(final RawReader raw) {
-			end(raw);
-			finished(raw);
+	private void textEnd(final int state) {
+		if (skip != -1) {
+			// A skipped primitive that was already being lexed when skipValue was called
+			if (depth < skip || stack[skip - 1] == STATE_COMMENT)
+				skip = -1;
+			return;
+		}
+		switch (state) {
+			case STATE_TYPE:
+				eatTypeEnd.run();
+				break;
+			case STATE_KEY:
+			case STATE_QUOTED_KEY:
+				if (eatKeyEnd != null)
+					eatKeyEnd.run();
+				break;
+			case STATE_PRIMITIVE:
+			case STATE_QUOTED_PRIMITIVE:
+				if (eatPrimitiveEnd != null)
+					eatPrimitiveEnd.run();
+				break;
 		}
-
-		protected abstract void begin(RawReader raw);
-
-		protected abstract void end(RawReader raw);
-
-		protected abstract void eatMiddle(RawReader raw, byte next);
-
-		protected abstract Resolution eatEnd(RawReader raw, byte next);
 	}
 
 	public interface EventFactory {
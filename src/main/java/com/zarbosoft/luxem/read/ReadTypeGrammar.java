@@ -2,6 +2,9 @@ package com.zarbosoft.luxem.read;
 
 import com.zarbosoft.interface1.Configuration;
 import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.generate.Accessors;
+import com.zarbosoft.luxem.generate.SubtypeIndex;
+import com.zarbosoft.luxem.primitive.*;
 import com.zarbosoft.luxem.read.source.*;
 import com.zarbosoft.pidgoon.AbortParse;
 import com.zarbosoft.pidgoon.Node;
@@ -19,12 +22,23 @@ import org.reflections.Reflections;
 
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import static com.zarbosoft.rendaw.common.Common.uncheck;
-
 public class ReadTypeGrammar {
+	/**
+	 * Build a grammar finding subtypes with SubtypeIndex.shared rather than a scanned Reflections.
+	 *
+	 * @param root
+	 * @return the grammar
+	 */
+	public static Grammar buildGrammar(final Walk.TypeInfo root) {
+		return buildGrammar(SubtypeIndex.shared(), root);
+	}
+
 	/**
 	 * @param reflections
 	 * @param root
@@ -147,6 +161,9 @@ public class ReadTypeGrammar {
 			public Node visitAbstract(
 					final Field field, final Class<?> klass, final List<Pair<Class<?>, Node>> derived
 			) {
+				final PrimitiveArrays primitive = PrimitiveArrays.of(klass);
+				if (primitive != null)
+					return primitiveArray(primitive, primitive.isArray(klass));
 				final Pair<Class<?>, Set<Class<?>>> key =
 						new Pair<>(klass, derived.stream().map(p -> p.first).collect(Collectors.toSet()));
 				if (!seen.contains(key)) {
@@ -165,6 +182,9 @@ public class ReadTypeGrammar {
 
 			@Override
 			public Node visitConcreteShort(final Field field, final Class<?> klass) {
+				final PrimitiveArrays primitive = PrimitiveArrays.of(klass);
+				if (primitive != null)
+					return primitiveArray(primitive, primitive.isArray(klass));
 				return new Reference(klass.getTypeName());
 			}
 
@@ -172,15 +192,18 @@ public class ReadTypeGrammar {
 			public void visitConcrete(
 					final Field field, final Class<?> klass, final List<Pair<Field, Node>> fields
 			) {
+				if (PrimitiveArrays.of(klass) != null)
+					return;
 				final Sequence seq = new Sequence();
 				{
 					seq.add(new Operator(new MatchingEventTerminal(new LObjectOpenEvent()), s -> s.pushStack(0)));
 					final com.zarbosoft.pidgoon.nodes.Set set = new com.zarbosoft.pidgoon.nodes.Set();
 					fields.forEach(f -> {
+						final Accessors.Setter setter = Accessors.setter(f.first);
 						set.add(new Operator(new Sequence()
 								.add(new MatchingEventTerminal(new LKeyEvent(Walk.decideName(f.first))))
 								.add(f.second), s -> {
-							s = (Store) s.pushStack(f.first);
+							s = (Store) s.pushStack(setter);
 							return Helper.stackDoubleElement(s);
 						}), fieldIsRequired(f.first));
 					});
@@ -188,29 +211,28 @@ public class ReadTypeGrammar {
 					seq.add(new MatchingEventTerminal(new LObjectCloseEvent()));
 				}
 				final Node topNode;
-				final List<Pair<Field, Node>> minimalFields2 =
-						fields.stream().filter(f -> fieldIsRequired(f.first)).collect(Collectors.toList());
-				final List<Pair<Field, Node>> minimalFields;
-				if (minimalFields2.size() == 0)
-					minimalFields = fields;
-				else
-					minimalFields = minimalFields2;
-				if (minimalFields.size() == 1) {
+				final boolean[] required = new boolean[fields.size()];
+				for (int i = 0; i < fields.size(); ++i)
+					required[i] = fieldIsRequired(fields.get(i).first);
+				final int abbreviated = abbreviatedField(required);
+				if (abbreviated != -1) {
+					final Accessors.Setter setter = Accessors.setter(fields.get(abbreviated).first);
 					final Union temp = new Union();
 					temp.add(seq);
-					temp.add(new Operator(minimalFields.iterator().next().second, s -> {
+					temp.add(new Operator(fields.get(abbreviated).second, s -> {
 						final Object value = s.stackTop();
 						s = (Store) s.popStack();
-						return s.pushStack(new Pair<>(value, minimalFields.iterator().next().first)).pushStack(1);
+						return s.pushStack(new Pair<>(value, setter)).pushStack(1);
 					}));
 					topNode = temp;
 				} else {
 					topNode = seq;
 				}
+				final Supplier<Object> constructor = Accessors.constructor(klass);
 				grammar.add(klass.getTypeName(), new Operator(topNode, s -> {
-					final Object out = uncheck(klass::newInstance);
-					s = (Store) Helper.<Pair<Object, Field>>stackPopSingleList(s, (pair) -> {
-						uncheck(() -> pair.second.set(out, pair.first));
+					final Object out = constructor.get();
+					s = (Store) Helper.<Pair<Object, Accessors.Setter>>stackPopSingleList(s, (pair) -> {
+						pair.second.set(out, pair.first);
 					});
 					return s.pushStack(out);
 				}));
@@ -219,11 +241,81 @@ public class ReadTypeGrammar {
 		return grammar;
 	}
 
-	private static boolean fieldIsRequired(final Field field) {
+	/**
+	 * Unlike visitList, elements are added to a primitive list on the stack as they're matched rather than pushed
+	 * boxed and collected at the end.  Changing the list in place is safe because a parse can't branch between
+	 * elements that are only primitives.
+	 *
+	 * @param primitive
+	 * @param array     produce an array rather than the list
+	 * @return a node matching an array of primitives
+	 */
+	private static Node primitiveArray(final PrimitiveArrays primitive, final boolean array) {
+		final Supplier<Object> create;
+		final BiConsumer<Object, LPrimitiveEvent> add;
+		final Function<Object, Object> finish;
+		switch (primitive) {
+			case INT:
+				create = IntList::new;
+				add = (out, event) -> ((IntList) out).add(Integer.parseInt(event.value));
+				finish = out -> array ? ((IntList) out).toArray() : out;
+				break;
+			case LONG:
+				create = LongList::new;
+				add = (out, event) -> ((LongList) out).add(Long.parseLong(event.value));
+				finish = out -> array ? ((LongList) out).toArray() : out;
+				break;
+			case DOUBLE:
+				create = DoubleList::new;
+				add = (out, event) -> ((DoubleList) out).add(Double.parseDouble(event.value));
+				finish = out -> array ? ((DoubleList) out).toArray() : out;
+				break;
+			case BOOLEAN:
+				create = BooleanList::new;
+				add = (out, event) -> {
+					if (event.value.equals("true"))
+						((BooleanList) out).add(true);
+					else if (event.value.equals("false"))
+						((BooleanList) out).add(false);
+					else
+						throw new AbortParse(String.format("Invalid value [%s]", event.value));
+				};
+				finish = out -> array ? ((BooleanList) out).toArray() : out;
+				break;
+			default:
+				throw new AssertionError();
+		}
+		return new Sequence()
+				.add(new Operator(new MatchingEventTerminal(new LArrayOpenEvent()), s -> s.pushStack(create.get())))
+				.add(new Repeat(new Operator(new MatchingEventTerminal(new LPrimitiveEvent(null)), s -> {
+					try {
+						add.accept(s.stackTop(), (LPrimitiveEvent) s.top());
+					} catch (final NumberFormatException e) {
+						throw new AbortParse(e);
+					}
+					return s;
+				})))
+				.add(new Operator(new MatchingEventTerminal(new LArrayCloseEvent()), s -> {
+					final Object out = s.stackTop();
+					s = (Store) s.popStack();
+					return s.pushStack(finish.apply(out));
+				}));
+	}
+
+	/**
+	 * Fields are required unless marked optional, except collections, maps, and primitive arrays and lists which are
+	 * always optional.
+	 *
+	 * @param field
+	 * @return true if documents must have a value for the field
+	 */
+	public static boolean fieldIsRequired(final Field field) {
 		if (Collection.class.isAssignableFrom(field.getType()))
 			return false;
 		if (Map.class.isAssignableFrom(field.getType()))
 			return false;
+		if (PrimitiveArrays.of(field.getType()) != null)
+			return false;
 		final Configuration annotation = field.getAnnotation(Configuration.class);
 		if (annotation == null)
 			return false;
@@ -231,4 +323,25 @@ public class ReadTypeGrammar {
 			return false;
 		return true;
 	}
+
+	/**
+	 * A class with a single required field, or with a single field if none are required, can also be written as just
+	 * that field's value.  Every reader uses this to decide which field that is.
+	 *
+	 * @param required whether each field is required, see fieldIsRequired
+	 * @return the index of the field the abbreviated form stands for, or -1 if there's no abbreviated form
+	 */
+	public static int abbreviatedField(final boolean[] required) {
+		int out = -1;
+		for (int i = 0; i < required.length; ++i) {
+			if (!required[i])
+				continue;
+			if (out != -1)
+				return -1;
+			out = i;
+		}
+		if (out == -1 && required.length == 1)
+			return 0;
+		return out;
+	}
 }
@@ -0,0 +1,74 @@
+package com.zarbosoft.luxem.read;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns short tokens by their undecoded bytes, so repeated keys, types, and primitives share one String and
+ * aren't decoded again.  The cache has a fixed number of slots - a token that hashes to an occupied slot replaces the
+ * entry there.  Safe to share between threads.
+ */
+public class StringCache {
+	private static class Entry {
+		final byte[] bytes;
+		final int hash;
+		final String value;
+
+		private Entry(final byte[] bytes, final int hash, final String value) {
+			this.bytes = bytes;
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+
+	private final Entry[] entries;
+	private final int mask;
+	private final int maxLength;
+
+	public StringCache() {
+		this(4096, 64);
+	}
+
+	/**
+	 * @param size      number of slots, rounded up to a power of 2
+	 * @param maxLength longer tokens are decoded without caching
+	 */
+	public StringCache(final int size, final int maxLength) {
+		if (size < 1)
+			throw new IllegalArgumentException("Cache size must be positive");
+		final int slots = Integer.highestOneBit(size) == size ? size : Integer.highestOneBit(size) << 1;
+		this.entries = new Entry[slots];
+		this.mask = slots - 1;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @return the UTF-8 decoded slice, the same String as the last time the bytes were seen if still cached
+	 */
+	public String get(final byte[] buffer, final int offset, final int length) {
+		if (length > maxLength)
+			return new String(buffer, offset, length, StandardCharsets.UTF_8);
+		int hash = 0;
+		for (int i = 0; i < length; ++i)
+			hash = 31 * hash + buffer[offset + i];
+		final int slot = (hash ^ (hash >>> 16)) & mask;
+		final Entry entry = entries[slot];
+		if (entry != null && entry.hash == hash && matches(entry.bytes, buffer, offset, length))
+			return entry.value;
+		final String value = new String(buffer, offset, length, StandardCharsets.UTF_8);
+		entries[slot] = new Entry(Arrays.copyOfRange(buffer, offset, offset + length), hash, value);
+		return value;
+	}
+
+	private static boolean matches(final byte[] bytes, final byte[] buffer, final int offset, final int length) {
+		if (bytes.length != length)
+			return false;
+		for (int i = 0; i < length; ++i)
+			if (bytes[i] != buffer[offset + i])
+				return false;
+		return true;
+	}
+}
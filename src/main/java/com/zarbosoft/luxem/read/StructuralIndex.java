@@ -0,0 +1,204 @@
+package com.zarbosoft.luxem.read;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * First stage of indexed lexing.  Bitmaps with one bit per input byte marking bytes the lexer may act on, built 8
+ * bytes at a time with SWAR arithmetic.
+ * <p>
+ * Bitmaps are built a block at a time as the lexer reaches them rather than for the whole input up front.  A bulk
+ * `eat` that resumes where a paused one stopped keeps the current block, so pulling tokens one at a time indexes each
+ * byte once.
+ */
+class StructuralIndex {
+	private static final long ONES = 0x0101010101010101L;
+	private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+	private static final long HIGH = 0x8080808080808080L;
+	private static final long GATHER = 0x0002040810204081L;
+	private static final int BLOCK = 65536;
+
+	/**
+	 * Bytes with any class other than CLASS_OTHER.
+	 */
+	private final long[] special = new long[BLOCK >>> 6];
+
+	/**
+	 * Interstitial whitespace.
+	 */
+	private final long[] space = new long[BLOCK >>> 6];
+
+	/**
+	 * Quotes and escapes, the only bytes that matter in a quoted key or primitive.
+	 */
+	private final long[] quote = new long[BLOCK >>> 6];
+
+	private byte[] buffer;
+	private ByteBuffer view;
+
+	/**
+	 * Buffer positions of the indexed block.
+	 */
+	private int start;
+	private int end;
+
+	/**
+	 * End of the input being lexed - nothing past it is indexed.
+	 */
+	private int limit;
+
+	/**
+	 * Where the last `eat` stopped.
+	 */
+	private int resume = -1;
+
+	/**
+	 * Start lexing a range of a buffer.  The current block is kept if the range continues where the last range
+	 * stopped.
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param limit  the end of the range
+	 */
+	public void feed(final byte[] buffer, final int offset, final int limit) {
+		if (buffer != this.buffer) {
+			this.buffer = buffer;
+			view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+			resume = -1;
+		}
+		if (offset != resume || limit < end) {
+			start = offset;
+			end = offset;
+		}
+		this.limit = limit;
+	}
+
+	/**
+	 * @param at the position of the first byte the last `eat` didn't consume
+	 */
+	public void stopped(final int at) {
+		resume = at;
+	}
+
+	private void build(final int from) {
+		start = from;
+		end = Math.min(limit, from + BLOCK);
+		final int length = end - start;
+		final int whole = length & ~7;
+		long special = 0;
+		long space = 0;
+		long quote = 0;
+		for (int i = 0; i < whole; i += 8) {
+			final long x = view.getLong(from + i);
+			final long spaces = mask(x, '\t') | mask(x, '\n') | mask(x, ' ');
+			final long quotes = mask(x, '"') | mask(x, '\\');
+			final long others = mask(x, '*') |
+					mask(x, ',') |
+					mask(x, ':') |
+					mask(x, '[') |
+					mask(x, ']') |
+					mask(x, '{') |
+					mask(x, '}') |
+					mask(x, '(') |
+					mask(x, ')');
+			final int shift = i & 63;
+			special |= gather(spaces | quotes | others) << shift;
+			space |= gather(spaces) << shift;
+			quote |= gather(quotes) << shift;
+			if (shift == 56) {
+				final int word = i >>> 6;
+				this.special[word] = special;
+				this.space[word] = space;
+				this.quote[word] = quote;
+				special = 0;
+				space = 0;
+				quote = 0;
+			}
+		}
+		for (int i = whole; i < length; ++i) {
+			final int byteClass = RawReader.CLASSES[buffer[from + i] & 0xFF];
+			final long bit = 1L << (i & 63);
+			if (byteClass != RawReader.CLASS_OTHER)
+				special |= bit;
+			if (byteClass == RawReader.CLASS_SPACE)
+				space |= bit;
+			if (byteClass == RawReader.CLASS_QUOTE || byteClass == RawReader.CLASS_ESCAPE)
+				quote |= bit;
+		}
+		if ((length & 63) != 0) {
+			final int word = length >>> 6;
+			this.special[word] = special;
+			this.space[word] = space;
+			this.quote[word] = quote;
+		}
+	}
+
+	/**
+	 * @param x 8 bytes
+	 * @param b
+	 * @return the high bit of each byte of x equal to b
+	 */
+	private static long mask(final long x, final char b) {
+		final long t = x ^ (ONES * b);
+		return ~(((t & LOW7) + LOW7) | t | LOW7);
+	}
+
+	/**
+	 * @param mask high bits from `mask`
+	 * @return one bit per byte in the low 8 bits
+	 */
+	private static long gather(final long mask) {
+		return ((mask & HIGH) * GATHER) >>> 56;
+	}
+
+	private int next(final long[] bitmap, int from, final boolean invert) {
+		while (true) {
+			if (from >= end) {
+				if (from >= limit)
+					return limit;
+				build(from);
+			} else if (from < start)
+				build(from);
+			final int length = end - start;
+			final int relative = from - start;
+			int word = relative >>> 6;
+			long bits = (invert ? ~bitmap[word] : bitmap[word]) & (-1L << (relative & 63));
+			while (bits == 0) {
+				word += 1;
+				if (word << 6 >= length)
+					break;
+				bits = invert ? ~bitmap[word] : bitmap[word];
+			}
+			if (bits != 0) {
+				final int found = (word << 6) + Long.numberOfTrailingZeros(bits);
+				if (found < length)
+					return start + found;
+			}
+			from = end;
+		}
+	}
+
+	/**
+	 * @param from
+	 * @return the position of the first byte at or after from that isn't CLASS_OTHER, or the limit
+	 */
+	public int nextSpecial(final int from) {
+		return next(special, from, false);
+	}
+
+	/**
+	 * @param from
+	 * @return the position of the first quote or escape at or after from, or the limit
+	 */
+	public int nextQuote(final int from) {
+		return next(quote, from, false);
+	}
+
+	/**
+	 * @param from
+	 * @return the position of the first non-whitespace byte at or after from, or the limit
+	 */
+	public int nextNonSpace(final int from) {
+		return next(space, from, true);
+	}
+}
@@ -4,11 +4,29 @@ import com.zarbosoft.luxem.tree.Typed;
 import com.zarbosoft.rendaw.common.Assertion;
 
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.zarbosoft.rendaw.common.Common.drain;
 
 public class TreeReader {
 	private final Deque<State> stack = new ArrayDeque<>();
+	private StringCache cache = null;
+
+	/**
+	 * Intern keys, types, and primitives.
+	 *
+	 * @param cache
+	 * @return this
+	 */
+	public TreeReader cache(final StringCache cache) {
+		this.cache = cache;
+		return this;
+	}
 
 	private abstract class State {
 		public void key(final String value) {
@@ -76,21 +94,144 @@ public class TreeReader {
 		}
 	}
 
+	private class RootState extends State {
+		private final Consumer<Object> out;
+		private String type = null;
+
+		private RootState(final Consumer<Object> out) {
+			this.out = out;
+		}
+
+		@Override
+		public void value(final Object value) {
+			if (type != null) {
+				out.accept(new Typed(type, value));
+				type = null;
+			} else
+				out.accept(value);
+		}
+
+		@Override
+		public void type(final String value) {
+			type = value;
+		}
+
+		@Override
+		public Object get() {
+			throw new Assertion();
+		}
+	}
+
 	public List read(final InputStream stream) {
-		final ArrayState top = new ArrayState();
-		stack.addLast(top);
-		final BufferedRawReader reader = new BufferedRawReader();
-		reader.eatKey = b -> stack.peekLast().key(new String(b, StandardCharsets.UTF_8));
-		reader.eatPrimitive = b -> stack.peekLast().value(new String(b, StandardCharsets.UTF_8));
-		reader.eatType = b -> stack.peekLast().type(new String(b, StandardCharsets.UTF_8));
-		reader.eatArrayBegin = () -> stack.addLast(new ArrayState());
-		reader.eatRecordBegin = () -> stack.addLast(new RecordState());
-		reader.eatArrayEnd = reader.eatRecordEnd = () -> {
-			final State done = stack.pollLast();
-			stack.peekLast().value(done.get());
-		};
-		RawReader.stream(reader, stream).forEach(b -> {
+		final List out = new ArrayList();
+		RawReader.stream(reader(out::add), stream).forEach(b -> {
+		});
+		return out;
+	}
+
+	/**
+	 * Read a file through a memory mapping rather than stream reads.
+	 *
+	 * @param path
+	 * @return list of top level objects
+	 */
+	public List read(final Path path) {
+		final List out = new ArrayList();
+		RawReader.stream(reader(out::add), path).forEach(b -> {
 		});
-		return (List) top.get();
+		return out;
+	}
+
+	/**
+	 * Read a file from the channel's position through a memory mapping rather than stream reads.
+	 *
+	 * @param channel
+	 * @return list of top level objects
+	 */
+	public List read(final FileChannel channel) {
+		final List out = new ArrayList();
+		RawReader.stream(reader(out::add), channel).forEach(b -> {
+		});
+		return out;
+	}
+
+	/**
+	 * Read root elements lazily.  The input is read a chunk at a time as elements are requested, so only the
+	 * elements in the current chunk are held in memory.
+	 *
+	 * @param stream
+	 * @return stream of top level objects
+	 */
+	public Stream<Object> stream(final InputStream stream) {
+		final Deque<Object> out = new ArrayDeque<>();
+		return RawReader.stream(reader(out::addLast), stream).flatMap(last -> drain(out));
+	}
+
+	/**
+	 * Read root elements lazily from a file read through a memory mapping rather than stream reads.
+	 *
+	 * @param path
+	 * @return stream of top level objects
+	 */
+	public Stream<Object> stream(final Path path) {
+		final Deque<Object> out = new ArrayDeque<>();
+		return RawReader.stream(reader(out::addLast), path).flatMap(last -> drain(out));
+	}
+
+	/**
+	 * Create a reader that builds the tree for each root element and passes it to `out` as soon as it's complete.
+	 *
+	 * @param out
+	 * @return a reader to feed the document to
+	 */
+	public RawReader reader(final Consumer<Object> out) {
+		begin(out);
+		final BufferedRawReader reader = new BufferedRawReader();
+		reader.eatKeySlice = (buffer, offset, length) -> key(decode(buffer, offset, length));
+		reader.eatPrimitiveSlice = (buffer, offset, length) -> primitive(decode(buffer, offset, length));
+		reader.eatTypeSlice = (buffer, offset, length) -> type(decode(buffer, offset, length));
+		reader.eatArrayBegin = this::arrayBegin;
+		reader.eatRecordBegin = this::recordBegin;
+		reader.eatArrayEnd = reader.eatRecordEnd = this::end;
+		return reader;
+	}
+
+	private String decode(final byte[] buffer, final int offset, final int length) {
+		if (cache == null)
+			return new String(buffer, offset, length, StandardCharsets.UTF_8);
+		return cache.get(buffer, offset, length);
+	}
+
+	/*
+	 * Tree building steps, for readers that only build trees for part of a document.
+	 */
+
+	void begin(final Consumer<Object> out) {
+		stack.addLast(new RootState(out));
+	}
+
+	void key(final String value) {
+		stack.peekLast().key(value);
+	}
+
+	void type(final String value) {
+		stack.peekLast().type(value);
+	}
+
+	void primitive(final String value) {
+		stack.peekLast().value(value);
+	}
+
+	void arrayBegin() {
+		stack.addLast(new ArrayState());
+	}
+
+	void recordBegin() {
+		stack.addLast(new RecordState());
+	}
+
+	void end() {
+		final State done = stack.pollLast();
+		stack.peekLast().value(done.get());
 	}
 }
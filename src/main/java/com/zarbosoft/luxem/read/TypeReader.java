@@ -0,0 +1,490 @@
+package com.zarbosoft.luxem.read;
+
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.generate.Accessors;
+import com.zarbosoft.luxem.generate.Names;
+import com.zarbosoft.luxem.generate.Reading;
+import com.zarbosoft.luxem.primitive.*;
+import com.zarbosoft.luxem.read.LuxemPullParser.Token;
+import com.zarbosoft.pidgoon.events.Grammar;
+import com.zarbosoft.rendaw.common.Pair;
+import org.reflections.Reflections;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Deserializes @Configuration types by reading tokens directly, deciding what each token is from the expected type
+ * alone.  This accepts the same documents as ReadTypeGrammar with Parse but without a general parser.
+ * <p>
+ * The only case where a single token isn't enough is a class with a single required field (the abbreviated form)
+ * where that field's value can itself be a record - then `{` could start either.  If the root type reaches such a
+ * class the document is parsed with ReadTypeGrammar instead.
+ * <p>
+ * Errors in the document throw InvalidStream, or pidgoon's InvalidStream when falling back to the grammar.
+ *
+ * @param <T> the root type
+ */
+public class TypeReader<T> {
+	private static final int FIRST_PRIMITIVE = 1;
+	private static final int FIRST_ARRAY = 2;
+	private static final int FIRST_RECORD = 4;
+	private static final int FIRST_TYPE = 8;
+
+	private final Node root;
+	private final boolean ambiguous;
+	private final Supplier<Grammar> buildGrammar;
+	private Grammar grammar = null;
+
+	public TypeReader(final Reflections reflections, final Walk.TypeInfo rootType) {
+		this(reflections, rootType, () -> ReadTypeGrammar.buildGrammar(reflections, rootType));
+	}
+
+	/**
+	 * @param reflections  used to locate subtypes of abstract types, not kept
+	 * @param rootType
+	 * @param buildGrammar supplies the ReadTypeGrammar grammar for rootType, called once if the type is ambiguous
+	 */
+	public TypeReader(
+			final Reflections reflections, final Walk.TypeInfo rootType, final Supplier<Grammar> buildGrammar
+	) {
+		final Map<Class<?>, ConcreteNode> concrete = new HashMap<>();
+		final boolean[] duplicates = {false};
+		root = Walk.walk(reflections, rootType, new Walk.Visitor<Node>() {
+			@Override
+			public Node visitString(final Field field) {
+				return new PrimitiveNode() {
+					@Override
+					Object primitive(final Reading reading) {
+						return reading.string();
+					}
+				};
+			}
+
+			@Override
+			public Node visitInteger(final Field field) {
+				return new PrimitiveNode() {
+					@Override
+					Object primitive(final Reading reading) {
+						return reading.parseInt();
+					}
+				};
+			}
+
+			@Override
+			public Node visitDouble(final Field field) {
+				return new PrimitiveNode() {
+					@Override
+					Object primitive(final Reading reading) {
+						return reading.parseDouble();
+					}
+				};
+			}
+
+			@Override
+			public Node visitBoolean(final Field field) {
+				return new PrimitiveNode() {
+					@Override
+					Object primitive(final Reading reading) {
+						return reading.parseBoolean();
+					}
+				};
+			}
+
+			@Override
+			public Node visitEnum(final Field field, final Class<?> enumClass) {
+				final List<String> names = new ArrayList<>();
+				final List<Object> values = new ArrayList<>();
+				Walk.enumValues(enumClass).forEach(pair -> {
+					names.add(Walk.decideName(pair.second));
+					values.add(pair.first);
+				});
+				final Names table = names(names, duplicates);
+				return new PrimitiveNode() {
+					@Override
+					Object primitive(final Reading reading) {
+						return values.get(reading.value(table));
+					}
+				};
+			}
+
+			@Override
+			public Node visitList(final Field field, final Node inner) {
+				return new ArrayNode(inner) {
+					@Override
+					Collection<Object> create() {
+						return new ArrayList<>();
+					}
+				};
+			}
+
+			@Override
+			public Node visitSet(final Field field, final Node inner) {
+				return new ArrayNode(inner) {
+					@Override
+					Collection<Object> create() {
+						return new HashSet<>();
+					}
+				};
+			}
+
+			@Override
+			public Node visitMap(final Field field, final Node inner) {
+				return new MapNode(inner);
+			}
+
+			@Override
+			public Node visitAbstract(
+					final Field field, final Class<?> klass, final List<Pair<Class<?>, Node>> derived
+			) {
+				final PrimitiveArrays primitive = PrimitiveArrays.of(klass);
+				if (primitive != null)
+					return new PrimitiveArrayNode(primitive, primitive.isArray(klass));
+				final List<String> names = new ArrayList<>();
+				final Node[] types = new Node[derived.size()];
+				for (int i = 0; i < derived.size(); ++i) {
+					names.add(Walk.decideName(derived.get(i).first).toLowerCase());
+					types[i] = derived.get(i).second;
+				}
+				return new AbstractNode(klass, names(names, duplicates), types);
+			}
+
+			@Override
+			public Node visitConcreteShort(final Field field, final Class<?> klass) {
+				final PrimitiveArrays primitive = PrimitiveArrays.of(klass);
+				if (primitive != null)
+					return new PrimitiveArrayNode(primitive, primitive.isArray(klass));
+				return concrete.computeIfAbsent(klass, ConcreteNode::new);
+			}
+
+			@Override
+			public void visitConcrete(
+					final Field field, final Class<?> klass, final List<Pair<Field, Node>> fields
+			) {
+				if (PrimitiveArrays.of(klass) != null)
+					return;
+				final ConcreteNode node = concrete.computeIfAbsent(klass, ConcreteNode::new);
+				node.fields = new FieldEntry[fields.size()];
+				final List<String> names = new ArrayList<>();
+				final boolean[] required = new boolean[fields.size()];
+				for (int i = 0; i < fields.size(); ++i) {
+					final Pair<Field, Node> pair = fields.get(i);
+					required[i] = ReadTypeGrammar.fieldIsRequired(pair.first);
+					final FieldEntry entry =
+							new FieldEntry(i, Walk.decideName(pair.first), pair.first, pair.second, required[i]);
+					node.fields[i] = entry;
+					names.add(entry.name);
+					if (entry.required)
+						node.required += 1;
+				}
+				node.table = names(names, duplicates);
+				final int abbreviated = ReadTypeGrammar.abbreviatedField(required);
+				if (abbreviated != -1)
+					node.abbreviation = node.fields[abbreviated];
+			}
+		});
+		boolean ambiguous = duplicates[0];
+		for (final ConcreteNode node : concrete.values())
+			if (node.abbreviation != null && (node.abbreviation.node.first(new HashSet<>()) & FIRST_RECORD) != 0)
+				ambiguous = true;
+		this.ambiguous = ambiguous;
+		this.buildGrammar = ambiguous ? buildGrammar : null;
+	}
+
+	/**
+	 * @param names
+	 * @param duplicates set if there are duplicate names
+	 * @return a lookup for the names, empty if there are duplicates since the type won't be read directly
+	 */
+	private static Names names(final List<String> names, final boolean[] duplicates) {
+		if (new HashSet<>(names).size() < names.size()) {
+			duplicates[0] = true;
+			return new Names();
+		}
+		return new Names(names.toArray(new String[0]));
+	}
+
+	/**
+	 * @return true if documents are parsed with ReadTypeGrammar because the type can't be read deterministically
+	 */
+	public boolean ambiguous() {
+		return ambiguous;
+	}
+
+	public Stream<T> read(final String data) {
+		return read(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * @param data
+	 * @return the root elements, read as they're requested
+	 */
+	public Stream<T> read(final InputStream data) {
+		if (ambiguous)
+			return new Parse<T>().grammar(grammar()).errorHistory(5).parseByElement(data);
+		return Reading.stream(data, reading -> (T) root.read(reading));
+	}
+
+	/**
+	 * @param path
+	 * @return the root elements of the file, read as they're requested
+	 */
+	public Stream<T> read(final Path path) {
+		if (ambiguous)
+			return new Parse<T>().grammar(grammar()).errorHistory(5).parseByElement(path);
+		return Reading.stream(path, reading -> (T) root.read(reading));
+	}
+
+	private synchronized Grammar grammar() {
+		if (grammar == null)
+			grammar = buildGrammar.get();
+		return grammar;
+	}
+
+	private abstract static class Node {
+		/**
+		 * Read a value, starting with the current token and ending on the value's last token.
+		 *
+		 * @param reading
+		 * @return the value
+		 */
+		abstract Object read(Reading reading);
+
+		/**
+		 * @param visiting classes already being checked, to stop recursion
+		 * @return FIRST_ flags for the tokens a value can start with
+		 */
+		abstract int first(Set<ConcreteNode> visiting);
+	}
+
+	private abstract static class PrimitiveNode extends Node {
+		abstract Object primitive(Reading reading);
+
+		@Override
+		Object read(final Reading reading) {
+			return primitive(reading);
+		}
+
+		@Override
+		int first(final Set<ConcreteNode> visiting) {
+			return FIRST_PRIMITIVE;
+		}
+	}
+
+	private abstract static class ArrayNode extends Node {
+		private final Node inner;
+
+		private ArrayNode(final Node inner) {
+			this.inner = inner;
+		}
+
+		abstract Collection<Object> create();
+
+		@Override
+		Object read(final Reading reading) {
+			if (reading.token() != Token.ARRAY_OPEN)
+				throw reading.unexpected("array");
+			final Collection<Object> out = create();
+			while (reading.next() != Token.ARRAY_CLOSE)
+				out.add(inner.read(reading));
+			return out;
+		}
+
+		@Override
+		int first(final Set<ConcreteNode> visiting) {
+			return FIRST_ARRAY;
+		}
+	}
+
+	/**
+	 * Fills a primitive list directly from the elements.
+	 */
+	private static class PrimitiveArrayNode extends Node {
+		private final PrimitiveArrays primitive;
+		private final boolean array;
+
+		private PrimitiveArrayNode(final PrimitiveArrays primitive, final boolean array) {
+			this.primitive = primitive;
+			this.array = array;
+		}
+
+		@Override
+		Object read(final Reading reading) {
+			if (reading.token() != Token.ARRAY_OPEN)
+				throw reading.unexpected("array");
+			switch (primitive) {
+				case INT: {
+					final IntList out = new IntList();
+					while (next(reading))
+						out.add(reading.parseInt());
+					return array ? out.toArray() : out;
+				}
+				case LONG: {
+					final LongList out = new LongList();
+					while (next(reading))
+						out.add(reading.parseLong());
+					return array ? out.toArray() : out;
+				}
+				case DOUBLE: {
+					final DoubleList out = new DoubleList();
+					while (next(reading))
+						out.add(reading.parseDouble());
+					return array ? out.toArray() : out;
+				}
+				case BOOLEAN: {
+					final BooleanList out = new BooleanList();
+					while (next(reading))
+						out.add(reading.parseBoolean());
+					return array ? out.toArray() : out;
+				}
+				default:
+					throw new AssertionError();
+			}
+		}
+
+		/**
+		 * @param reading
+		 * @return false at the end of the array, otherwise true with the next element as the current token
+		 */
+		private static boolean next(final Reading reading) {
+			return reading.next() != Token.ARRAY_CLOSE;
+		}
+
+		@Override
+		int first(final Set<ConcreteNode> visiting) {
+			return FIRST_ARRAY;
+		}
+	}
+
+	private static class MapNode extends Node {
+		private final Node inner;
+
+		private MapNode(final Node inner) {
+			this.inner = inner;
+		}
+
+		@Override
+		Object read(final Reading reading) {
+			if (reading.token() != Token.RECORD_OPEN)
+				throw reading.unexpected("record");
+			final Map<String, Object> out = new HashMap<>();
+			while (reading.next() != Token.RECORD_CLOSE) {
+				final String key = reading.text();
+				reading.key(key);
+				reading.next();
+				out.put(key, inner.read(reading));
+			}
+			return out;
+		}
+
+		@Override
+		int first(final Set<ConcreteNode> visiting) {
+			return FIRST_RECORD;
+		}
+	}
+
+	private static class AbstractNode extends Node {
+		private final Class<?> klass;
+		private final Names names;
+		private final Node[] types;
+
+		private AbstractNode(final Class<?> klass, final Names names, final Node[] types) {
+			this.klass = klass;
+			this.names = names;
+			this.types = types;
+		}
+
+		@Override
+		Object read(final Reading reading) {
+			if (reading.token() != Token.TYPE)
+				throw reading.unexpected(String.format("type of %s", klass.getSimpleName()));
+			final int type = reading.lookup(names);
+			if (type == -1)
+				throw reading.unknownType(klass.getSimpleName());
+			reading.next();
+			return types[type].read(reading);
+		}
+
+		@Override
+		int first(final Set<ConcreteNode> visiting) {
+			return FIRST_TYPE;
+		}
+	}
+
+	private static class FieldEntry {
+		final int index;
+		final String name;
+		final Accessors.Setter setter;
+		final Node node;
+		final boolean required;
+
+		private FieldEntry(
+				final int index, final String name, final Field field, final Node node, final boolean required
+		) {
+			this.index = index;
+			this.name = name;
+			this.setter = Accessors.setter(field);
+			this.node = node;
+			this.required = required;
+		}
+	}
+
+	private static class ConcreteNode extends Node {
+		private final Class<?> klass;
+		private final Supplier<Object> constructor;
+		FieldEntry[] fields;
+		Names table;
+		int required = 0;
+		FieldEntry abbreviation = null;
+
+		private ConcreteNode(final Class<?> klass) {
+			this.klass = klass;
+			this.constructor = Accessors.constructor(klass);
+		}
+
+		@Override
+		Object read(final Reading reading) {
+			final Object out = constructor.get();
+			if (reading.token() != Token.RECORD_OPEN) {
+				if (abbreviation == null)
+					throw reading.unexpected(String.format("record for %s", klass.getSimpleName()));
+				abbreviation.setter.set(out, abbreviation.node.read(reading));
+				return out;
+			}
+			final boolean[] seen = new boolean[fields.length];
+			int found = 0;
+			while (reading.next() != Token.RECORD_CLOSE) {
+				final int index = reading.lookup(table);
+				if (index == -1)
+					throw reading.unknownField(klass.getSimpleName());
+				final FieldEntry entry = fields[index];
+				if (seen[entry.index])
+					throw reading.duplicateField(entry.name, klass.getSimpleName());
+				seen[entry.index] = true;
+				if (entry.required)
+					found += 1;
+				reading.key(entry.name);
+				reading.next();
+				entry.setter.set(out, entry.node.read(reading));
+			}
+			if (found < required)
+				for (final FieldEntry entry : fields)
+					if (entry.required && !seen[entry.index])
+						throw reading.missingField(entry.name, klass.getSimpleName());
+			return out;
+		}
+
+		@Override
+		int first(final Set<ConcreteNode> visiting) {
+			if (abbreviation == null || !visiting.add(this))
+				return FIRST_RECORD;
+			return FIRST_RECORD | abbreviation.node.first(visiting);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.zarbosoft.luxem.read.path;
+
+import java.util.Arrays;
+
+/**
+ * Mutable equivalent of LuxemPath for tracking the position while reading.  Updating it doesn't allocate (except when
+ * the nesting gets deeper than ever before) - use `snapshot` to get an immutable LuxemPath for the current position.
+ */
+public class LuxemPathBuilder {
+	private boolean[] record = new boolean[16];
+	private boolean[] type = new boolean[16];
+	private int[] index = new int[16];
+	private String[] key = new String[16];
+	private int top = 0;
+
+	public LuxemPathBuilder() {
+		index[0] = -1;
+	}
+
+	/**
+	 * Advance past a primitive, array, or record.
+	 */
+	public void value() {
+		if (record[top])
+			return;
+		if (type[top])
+			type[top] = false;
+		else
+			index[top] += 1;
+	}
+
+	public void key(final String data) {
+		if (record[top])
+			key[top] = data;
+	}
+
+	public void type() {
+		if (record[top])
+			return;
+		type[top] = true;
+		index[top] += 1;
+	}
+
+	public void arrayBegin() {
+		value();
+		push(false);
+		index[top] = -1;
+	}
+
+	public void recordBegin() {
+		value();
+		push(true);
+		key[top] = null;
+	}
+
+	/**
+	 * End an array or record.
+	 */
+	public void pop() {
+		key[top] = null;
+		top -= 1;
+	}
+
+	private void push(final boolean record) {
+		top += 1;
+		if (top == this.record.length) {
+			final int size = this.record.length * 2;
+			this.record = Arrays.copyOf(this.record, size);
+			type = Arrays.copyOf(type, size);
+			index = Arrays.copyOf(index, size);
+			key = Arrays.copyOf(key, size);
+		}
+		this.record[top] = record;
+		type[top] = false;
+	}
+
+	/**
+	 * @return an immutable path for the current position
+	 */
+	public LuxemPath snapshot() {
+		LuxemPath out = null;
+		for (int i = 0; i <= top; ++i) {
+			if (record[i])
+				out = new LuxemObjectPath(out, key[i]);
+			else
+				out = new LuxemArrayPath(out, type[i], index[i]);
+		}
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder out = new StringBuilder();
+		for (int i = 0; i <= top; ++i) {
+			out.append('/');
+			if (record[i]) {
+				if (key[i] != null)
+					out.append(key[i]);
+			} else if (index[i] != -1)
+				out.append(index[i]);
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,62 @@
+package com.zarbosoft.luxem.tree;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Read only view of a document array.  Elements are decoded when first accessed and kept.  Safe to share between
+ * threads - if two threads decode the same element at once both get the one that was kept first.
+ */
+class LazyList extends AbstractList<Object> implements RandomAccess {
+	private final LuxemDocument document;
+	private final int begin;
+
+	/**
+	 * Set once the element positions are found.
+	 */
+	private final AtomicReference<Elements> elements = new AtomicReference<>();
+
+	private static class Elements {
+		final int[] positions;
+		final AtomicReferenceArray<Object> values;
+
+		private Elements(final int[] positions) {
+			this.positions = positions;
+			this.values = new AtomicReferenceArray<>(positions.length);
+		}
+	}
+
+	LazyList(final LuxemDocument document, final int begin) {
+		this.document = document;
+		this.begin = begin;
+	}
+
+	@Override
+	public Object get(final int index) {
+		Elements elements = this.elements.get();
+		if (elements == null) {
+			final int[] positions = new int[size()];
+			int at = begin + 1;
+			for (int i = 0; i < positions.length; ++i) {
+				positions[i] = at;
+				at = document.skip(at);
+			}
+			this.elements.compareAndSet(null, new Elements(positions));
+			elements = this.elements.get();
+		}
+		if (index < 0 || index >= elements.positions.length)
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		final Object value = elements.values.get(index);
+		if (value != null)
+			return value;
+		elements.values.compareAndSet(index, null, document.lazy(elements.positions[index]));
+		return elements.values.get(index);
+	}
+
+	@Override
+	public int size() {
+		return LuxemDocument.payload(document.tape[LuxemDocument.payload(document.tape[begin]) - 1]);
+	}
+}
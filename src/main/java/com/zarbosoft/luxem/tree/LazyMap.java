@@ -0,0 +1,82 @@
+package com.zarbosoft.luxem.tree;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Read only view of a document record.  Looking up a key scans the record's keys without decoding them and only
+ * decodes the matching value, which is kept.  Iterating decodes the keys and the values of the record but not their
+ * contents.  Safe to share between threads - if two threads decode the same value at once both get the one that was
+ * kept first.  Misses aren't kept, so looking up arbitrary keys doesn't grow the view.
+ */
+class LazyMap extends AbstractMap<String, Object> {
+	private final LuxemDocument document;
+	private final int begin;
+	private final ConcurrentMap<String, Object> found = new ConcurrentHashMap<>();
+	private volatile Map<String, Object> all = null;
+
+	LazyMap(final LuxemDocument document, final int begin) {
+		this.document = document;
+		this.begin = begin;
+	}
+
+	@Override
+	public Object get(final Object key) {
+		if (!(key instanceof String))
+			return null;
+		final Map<String, Object> all = this.all;
+		if (all != null)
+			return all.get(key);
+		Object value = found.get(key);
+		if (value == null) {
+			final byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+			int position = -1;
+			int at = begin + 1;
+			while (LuxemDocument.kind(document.tape[at]) == LuxemDocument.KEY) {
+				if (document.stringEquals(at, bytes))
+					position = at + 1;
+				at = document.skip(at);
+			}
+			if (position == -1)
+				return null;
+			final Object created = document.lazy(position);
+			value = found.putIfAbsent((String) key, created);
+			if (value == null)
+				value = created;
+		}
+		return value;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		Map<String, Object> all = this.all;
+		if (all == null) {
+			final Map<String, Integer> positions = new HashMap<>();
+			int at = begin + 1;
+			while (LuxemDocument.kind(document.tape[at]) == LuxemDocument.KEY) {
+				positions.put(document.string(at), at + 1);
+				at = document.skip(at);
+			}
+			final Map<String, Object> values = new HashMap<>();
+			for (final Entry<String, Integer> entry : positions.entrySet()) {
+				Object value = found.get(entry.getKey());
+				if (value == null) {
+					final Object created = document.lazy(entry.getValue());
+					value = found.putIfAbsent(entry.getKey(), created);
+					if (value == null)
+						value = created;
+				}
+				values.put(entry.getKey(), value);
+			}
+			this.all = all = Collections.unmodifiableMap(values);
+		}
+		return all.entrySet();
+	}
+}
@@ -0,0 +1,551 @@
+package com.zarbosoft.luxem.tree;
+
+import com.zarbosoft.luxem.read.BufferedRawReader;
+import com.zarbosoft.luxem.read.Numbers;
+import com.zarbosoft.luxem.read.RawReader;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A whole document stored compactly as a tape: one long per token plus a single array of key, type, and primitive
+ * bytes.  This takes a fraction of the memory of the TreeReader tree.  Navigate it with Cursors.
+ * <p>
+ * Each tape entry has the token kind in the top byte and a payload in the rest.  Array and record begin entries point
+ * past their end entry so a whole value can be skipped in one step, and end entries hold the number of elements.
+ * Keys, types, and primitives hold the offset and length of their bytes.  Lengths that don't fit in the entry are
+ * stored in 4 bytes before the string instead.  The root elements are stored as an array at the start of the tape.
+ */
+public class LuxemDocument {
+	static final int ARRAY = 1;
+	static final int ARRAY_END = 2;
+	static final int RECORD = 3;
+	static final int RECORD_END = 4;
+	static final int KEY = 5;
+	static final int TYPE = 6;
+	static final int PRIMITIVE = 7;
+
+	private static final int KIND_SHIFT = 56;
+	private static final long PAYLOAD = (1L << KIND_SHIFT) - 1;
+
+	/**
+	 * String entries have the offset in the high bits of the payload and the length in the low bits.
+	 */
+	private static final int LENGTH_BITS = 24;
+
+	/**
+	 * The length of strings with their length stored before their bytes.
+	 */
+	private static final int LONG_STRING = (1 << LENGTH_BITS) - 1;
+
+	final long[] tape;
+	final byte[] strings;
+
+	LuxemDocument(final long[] tape, final byte[] strings) {
+		this.tape = tape;
+		this.strings = strings;
+	}
+
+	public static LuxemDocument read(final InputStream stream) {
+		final LuxemDocument[] out = {null};
+		RawReader.stream(reader(document -> out[0] = document), stream).forEach(b -> {
+		});
+		return out[0];
+	}
+
+	/**
+	 * Read a file through a memory mapping rather than stream reads.
+	 *
+	 * @param path
+	 * @return the document
+	 */
+	public static LuxemDocument read(final Path path) {
+		final LuxemDocument[] out = {null};
+		RawReader.stream(reader(document -> out[0] = document), path).forEach(b -> {
+		});
+		return out[0];
+	}
+
+	/**
+	 * Read a file using a saved tape in a sibling file named with a `.tape` suffix.  If the tape is missing or out of
+	 * date the file is read and the tape saved for next time.
+	 *
+	 * @param path
+	 * @return the document
+	 */
+	public static LuxemDocument readCached(final Path path) {
+		return readCached(path, path.resolveSibling(path.getFileName() + ".tape"));
+	}
+
+	/**
+	 * Read a file using a saved tape.  If the tape is missing or out of date the file is read and the tape saved for
+	 * next time.
+	 *
+	 * @param path
+	 * @param cache where the tape is saved
+	 * @return the document
+	 */
+	public static LuxemDocument readCached(final Path path, final Path cache) {
+		return TapeCache.read(path, cache);
+	}
+
+	/**
+	 * Read a file from the channel's position through a memory mapping rather than stream reads.
+	 *
+	 * @param channel
+	 * @return the document
+	 */
+	public static LuxemDocument read(final FileChannel channel) {
+		final LuxemDocument[] out = {null};
+		RawReader.stream(reader(document -> out[0] = document), channel).forEach(b -> {
+		});
+		return out[0];
+	}
+
+	/**
+	 * Create a reader that builds a document and passes it to `out` when the reader is finished.
+	 *
+	 * @param out
+	 * @return a reader to feed the document to
+	 */
+	public static RawReader reader(final Consumer<LuxemDocument> out) {
+		final Builder builder = new Builder();
+		final BufferedRawReader reader = new BufferedRawReader() {
+			@Override
+			public void finish() {
+				super.finish();
+				out.accept(builder.build());
+			}
+		};
+		reader.eatKeySlice = (buffer, offset, length) -> builder.string(KEY, buffer, offset, length);
+		reader.eatTypeSlice = (buffer, offset, length) -> builder.string(TYPE, buffer, offset, length);
+		reader.eatPrimitiveSlice = (buffer, offset, length) -> {
+			builder.string(PRIMITIVE, buffer, offset, length);
+			builder.counts[builder.depth] += 1;
+		};
+		reader.eatArrayBegin = () -> builder.begin(ARRAY);
+		reader.eatRecordBegin = () -> builder.begin(RECORD);
+		reader.eatArrayEnd = () -> builder.end(ARRAY_END);
+		reader.eatRecordEnd = () -> builder.end(RECORD_END);
+		return reader;
+	}
+
+	private static class Builder {
+		long[] tape = new long[1024];
+		int tapeSize = 0;
+		byte[] strings = new byte[4096];
+		int stringsSize = 0;
+		int[] begins = new int[16];
+		int[] counts = new int[16];
+		int depth = 0;
+
+		Builder() {
+			add(ARRAY, 0);
+		}
+
+		void add(final int kind, final long payload) {
+			if (tapeSize == tape.length)
+				tape = Arrays.copyOf(tape, tape.length * 2);
+			tape[tapeSize++] = (long) kind << KIND_SHIFT | payload;
+		}
+
+		void string(final int kind, final byte[] buffer, final int offset, final int length) {
+			final boolean prefixed = length >= LONG_STRING;
+			final int required = stringsSize + (prefixed ? 4 : 0) + length;
+			if (required < 0)
+				throw new IllegalStateException("Document strings exceed 2GB.");
+			if (required > strings.length)
+				strings = Arrays.copyOf(strings, Math.max(required, (int) Math.min(strings.length * 2L, Integer.MAX_VALUE - 8)));
+			add(kind, (long) stringsSize << LENGTH_BITS | (prefixed ? LONG_STRING : length));
+			if (prefixed) {
+				strings[stringsSize++] = (byte) (length >>> 24);
+				strings[stringsSize++] = (byte) (length >>> 16);
+				strings[stringsSize++] = (byte) (length >>> 8);
+				strings[stringsSize++] = (byte) length;
+			}
+			System.arraycopy(buffer, offset, strings, stringsSize, length);
+			stringsSize += length;
+		}
+
+		void begin(final int kind) {
+			counts[depth] += 1;
+			depth += 1;
+			if (depth == begins.length) {
+				begins = Arrays.copyOf(begins, depth * 2);
+				counts = Arrays.copyOf(counts, depth * 2);
+			}
+			begins[depth] = tapeSize;
+			counts[depth] = 0;
+			add(kind, 0);
+		}
+
+		void end(final int kind) {
+			add(kind, counts[depth]);
+			tape[begins[depth]] |= tapeSize;
+			depth -= 1;
+		}
+
+		LuxemDocument build() {
+			add(ARRAY_END, counts[0]);
+			tape[0] |= tapeSize;
+			return new LuxemDocument(Arrays.copyOf(tape, tapeSize), Arrays.copyOf(strings, stringsSize));
+		}
+	}
+
+	/**
+	 * @return the root elements, as an array
+	 */
+	public Cursor root() {
+		return new Cursor(this, 0);
+	}
+
+	/**
+	 * @return the number of root elements
+	 */
+	public int size() {
+		return root().size();
+	}
+
+	/**
+	 * @param index
+	 * @return the root element at index
+	 */
+	public Cursor get(final int index) {
+		return root().get(index);
+	}
+
+	/**
+	 * @return the root elements as a read only List, decoding values as they're accessed
+	 */
+	public List<Object> lazy() {
+		return new LazyList(this, 0);
+	}
+
+	/**
+	 * @param index a value or type
+	 * @return the value as a String, a lazy List or Map, or a Typed of one of those
+	 */
+	Object lazy(final int index) {
+		final String type;
+		final int value;
+		if (kind(tape[index]) == TYPE) {
+			type = string(index);
+			value = index + 1;
+		} else {
+			type = null;
+			value = index;
+		}
+		final Object out;
+		switch (kind(tape[value])) {
+			case ARRAY:
+				out = new LazyList(this, value);
+				break;
+			case RECORD:
+				out = new LazyMap(this, value);
+				break;
+			default:
+				out = string(value);
+		}
+		if (type != null)
+			return new Typed(type, out);
+		return out;
+	}
+
+	static int kind(final long entry) {
+		return (int) (entry >>> KIND_SHIFT);
+	}
+
+	static int payload(final long entry) {
+		return (int) (entry & PAYLOAD);
+	}
+
+	/**
+	 * @param index a value, type, or key
+	 * @return the index after the value
+	 */
+	int skip(int index) {
+		while (true) {
+			final long entry = tape[index];
+			switch (kind(entry)) {
+				case KEY:
+				case TYPE:
+					index += 1;
+					break;
+				case ARRAY:
+				case RECORD:
+					return payload(entry);
+				default:
+					return index + 1;
+			}
+		}
+	}
+
+	/**
+	 * @param index a key, type, or primitive
+	 * @return the offset of its bytes in strings
+	 */
+	int stringOffset(final int index) {
+		final long entry = tape[index];
+		final int offset = (int) ((entry & PAYLOAD) >>> LENGTH_BITS);
+		if ((entry & LONG_STRING) == LONG_STRING)
+			return offset + 4;
+		return offset;
+	}
+
+	/**
+	 * @param index a key, type, or primitive
+	 * @return the number of bytes
+	 */
+	int stringLength(final int index) {
+		final long entry = tape[index];
+		final int length = (int) (entry & LONG_STRING);
+		if (length != LONG_STRING)
+			return length;
+		final int offset = (int) ((entry & PAYLOAD) >>> LENGTH_BITS);
+		return (strings[offset] & 0xFF) << 24 |
+				(strings[offset + 1] & 0xFF) << 16 |
+				(strings[offset + 2] & 0xFF) << 8 |
+				(strings[offset + 3] & 0xFF);
+	}
+
+	String string(final int index) {
+		return new String(strings, stringOffset(index), stringLength(index), StandardCharsets.UTF_8);
+	}
+
+	boolean stringEquals(final int index, final byte[] value) {
+		if (stringLength(index) != value.length)
+			return false;
+		final int offset = stringOffset(index);
+		for (int i = 0; i < value.length; ++i)
+			if (strings[offset + i] != value[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * A position in the document - a value, including its type if it has one.  Cursors are cheap and don't change,
+	 * navigation creates new cursors.
+	 */
+	public static final class Cursor {
+		private final LuxemDocument document;
+		private final int index;
+
+		private Cursor(final LuxemDocument document, final int index) {
+			this.document = document;
+			this.index = index;
+		}
+
+		/**
+		 * @return the index of the value after any type
+		 */
+		private int value() {
+			return LuxemDocument.kind(document.tape[index]) == TYPE ? index + 1 : index;
+		}
+
+		private int kind() {
+			return LuxemDocument.kind(document.tape[value()]);
+		}
+
+		public boolean isArray() {
+			return kind() == ARRAY;
+		}
+
+		public boolean isRecord() {
+			return kind() == RECORD;
+		}
+
+		public boolean isPrimitive() {
+			return kind() == PRIMITIVE;
+		}
+
+		/**
+		 * @return the value's type, or null if it has none
+		 */
+		public String type() {
+			if (LuxemDocument.kind(document.tape[index]) != TYPE)
+				return null;
+			return document.string(index);
+		}
+
+		/**
+		 * @return the key of this value if it's in a record, otherwise null
+		 */
+		public String key() {
+			if (index == 0 || LuxemDocument.kind(document.tape[index - 1]) != KEY)
+				return null;
+			return document.string(index - 1);
+		}
+
+		private int primitive() {
+			final int value = value();
+			if (LuxemDocument.kind(document.tape[value]) != PRIMITIVE)
+				throw new IllegalStateException("Value is not a primitive.");
+			return value;
+		}
+
+		public String string() {
+			return document.string(primitive());
+		}
+
+		/**
+		 * @return a copy of the primitive's bytes
+		 */
+		public byte[] bytes() {
+			final int value = primitive();
+			final int offset = document.stringOffset(value);
+			return Arrays.copyOfRange(document.strings, offset, offset + document.stringLength(value));
+		}
+
+		public int parseInt() {
+			final int value = primitive();
+			return Numbers.parseInt(document.strings, document.stringOffset(value), document.stringLength(value));
+		}
+
+		public long parseLong() {
+			final int value = primitive();
+			return Numbers.parseLong(document.strings, document.stringOffset(value), document.stringLength(value));
+		}
+
+		public double parseDouble() {
+			final int value = primitive();
+			return Numbers.parseDouble(document.strings, document.stringOffset(value), document.stringLength(value));
+		}
+
+		private int container() {
+			final int value = value();
+			final int kind = LuxemDocument.kind(document.tape[value]);
+			if (kind != ARRAY && kind != RECORD)
+				throw new IllegalStateException("Value is not an array or record.");
+			return value;
+		}
+
+		/**
+		 * @return the number of elements in the array or record
+		 */
+		public int size() {
+			return LuxemDocument.payload(document.tape[LuxemDocument.payload(document.tape[container()]) - 1]);
+		}
+
+		/**
+		 * Array element lookup.  Elements before index are skipped without visiting their contents.
+		 *
+		 * @param index
+		 * @return the element at index
+		 * @throws IndexOutOfBoundsException
+		 */
+		public Cursor get(final int index) {
+			final int value = container();
+			if (LuxemDocument.kind(document.tape[value]) != ARRAY)
+				throw new IllegalStateException("Value is not an array.");
+			if (index < 0)
+				throw new IndexOutOfBoundsException(Integer.toString(index));
+			int at = value + 1;
+			for (int i = 0; i < index; ++i) {
+				if (LuxemDocument.kind(document.tape[at]) == ARRAY_END)
+					throw new IndexOutOfBoundsException(Integer.toString(index));
+				at = document.skip(at);
+			}
+			if (LuxemDocument.kind(document.tape[at]) == ARRAY_END)
+				throw new IndexOutOfBoundsException(Integer.toString(index));
+			return new Cursor(document, at);
+		}
+
+		/**
+		 * Record field lookup.  If the key appears more than once the last is used, like TreeReader.
+		 *
+		 * @param key
+		 * @return the value for key or null if the record doesn't have it
+		 */
+		public Cursor get(final String key) {
+			final int value = container();
+			if (LuxemDocument.kind(document.tape[value]) != RECORD)
+				throw new IllegalStateException("Value is not a record.");
+			final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			Cursor out = null;
+			int at = value + 1;
+			while (LuxemDocument.kind(document.tape[at]) == KEY) {
+				if (document.stringEquals(at, bytes))
+					out = new Cursor(document, at + 1);
+				at = document.skip(at);
+			}
+			return out;
+		}
+
+		/**
+		 * @return the elements of the array or the values of the record in order
+		 */
+		public Iterable<Cursor> elements() {
+			final int value = container();
+			return () -> new Iterator<Cursor>() {
+				int at = value + 1;
+
+				{
+					skipKey();
+				}
+
+				private void skipKey() {
+					if (LuxemDocument.kind(document.tape[at]) == KEY)
+						at += 1;
+				}
+
+				@Override
+				public boolean hasNext() {
+					final int kind = LuxemDocument.kind(document.tape[at]);
+					return kind != ARRAY_END && kind != RECORD_END;
+				}
+
+				@Override
+				public Cursor next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					final Cursor out = new Cursor(document, at);
+					at = document.skip(at);
+					skipKey();
+					return out;
+				}
+			};
+		}
+
+		/**
+		 * @return the value as a tree of read only Lists and String Maps that decode their contents as they're
+		 * accessed, Strings, and Typeds
+		 */
+		public Object lazy() {
+			return document.lazy(index);
+		}
+
+		/**
+		 * @return the value as a tree of Lists, String Maps, Strings, and Typeds, like TreeReader
+		 */
+		public Object tree() {
+			final int value = value();
+			final Object out;
+			switch (LuxemDocument.kind(document.tape[value])) {
+				case ARRAY: {
+					final List<Object> list = new ArrayList<>();
+					for (final Cursor element : elements())
+						list.add(element.tree());
+					out = list;
+					break;
+				}
+				case RECORD: {
+					final Map<String, Object> map = new HashMap<>();
+					for (final Cursor element : elements())
+						map.put(element.key(), element.tree());
+					out = map;
+					break;
+				}
+				default:
+					out = document.string(value);
+			}
+			final String type = type();
+			if (type != null)
+				return new Typed(type, out);
+			return out;
+		}
+	}
+}
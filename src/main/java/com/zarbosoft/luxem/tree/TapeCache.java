@@ -0,0 +1,178 @@
+package com.zarbosoft.luxem.tree;
+
+import com.zarbosoft.luxem.read.RawReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves LuxemDocument tapes next to their source so later reads can load them without lexing.
+ * <p>
+ * The cache file starts with a header identifying the source by size, modification time, and a hash of its contents,
+ * followed by the tape and string data.  If the size and time match the cache is used directly.  If only the time
+ * changed (the file was copied or touched) the contents are hashed to check whether the cache is still good.
+ */
+class TapeCache {
+	private static final long MAGIC = 0x4C5558454D544150L;
+	private static final int VERSION = 2;
+	private static final int HEADER = 48;
+	private static final int MODIFIED_OFFSET = 20;
+	private static final int CHUNK_LONGS = 1 << 17;
+
+	static LuxemDocument read(final Path source, final Path cache) {
+		final long size;
+		final long modified;
+		try {
+			size = Files.size(source);
+			modified = Files.getLastModifiedTime(source).toMillis();
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		Long hash = null;
+		try (final FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() == HEADER &&
+					header.getLong() == MAGIC &&
+					header.getInt() == VERSION &&
+					header.getLong() == size) {
+				final long cachedModified = header.getLong();
+				final long cachedHash = header.getLong();
+				final int tapeSize = header.getInt();
+				final int stringsSize = header.getInt();
+				if (channel.size() == HEADER + tapeSize * 8L + stringsSize) {
+					boolean valid = cachedModified == modified;
+					if (!valid) {
+						hash = hash(source);
+						valid = hash == cachedHash;
+					}
+					if (valid) {
+						final LuxemDocument out = load(channel, tapeSize, stringsSize);
+						if (cachedModified != modified)
+							touch(cache, modified);
+						return out;
+					}
+				}
+			}
+		} catch (final IOException e) {
+			// Missing or unreadable, rebuild it
+		}
+		final LuxemDocument out = LuxemDocument.read(source);
+		save(out, cache, size, modified, hash == null ? hash(source) : hash);
+		return out;
+	}
+
+	private static LuxemDocument load(
+			final FileChannel channel, final int tapeSize, final int stringsSize
+	) throws IOException {
+		final long[] tape = new long[tapeSize];
+		for (int at = 0; at < tapeSize; at += CHUNK_LONGS) {
+			final int count = Math.min(CHUNK_LONGS, tapeSize - at);
+			channel
+					.map(FileChannel.MapMode.READ_ONLY, HEADER + at * 8L, count * 8L)
+					.asLongBuffer()
+					.get(tape, at, count);
+		}
+		final byte[] strings = new byte[stringsSize];
+		if (stringsSize > 0)
+			channel.map(FileChannel.MapMode.READ_ONLY, HEADER + tapeSize * 8L, stringsSize).get(strings);
+		return new LuxemDocument(tape, strings);
+	}
+
+	/**
+	 * Record a new modification time for a cache that was confirmed to still match its source.
+	 *
+	 * @param cache
+	 * @param modified
+	 */
+	private static void touch(final Path cache, final long modified) {
+		try (final FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(8);
+			buffer.putLong(modified);
+			buffer.flip();
+			channel.write(buffer, MODIFIED_OFFSET);
+		} catch (final IOException e) {
+			// Only an optimization
+		}
+	}
+
+	/**
+	 * Write the cache to a temporary file and move it into place, so readers never see a partial cache.  Failures
+	 * are ignored since the cache is only an optimization.
+	 */
+	private static void save(
+			final LuxemDocument document, final Path cache, final long size, final long modified, final long hash
+	) {
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+			try (final FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				final ByteBuffer header = ByteBuffer.allocate(HEADER);
+				header.putLong(MAGIC);
+				header.putInt(VERSION);
+				header.putLong(size);
+				header.putLong(modified);
+				header.putLong(hash);
+				header.putInt(document.tape.length);
+				header.putInt(document.strings.length);
+				header.position(HEADER);
+				header.flip();
+				write(channel, header);
+				final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_LONGS * 8);
+				final LongBuffer longs = chunk.asLongBuffer();
+				for (int at = 0; at < document.tape.length; at += CHUNK_LONGS) {
+					final int count = Math.min(CHUNK_LONGS, document.tape.length - at);
+					longs.clear();
+					longs.put(document.tape, at, count);
+					chunk.clear();
+					chunk.limit(count * 8);
+					write(channel, chunk);
+				}
+				write(channel, ByteBuffer.wrap(document.strings));
+			}
+			Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+		} catch (final IOException e) {
+			// Only an optimization
+		} finally {
+			if (temp != null)
+				try {
+					Files.deleteIfExists(temp);
+				} catch (final IOException e) {
+				}
+		}
+	}
+
+	private static void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * @param source
+	 * @return a 64 bit hash of the file contents
+	 */
+	static long hash(final Path source) {
+		long hash = 0;
+		for (final ByteBuffer window : RawReader.map(source)) {
+			while (window.remaining() >= 8)
+				hash = mix(hash ^ window.getLong());
+			while (window.hasRemaining())
+				hash = mix(hash ^ window.get());
+		}
+		return hash;
+	}
+
+	private static long mix(long value) {
+		value *= 0x9E3779B97F4A7C15L;
+		return value ^ value >>> 29;
+	}
+}
@@ -16,6 +16,12 @@ public class RawWriter {
 	private final OutputStream stream;
 	private boolean first = true;
 
+	/**
+	 * Numbers are formatted here so writing them doesn't allocate.  Longest is a double like -2.2250738585072014E-308.
+	 */
+	private final byte[] scratch = new byte[32];
+	private final StringBuilder doubleText = new StringBuilder();
+
 	public RawWriter type(final String value) throws IOException {
 		return type(value.getBytes(StandardCharsets.UTF_8));
 	}
@@ -313,6 +319,66 @@ public class RawWriter {
 		return this;
 	}
 
+	public RawWriter quotedPrimitive(final int value) throws IOException {
+		return quotedPrimitive((long) value);
+	}
+
+	/**
+	 * Write the number as Long.toString does, without creating a string.
+	 *
+	 * @param value
+	 * @return this
+	 * @throws IOException
+	 */
+	public RawWriter quotedPrimitive(final long value) throws IOException {
+		int at = scratch.length;
+		// Count in negatives so Long.MIN_VALUE doesn't overflow
+		long remaining = value > 0 ? -value : value;
+		do {
+			scratch[--at] = (byte) ('0' - remaining % 10);
+			remaining /= 10;
+		} while (remaining != 0);
+		if (value < 0)
+			scratch[--at] = '-';
+		return quotedPrimitive(scratch, at, scratch.length - at);
+	}
+
+	/**
+	 * Write the number as Double.toString does.  StringBuilder formats doubles in place, so only a reused builder is
+	 * needed.
+	 *
+	 * @param value
+	 * @return this
+	 * @throws IOException
+	 */
+	public RawWriter quotedPrimitive(final double value) throws IOException {
+		doubleText.setLength(0);
+		doubleText.append(value);
+		final int length = doubleText.length();
+		for (int i = 0; i < length; ++i)
+			scratch[i] = (byte) doubleText.charAt(i);
+		return quotedPrimitive(scratch, 0, length);
+	}
+
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.UTF_8);
+
+	public RawWriter quotedPrimitive(final boolean value) throws IOException {
+		return quotedPrimitive(value ? TRUE : FALSE, 0, value ? TRUE.length : FALSE.length);
+	}
+
+	/**
+	 * @param bytes  a formatted number or boolean, which never needs escaping
+	 * @param offset
+	 * @param length
+	 */
+	private RawWriter quotedPrimitive(final byte[] bytes, final int offset, final int length) throws IOException {
+		quotedPrimitiveBegin();
+		stream.write(bytes, offset, length);
+		quotedPrimitiveEnd();
+		return this;
+	}
+
 	private static final Map<Byte, Byte> quotedPrimitiveEscapes = escapeMap()
 			.put((byte) '"', (byte) '"')
 			.put((byte) '\n', (byte) 'n')
@@ -1,17 +1,53 @@
 package com.zarbosoft.luxem.write;
 
 import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.generate.Accessors;
+import com.zarbosoft.luxem.generate.SubtypeIndex;
+import com.zarbosoft.luxem.primitive.PrimitiveArrays;
+import com.zarbosoft.rendaw.common.Pair;
+import org.reflections.Reflections;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 import static com.zarbosoft.rendaw.common.Common.uncheck;
 
+/**
+ * Writes @Configuration types.  How to write each class is worked out the first time it's written and shared
+ * afterwards - fields are read with Accessors and the values of polymorphic fields are written using their runtime
+ * class.
+ */
 public class TypeWriter {
+	/**
+	 * Subtypes are decided from values, so types are walked without them.
+	 */
+	private static final Reflections noSubtypes = SubtypeIndex.empty();
+
+	private static final ClassValue<Concrete> concrete = new ClassValue<Concrete>() {
+		@Override
+		protected Concrete computeValue(final Class<?> type) {
+			final PlanVisitor visitor = new PlanVisitor();
+			Walk.walk(noSubtypes, new Walk.TypeInfo(type), visitor);
+			final Concrete out = visitor.concrete.get(type);
+			if (out == null)
+				throw new IllegalArgumentException(String.format("%s isn't a concrete class", type));
+			return out;
+		}
+	};
+
+	/**
+	 * Plans for unparameterized root types.
+	 */
+	private static final ClassValue<Plan> roots = new ClassValue<Plan>() {
+		@Override
+		protected Plan computeValue(final Class<?> type) {
+			return Walk.walk(noSubtypes, new Walk.TypeInfo(type), new PlanVisitor());
+		}
+	};
+
 	private final OutputStream stream;
 	private RawWriter writer = null;
 
@@ -30,107 +66,197 @@ public class TypeWriter {
 	}
 
 	public TypeWriter write(final Walk.TypeInfo rootType, final Object root) {
+		return write(plan(rootType), root);
+	}
+
+	/**
+	 * Like write(Walk.TypeInfo, Object) with a plan made beforehand, for parameterized root types whose plans aren't
+	 * cached.
+	 *
+	 * @param plan
+	 * @param root
+	 * @return this
+	 */
+	public TypeWriter write(final RootPlan plan, final Object root) {
 		if (writer == null)
 			writer = new RawWriter(stream);
-		Walk.walk(rootType, root, new Walk.ObjectVisitor() {
+		uncheck(() -> plan.plan.write(writer, root));
+		return this;
+	}
 
-			@Override
-			public void visitString(final String value) {
-				uncheck(() -> writer.quotedPrimitive(value.getBytes(StandardCharsets.UTF_8)));
-			}
+	/**
+	 * @param rootType
+	 * @return how to write values of the type, which can be kept and reused with any TypeWriter
+	 */
+	public static RootPlan plan(final Walk.TypeInfo rootType) {
+		if (rootType.parameters.length == 0)
+			return new RootPlan(roots.get(rootType.type));
+		return new RootPlan(Walk.walk(noSubtypes, rootType, new PlanVisitor()));
+	}
 
-			@Override
-			public void visitInteger(final Integer value) {
-				uncheck(() -> writer.quotedPrimitive(value.toString().getBytes(StandardCharsets.UTF_8)));
-			}
+	public static class RootPlan {
+		private final Plan plan;
 
-			@Override
-			public void visitDouble(final Double value) {
-				uncheck(() -> writer.quotedPrimitive(value.toString().getBytes(StandardCharsets.UTF_8)));
-			}
+		private RootPlan(final Plan plan) {
+			this.plan = plan;
+		}
+	}
 
-			@Override
-			public void visitBoolean(final Boolean value) {
-				uncheck(() -> writer.quotedPrimitive((value ? "true" : "false").getBytes(StandardCharsets.UTF_8)));
-			}
+	/**
+	 * Write a value of a concrete @Configuration class with its type, like a value of an abstract field.  Generated
+	 * writers use this for subclasses they weren't generated with.
+	 *
+	 * @param writer
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeTyped(final RawWriter writer, final Object value) throws IOException {
+		final Concrete plan = concrete.get(value.getClass());
+		writer.type(plan.name);
+		plan.write(writer, value);
+	}
 
-			@Override
-			public void visitEnum(final Enum value) {
-				uncheck(() -> writer.quotedPrimitive(Walk.decideEnumName(value).getBytes(StandardCharsets.UTF_8)));
-			}
+	private interface Plan {
+		void write(RawWriter writer, Object value) throws IOException;
+	}
 
-			@Override
-			public void visitListStart(final List value) {
-				uncheck(() -> writer.arrayBegin());
-			}
+	private static class Concrete implements Plan {
+		private final byte[] name;
+		private final byte[][] keys;
+		private final Accessors.Getter[] getters;
+		private final Plan[] plans;
 
-			@Override
-			public void visitListEnd(final List value) {
-				uncheck(() -> writer.arrayEnd());
+		private Concrete(final Class<?> klass, final List<Pair<Field, Plan>> fields) {
+			this.name = Walk.decideName(klass).getBytes(StandardCharsets.UTF_8);
+			this.keys = new byte[fields.size()][];
+			this.getters = new Accessors.Getter[fields.size()];
+			this.plans = new Plan[fields.size()];
+			for (int i = 0; i < fields.size(); ++i) {
+				final Pair<Field, Plan> field = fields.get(i);
+				keys[i] = Walk.decideName(field.first).getBytes(StandardCharsets.UTF_8);
+				getters[i] = Accessors.getter(field.first);
+				plans[i] = field.second;
 			}
+		}
 
-			@Override
-			public void visitSetStart(final Set value) {
-				uncheck(() -> writer.arrayBegin());
+		@Override
+		public void write(final RawWriter writer, final Object value) throws IOException {
+			writer.recordBegin();
+			for (int i = 0; i < keys.length; ++i) {
+				final Object field = getters[i].get(value);
+				if (field == null)
+					continue;
+				writer.key(keys[i]);
+				plans[i].write(writer, field);
 			}
+			writer.recordEnd();
+		}
+	}
 
-			@Override
-			public void visitSetEnd(final Set value) {
-				uncheck(() -> writer.arrayEnd());
-			}
+	private static class PlanVisitor implements Walk.Visitor<Plan> {
+		final Map<Class<?>, Concrete> concrete = new HashMap<>();
 
-			@Override
-			public void visitMapStart(final Map value) {
-				uncheck(() -> writer.recordBegin());
-			}
+		private static Plan primitive() {
+			return (writer, value) -> writer.quotedPrimitive(value.toString().getBytes(StandardCharsets.UTF_8));
+		}
 
-			@Override
-			public void visitKeyBegin(final String key) {
-				uncheck(() -> writer.key(key.getBytes(StandardCharsets.UTF_8)));
-			}
+		@Override
+		public Plan visitString(final Field field) {
+			return (writer, value) -> writer.quotedPrimitive(((String) value).getBytes(StandardCharsets.UTF_8));
+		}
 
-			@Override
-			public void visitKeyEnd(final String key) {
+		@Override
+		public Plan visitInteger(final Field field) {
+			return primitive();
+		}
 
-			}
+		@Override
+		public Plan visitDouble(final Field field) {
+			return primitive();
+		}
 
-			@Override
-			public void visitMapEnd(final Map value) {
-				uncheck(() -> writer.recordEnd());
-			}
+		@Override
+		public Plan visitBoolean(final Field field) {
+			return primitive();
+		}
 
-			@Override
-			public boolean visitAbstractBegin(final Class<?> klass, final Object value) {
-				uncheck(() -> writer.type(Walk.decideName(value.getClass()).getBytes(StandardCharsets.UTF_8)));
-				return false;
-			}
+		@Override
+		public Plan visitEnum(final Field field, final Class<?> enumClass) {
+			final Map<Object, byte[]> names = new HashMap<>();
+			for (final Object value : enumClass.getEnumConstants())
+				names.put(value, Walk.decideEnumName((Enum) value).getBytes(StandardCharsets.UTF_8));
+			return (writer, value) -> writer.quotedPrimitive(names.get(value));
+		}
 
-			@Override
-			public void visitAbstractEnd(final Class<?> klass, final Object value) {
+		/**
+		 * Write the elements directly from the array or list, without boxing.
+		 */
+		private static Plan primitives(final PrimitiveArrays primitive) {
+			return (writer, value) -> {
+				writer.arrayBegin();
+				final int size = primitive.size(value);
+				for (int i = 0; i < size; ++i)
+					primitive.write(writer, value, i);
+				writer.arrayEnd();
+			};
+		}
 
-			}
+		private Plan collection(final Plan inner) {
+			return (writer, value) -> {
+				writer.arrayBegin();
+				for (final Object element : (Collection<?>) value)
+					inner.write(writer, element);
+				writer.arrayEnd();
+			};
+		}
 
-			@Override
-			public boolean visitConcreteBegin(final Class<?> klass, final Object value) {
-				uncheck(() -> writer.recordBegin());
-				return true;
-			}
+		@Override
+		public Plan visitList(final Field field, final Plan inner) {
+			return collection(inner);
+		}
 
-			@Override
-			public void visitFieldBegin(final Field field, final Object value) {
-				uncheck(() -> writer.key(Walk.decideName(field).getBytes(StandardCharsets.UTF_8)));
-			}
+		@Override
+		public Plan visitSet(final Field field, final Plan inner) {
+			return collection(inner);
+		}
 
-			@Override
-			public void visitFieldEnd(final Field field, final Object value) {
+		@Override
+		public Plan visitMap(final Field field, final Plan inner) {
+			return (writer, value) -> {
+				writer.recordBegin();
+				for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+					writer.key(((String) entry.getKey()).getBytes(StandardCharsets.UTF_8));
+					inner.write(writer, entry.getValue());
+				}
+				writer.recordEnd();
+			};
+		}
 
-			}
+		@Override
+		public Plan visitAbstract(
+				final Field field, final Class<?> klass, final List<Pair<Class<?>, Plan>> derived
+		) {
+			final PrimitiveArrays primitive = PrimitiveArrays.of(klass);
+			if (primitive != null)
+				return primitives(primitive);
+			return TypeWriter::writeTyped;
+		}
 
-			@Override
-			public void visitConcreteEnd(final Class<?> klass, final Object value) {
-				uncheck(() -> writer.recordEnd());
-			}
-		});
-		return this;
+		@Override
+		public Plan visitConcreteShort(final Field field, final Class<?> klass) {
+			final PrimitiveArrays primitive = PrimitiveArrays.of(klass);
+			if (primitive != null)
+				return primitives(primitive);
+			return (writer, value) -> TypeWriter.concrete.get(klass).write(writer, value);
+		}
+
+		@Override
+		public void visitConcrete(
+				final Field field, final Class<?> klass, final List<Pair<Field, Plan>> fields
+		) {
+			if (PrimitiveArrays.of(klass) != null)
+				return;
+			concrete.put(klass, new Concrete(klass, fields));
+		}
 	}
 }
@@ -0,0 +1,39 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.luxem.generate.Accessors;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class AccessorsTest {
+	static class Hidden {
+		private int value;
+
+		private Hidden() {
+			value = 3;
+		}
+	}
+
+	@Test
+	public void testHidden() throws NoSuchFieldException {
+		final Hidden hidden = (Hidden) Accessors.constructor(Hidden.class).get();
+		assertThat(Accessors.getter(Hidden.class.getDeclaredField("value")).get(hidden), equalTo(3));
+		Accessors.setter(Hidden.class.getDeclaredField("value")).set(hidden, 4);
+		assertThat(hidden.value, equalTo(4));
+	}
+
+	@Test
+	public void testPublicConstructor() {
+		final List<?> list = (List<?>) Accessors.constructor(ArrayList.class).get();
+		assertThat(list.size(), equalTo(0));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNoConstructor() {
+		Accessors.constructor(List.class).get();
+	}
+}
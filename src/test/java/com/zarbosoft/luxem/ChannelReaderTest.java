@@ -0,0 +1,61 @@
+package com.zarbosoft.luxem;
+
+import com.google.common.collect.ImmutableMap;
+import com.zarbosoft.luxem.read.ChannelReader;
+import com.zarbosoft.luxem.read.InvalidStream;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelReaderTest {
+	@Test
+	public void testFeedPieces() {
+		final byte[] source = "{a: \"b\\\"\"}, [c, d], e".getBytes(StandardCharsets.UTF_8);
+		final List<Object> got = new ArrayList<>();
+		final ChannelReader reader = ChannelReader.tree(got::add);
+		reader.feed(ByteBuffer.wrap(source, 0, 10));
+		assertThat(got, equalTo(Arrays.asList(ImmutableMap.of("a", "b\""))));
+		for (int i = 10; i < source.length; ++i)
+			reader.feed(ByteBuffer.wrap(source, i, 1));
+		assertThat(got.size(), equalTo(2));
+		reader.finish();
+		assertThat(got, equalTo(Arrays.asList(ImmutableMap.of("a", "b\""), Arrays.asList("c", "d"), "e")));
+	}
+
+	@Test
+	public void testChannel() {
+		final Pipe pipe = uncheck(() -> Pipe.open());
+		uncheck(() -> pipe.source().configureBlocking(false));
+		final List<Object> got = new ArrayList<>();
+		final ChannelReader reader = ChannelReader.tree(got::add);
+		assertTrue(reader.read(pipe.source()));
+		uncheck(() -> pipe.sink().write(ByteBuffer.wrap("[a], [b".getBytes(StandardCharsets.UTF_8))));
+		assertTrue(reader.read(pipe.source()));
+		assertThat(got, equalTo(Arrays.asList(Arrays.asList("a"))));
+		uncheck(() -> pipe.sink().write(ByteBuffer.wrap("], c".getBytes(StandardCharsets.UTF_8))));
+		uncheck(() -> pipe.sink().close());
+		while (reader.read(pipe.source())) {
+		}
+		assertFalse(reader.read(pipe.source()));
+		assertThat(got, equalTo(Arrays.asList(Arrays.asList("a"), Arrays.asList("b"), "c")));
+	}
+
+	@Test(expected = InvalidStream.class)
+	public void testUnterminated() {
+		final ChannelReader reader = ChannelReader.tree(o -> {
+		});
+		reader.feed(ByteBuffer.wrap("[a".getBytes(StandardCharsets.UTF_8)));
+		reader.finish();
+	}
+}
@@ -0,0 +1,116 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.luxem.read.ElementPublisher;
+import com.zarbosoft.luxem.read.InvalidStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ElementPublisherTest {
+	private static class Collector implements ElementPublisher.Subscriber<Object> {
+		ElementPublisher.Subscription subscription;
+		final List<Object> got = new ArrayList<>();
+		Throwable error = null;
+		boolean complete = false;
+
+		@Override
+		public void onSubscribe(final ElementPublisher.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(final Object item) {
+			got.add(item);
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			complete = true;
+		}
+	}
+
+	private static class CountingStream extends InputStream {
+		final ByteArrayInputStream inner;
+		int read = 0;
+
+		private CountingStream(final String source) {
+			inner = new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public int read() {
+			throw new AssertionError();
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			final int out = inner.read(b, off, len);
+			if (out > 0)
+				read += out;
+			return out;
+		}
+	}
+
+	private static String document(final int count) {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < count; ++i)
+			builder.append("[").append(i).append("],\n");
+		return builder.toString();
+	}
+
+	@Test
+	public void testDemand() {
+		final CountingStream source = new CountingStream(document(10000));
+		final Collector collector = new Collector();
+		ElementPublisher.tree(source).subscribe(collector);
+		assertThat(source.read, equalTo(0));
+		collector.subscription.request(2);
+		assertThat(collector.got, equalTo(Arrays.asList(Arrays.asList("0"), Arrays.asList("1"))));
+		assertThat(source.read, equalTo(4096));
+		collector.subscription.request(1);
+		assertThat(collector.got.size(), equalTo(3));
+		collector.subscription.cancel();
+		collector.subscription.request(5);
+		assertThat(collector.got.size(), equalTo(3));
+		assertThat(collector.complete, equalTo(false));
+	}
+
+	@Test
+	public void testRequestFromOnNext() {
+		final Collector collector = new Collector() {
+			@Override
+			public void onNext(final Object item) {
+				super.onNext(item);
+				subscription.request(1);
+			}
+		};
+		ElementPublisher.tree(new CountingStream(document(5000))).subscribe(collector);
+		collector.subscription.request(1);
+		assertThat(collector.got.size(), equalTo(5000));
+		assertTrue(collector.complete);
+	}
+
+	@Test
+	public void testError() {
+		final Collector collector = new Collector();
+		ElementPublisher.tree(new CountingStream("a, [b")).subscribe(collector);
+		collector.subscription.request(Long.MAX_VALUE);
+		assertThat(collector.got, equalTo(Arrays.asList("a")));
+		assertThat(collector.error, instanceOf(InvalidStream.class));
+	}
+}
@@ -4,20 +4,87 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.zarbosoft.interface1.Configuration;
 import com.zarbosoft.interface1.Walk;
-import com.zarbosoft.pidgoon.InvalidStream;
+import com.zarbosoft.luxem.generate.CodecProcessor;
+import com.zarbosoft.luxem.generate.RuntimeCodec;
+import com.zarbosoft.luxem.read.TypeReader;
+import org.junit.Assume;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.reflections.Reflections;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.unitils.reflectionassert.ReflectionAssert.assertReflectionEquals;
 
+/**
+ * Reading @Configuration types, with each of the readers: the grammar, TypeReader, the readers CodecProcessor
+ * generated for the test classes, and RuntimeCodec.
+ */
+@RunWith(Parameterized.class)
 public class ForTypeTest {
 	public static Reflections reflections = new Reflections("com.zarbosoft.luxem");
 
+	private interface Engine {
+		Stream<Object> read(Walk.TypeInfo type, String source);
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Collection<Object[]> engines() {
+		return Arrays.asList(new Object[] {
+				"grammar",
+				(Engine) (type, source) -> Luxem.parse(reflections, type, source),
+				com.zarbosoft.pidgoon.InvalidStream.class
+		}, new Object[] {
+				"TypeReader",
+				(Engine) (type, source) -> new TypeReader<>(reflections, type).read(source),
+				com.zarbosoft.luxem.read.InvalidStream.class
+		}, new Object[] {
+				"generated", (Engine) ForTypeTest::generated, com.zarbosoft.luxem.read.InvalidStream.class
+		}, new Object[] {
+				"RuntimeCodec",
+				(Engine) (type, source) -> new RuntimeCodec<>(reflections, type).read(source),
+				com.zarbosoft.luxem.read.InvalidStream.class
+		});
+	}
+
+	/**
+	 * Read with the reader CodecProcessor generated for the type.  Skips types without one - generated readers are
+	 * only for @Configuration classes that can be read deterministically.
+	 */
+	private static Stream<Object> generated(final Walk.TypeInfo type, final String source) {
+		Assume.assumeTrue(type.parameters.length == 0);
+		final Class<?> reader;
+		try {
+			reader = Class.forName(type.type.getName().replace('$', '_') + CodecProcessor.READER);
+		} catch (final ClassNotFoundException e) {
+			Assume.assumeNoException(e);
+			throw new AssertionError();
+		}
+		try {
+			return (Stream<Object>) reader.getMethod("read", String.class).invoke(null, source);
+		} catch (final InvocationTargetException e) {
+			throw (RuntimeException) e.getCause();
+		} catch (final ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private final Engine engine;
+	private final Class<? extends RuntimeException> invalid;
+
+	public ForTypeTest(
+			final String name, final Engine engine, final Class<? extends RuntimeException> invalid
+	) {
+		this.engine = engine;
+		this.invalid = invalid;
+	}
+
 	private void check(final Walk.TypeInfo k, final String source, final Object expected) {
-		final Object got = Luxem.parse(reflections, k, source).findFirst().get();
+		final Object got = engine.read(k, source).findFirst().get();
 		assertReflectionEquals(expected, got);
 	}
 
@@ -25,6 +92,20 @@ public class ForTypeTest {
 		check(new Walk.TypeInfo(k), source, expected);
 	}
 
+	/**
+	 * Check that reading the document fails because it doesn't match the type.
+	 */
+	private void fails(final Class<?> k, final String source) {
+		try {
+			engine.read(new Walk.TypeInfo(k), source).findFirst();
+		} catch (final RuntimeException e) {
+			if (!invalid.isInstance(e))
+				throw e;
+			return;
+		}
+		throw new AssertionError(String.format("Reading [%s] as %s should fail", source, k.getSimpleName()));
+	}
+
 	@Test
 	public void testString() {
 		check(String.class, "dog", "dog");
@@ -32,13 +113,22 @@ public class ForTypeTest {
 
 	@Test
 	public void testRootArray() {
-		final List<String> got = Luxem.<String>parse(reflections,
-				new Walk.TypeInfo(String.class),
-				"\"l2:food\",\"online\",\"l1:expense\","
-		).collect(Collectors.toList());
+		final List<String> got = engine
+				.read(new Walk.TypeInfo(String.class), "\"l2:food\",\"online\",\"l1:expense\",")
+				.map(o -> (String) o)
+				.collect(Collectors.toList());
 		assertReflectionEquals(ImmutableList.of("l2:food", "online", "l1:expense"), got);
 	}
 
+	@Test
+	public void testRootArrayClasses() {
+		final List<String> got = engine
+				.read(new Walk.TypeInfo(Subject5.class), "a, b,")
+				.map(o -> ((Subject5) o).a)
+				.collect(Collectors.toList());
+		assertReflectionEquals(ImmutableList.of("a", "b"), got);
+	}
+
 	@Test
 	public void testStringNewlineSymbol() {
 		check(String.class, "\"d\\nog\"", "d\nog");
@@ -49,9 +139,9 @@ public class ForTypeTest {
 		check(String.class, "\"d\nog\"", "d\nog");
 	}
 
-	@Test(expected = InvalidStream.class)
+	@Test
 	public void testStringFail() {
-		check(String.class, "{}", "dog");
+		fails(String.class, "{}");
 	}
 
 	@Test
@@ -59,9 +149,9 @@ public class ForTypeTest {
 		check(Integer.class, "4007", 4007);
 	}
 
-	@Test(expected = InvalidStream.class)
+	@Test
 	public void testIntegerFail() {
-		check(Integer.class, "hamlet,", 4);
+		fails(Integer.class, "hamlet,");
 	}
 
 	@Test
@@ -70,9 +160,9 @@ public class ForTypeTest {
 		check(Double.class, "4", 4.0);
 	}
 
-	@Test(expected = InvalidStream.class)
+	@Test
 	public void testDoubleFail() {
-		check(Double.class, "hamlet,", 4.0);
+		fails(Double.class, "hamlet,");
 	}
 
 	@Test
@@ -81,9 +171,9 @@ public class ForTypeTest {
 		check(Boolean.class, "false", false);
 	}
 
-	@Test(expected = InvalidStream.class)
+	@Test
 	public void testBooleanFail() {
-		check(Boolean.class, "1,", false);
+		fails(Boolean.class, "1,");
 	}
 
 	@Configuration
@@ -317,6 +407,57 @@ public class ForTypeTest {
 		);
 	}
 
+	@Test
+	public void testPolymorphic() {
+		final Subject6A full = new Subject6A("q");
+		full.b = "r";
+		check(Outer6.class,
+				"{data: [(6a) q, (6b) {a: z}, (6a) {b: r, a: q}]}",
+				new Outer6(Arrays.asList(new Subject6A("q"), new Subject6B("z"), full))
+		);
+	}
+
+	@Test
+	public void testEverything() {
+		final GeneratedCodecTest.Everything expected = new GeneratedCodecTest.Everything(4);
+		expected.b = 1.5;
+		expected.c = true;
+		expected.d = GeneratedCodecTest.Color.RED;
+		expected.e.put("x", Arrays.asList(1, 2));
+		expected.f = new Subject6B("z");
+		check(GeneratedCodecTest.Everything.class,
+				"{a: 4, b: 1.5, c: true, d: r, e: {x: [1, 2]}, f: (6b) {a: z}}",
+				expected
+		);
+		check(GeneratedCodecTest.Everything.class, "7", new GeneratedCodecTest.Everything(7));
+	}
+
+	@Test
+	public void testUnknownType() {
+		fails(Outer6.class, "{data: [(6z) q]}");
+	}
+
+	@Test
+	public void testMissingField() {
+		fails(Outer6.class, "{data: [(6a) {b: r}]}");
+		fails(GeneratedCodecTest.Everything.class, "{b: 1}");
+	}
+
+	@Test
+	public void testDuplicateField() {
+		fails(Subject5.class, "{a: x, a: y}");
+	}
+
+	@Test
+	public void testUnknownField() {
+		fails(Subject5.class, "{b: x}");
+	}
+
+	@Test
+	public void testInvalidEnum() {
+		fails(GeneratedCodecTest.Everything.class, "{a: 1, d: RED}");
+	}
+
 	@Test
 	public void testGenericRootList() {
 		check(new Walk.TypeInfo(List.class, new Walk.TypeInfo(String.class)), "[a,b,c]", Arrays.asList("a", "b", "c"));
@@ -330,5 +471,4 @@ public class ForTypeTest {
 				ImmutableMap.of("a", "1", "b", "2")
 		);
 	}
-
 }
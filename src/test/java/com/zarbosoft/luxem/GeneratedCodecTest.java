@@ -0,0 +1,147 @@
+package com.zarbosoft.luxem;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.zarbosoft.interface1.Configuration;
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.generate.SubtypeIndex;
+import com.zarbosoft.luxem.read.TypeReader;
+import org.junit.Test;
+import org.reflections.Reflections;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.unitils.reflectionassert.ReflectionAssert.assertReflectionEquals;
+
+/**
+ * CodecProcessor specifics - the generated readers are tested with the other readers in ForTypeTest.
+ */
+public class GeneratedCodecTest {
+	public enum Color {
+		@Configuration(name = "r")
+		RED,
+		@Configuration
+		GREEN
+	}
+
+	@Configuration
+	public static class Everything {
+		public Everything() {
+		}
+
+		public Everything(final int a) {
+			this.a = a;
+		}
+
+		@Configuration
+		public int a;
+
+		@Configuration(optional = true)
+		public Double b;
+
+		@Configuration(optional = true)
+		public boolean c;
+
+		@Configuration(optional = true)
+		public Color d;
+
+		@Configuration(optional = true)
+		public Map<String, List<Integer>> e = new HashMap<>();
+
+		@Configuration(optional = true)
+		public ForTypeTest.Subject6 f;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final Everything value = new Everything(-3);
+		value.b = 2.25;
+		value.d = Color.GREEN;
+		value.e = ImmutableMap.of("y", Arrays.asList(5));
+		value.f = new ForTypeTest.Subject6C("w");
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		GeneratedCodecTest_Everything_LuxemWriter.write(value, buffer);
+		final Everything read = GeneratedCodecTest_Everything_LuxemReader
+				.read(new ByteArrayInputStream(buffer.toByteArray()))
+				.findFirst()
+				.get();
+		value.e = new HashMap<>(value.e);
+		assertReflectionEquals(value, read);
+	}
+
+	/**
+	 * A subclass created outside the known @Configuration subtypes, like one defined at runtime.
+	 */
+	public static class Unlisted6 extends ForTypeTest.Subject6B {
+		public Unlisted6(final String a) {
+			super(a);
+		}
+	}
+
+	@Test
+	public void testUnlistedSubtype() {
+		final Unlisted6 value = new Unlisted6("z");
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		ForTypeTest_Subject6_LuxemWriter.write(value, buffer);
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		Luxem.write(new Walk.TypeInfo(ForTypeTest.Subject6.class), value, expected);
+		assertThat(buffer.toString(), equalTo(expected.toString()));
+	}
+
+	@Test
+	public void testSubtypes() {
+		assertThat(ForTypeTest_Subject6_LuxemSubtypes.TYPES,
+				equalTo(Arrays.asList(ForTypeTest.Subject6A.class,
+						ForTypeTest.Subject6B.class,
+						ForTypeTest.Subject6C.class
+				))
+		);
+	}
+
+	@Test
+	public void testSubtypeIndex() {
+		final Reflections index = SubtypeIndex.load(getClass().getClassLoader());
+		assertThat(index.getSubTypesOf(ForTypeTest.Subject6.class),
+				equalTo(ImmutableSet.of(ForTypeTest.Subject6A.class,
+						ForTypeTest.Subject6B.class,
+						ForTypeTest.Subject6C.class
+				))
+		);
+		assertReflectionEquals(new ForTypeTest.Outer6(Arrays.asList(new ForTypeTest.Subject6B("z"))),
+				new TypeReader<>(index, new Walk.TypeInfo(ForTypeTest.Outer6.class))
+						.read("{data: [(6b) z]}")
+						.findFirst()
+						.get()
+		);
+	}
+
+	public static abstract class Unindexed {
+	}
+
+	public static class UnindexedA extends Unindexed {
+	}
+
+	@Test
+	public void testSubtypeIndexScan() {
+		assertThat(SubtypeIndex.load(getClass().getClassLoader()).getSubTypesOf(Unindexed.class),
+				equalTo(ImmutableSet.of())
+		);
+		final Reflections index = SubtypeIndex.reflections(getClass().getClassLoader());
+		assertThat(index.getSubTypesOf(Unindexed.class), equalTo(ImmutableSet.of(UnindexedA.class)));
+		assertThat(index.getSubTypesOf(ForTypeTest.Subject6.class),
+				equalTo(ImmutableSet.of(ForTypeTest.Subject6A.class,
+						ForTypeTest.Subject6B.class,
+						ForTypeTest.Subject6C.class
+				))
+		);
+	}
+
+	@Test(expected = ClassNotFoundException.class)
+	public void testAmbiguousSkipped() throws ClassNotFoundException {
+		Class.forName("com.zarbosoft.luxem.ForTypeTest_Subject4_LuxemReader");
+	}
+}
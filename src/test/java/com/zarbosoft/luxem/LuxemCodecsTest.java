@@ -0,0 +1,148 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.generate.SubtypeIndex;
+import org.junit.Test;
+import org.reflections.Reflections;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static com.zarbosoft.luxem.ForTypeTest.reflections;
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+public class LuxemCodecsTest {
+	private static Walk.TypeInfo listOf(final Class<?> element) {
+		return new Walk.TypeInfo(List.class, new Walk.TypeInfo(element));
+	}
+
+	@Test
+	public void testCached() {
+		final LuxemCodecs codecs = new LuxemCodecs();
+		assertSame(codecs.get(reflections, listOf(String.class)).grammar(),
+				codecs.get(reflections, listOf(String.class)).grammar()
+		);
+		assertNotSame(codecs.get(reflections, listOf(String.class)).grammar(),
+				codecs.get(reflections, listOf(Integer.class)).grammar()
+		);
+		final LuxemCodecs.Codec<List<Integer>> codec = codecs.get(reflections, listOf(Integer.class));
+		assertThat(codec.reader().read("[1, 2], [3]").collect(Collectors.toList()),
+				equalTo(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3)))
+		);
+	}
+
+	@Test
+	public void testWrite() {
+		final LuxemCodecs.Codec<List<Integer>> codec = new LuxemCodecs().get(reflections, listOf(Integer.class));
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		codec.write(Arrays.asList(1, 2), buffer);
+		codec.write(Arrays.asList(3), buffer);
+		assertThat(codec.reader().read(new ByteArrayInputStream(buffer.toByteArray())).collect(Collectors.toList()),
+				equalTo(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3)))
+		);
+	}
+
+	@Test
+	public void testEviction() {
+		final LuxemCodecs codecs = new LuxemCodecs(1);
+		final LuxemCodecs.Codec<?> first = codecs.get(reflections, listOf(String.class));
+		codecs.get(reflections, listOf(Integer.class));
+		assertNotSame(first.grammar(), codecs.get(reflections, listOf(String.class)).grammar());
+	}
+
+	@Test
+	public void testPerReflections() {
+		final LuxemCodecs codecs = new LuxemCodecs(1);
+		final LuxemCodecs.Codec<?> first = codecs.get(reflections, listOf(String.class));
+		codecs.get(new Reflections("com.zarbosoft.luxem"), listOf(Integer.class));
+		assertSame(first.grammar(), codecs.get(reflections, listOf(String.class)).grammar());
+	}
+
+	/**
+	 * Creates a codec for a new Reflections and uses all of its parts, in its own frame so no local keeps the
+	 * Reflections.
+	 */
+	private static WeakReference<Reflections> useCodec(final LuxemCodecs codecs, final Object value) {
+		final Reflections reflections = SubtypeIndex.empty();
+		final LuxemCodecs.Codec<Object> codec = codecs.get(reflections, new Walk.TypeInfo(value.getClass()));
+		codec.reader();
+		codec.generated();
+		codec.write(value, new ByteArrayOutputStream());
+		return new WeakReference<>(reflections);
+	}
+
+	@Test
+	public void testReleased() {
+		final LuxemCodecs codecs = new LuxemCodecs();
+		final List<WeakReference<Reflections>> used = new ArrayList<>();
+		for (int i = 0; i < 5; ++i) {
+			// Subject4 is ambiguous so its reader and generated codec keep a fallback to the grammar
+			used.add(useCodec(codecs, new ForTypeTest.Subject4()));
+			used.add(useCodec(codecs, new ForTypeTest.Subject2()));
+		}
+		for (int i = 0; i < 20 && used.stream().anyMatch(r -> r.get() != null); ++i) {
+			System.gc();
+			uncheck(() -> Thread.sleep(10));
+		}
+		assertThat(used.stream().filter(r -> r.get() != null).count(), equalTo(0L));
+	}
+
+	@Test
+	public void testConcurrent() {
+		final LuxemCodecs codecs = new LuxemCodecs(2);
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<List<Object>>> results = new ArrayList<>();
+			final Class<?>[] types = {String.class, Integer.class, Double.class};
+			for (int i = 0; i < 64; ++i) {
+				final Class<?> type = types[i % types.length];
+				results.add(executor.submit(() -> codecs
+						.get(reflections, listOf(type))
+						.reader()
+						.read("[1, 2]")
+						.collect(Collectors.toList())));
+			}
+			for (final Future<List<Object>> result : results) {
+				final List<Object> got = uncheck(() -> result.get());
+				assertThat(((List) got.get(0)).size(), equalTo(2));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentParse() {
+		final LuxemCodecs codecs = new LuxemCodecs(2);
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<List<Object>>> results = new ArrayList<>();
+			final Class<?>[] types = {String.class, Integer.class, Double.class};
+			for (int i = 0; i < 64; ++i) {
+				final Class<?> type = types[i % types.length];
+				results.add(executor.submit(() -> codecs
+						.get(reflections, listOf(type))
+						.parse("[1, 2]")
+						.collect(Collectors.toList())));
+			}
+			for (final Future<List<Object>> result : results) {
+				final List<Object> got = uncheck(() -> result.get());
+				assertThat(((List) got.get(0)).size(), equalTo(2));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
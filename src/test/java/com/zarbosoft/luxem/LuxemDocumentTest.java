@@ -0,0 +1,224 @@
+package com.zarbosoft.luxem;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.zarbosoft.luxem.read.RawReader;
+import com.zarbosoft.luxem.tree.LuxemDocument;
+import com.zarbosoft.luxem.tree.Typed;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static com.zarbosoft.rendaw.common.Common.uncheck;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LuxemDocumentTest {
+	private static LuxemDocument read(final String source) {
+		return LuxemDocument.read(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Typed doesn't implement equals
+	 */
+	private static Object normalize(final Object value) {
+		if (value instanceof Typed)
+			return ImmutableList.of("typed", ((Typed) value).name, normalize(((Typed) value).value));
+		if (value instanceof List)
+			return ((List<?>) value).stream().map(LuxemDocumentTest::normalize).collect(Collectors.toList());
+		if (value instanceof Map)
+			return ((Map<?, ?>) value)
+					.entrySet()
+					.stream()
+					.collect(Collectors.toMap(e -> e.getKey(), e -> normalize(e.getValue())));
+		return value;
+	}
+
+	@Test
+	public void testEmpty() {
+		assertThat(read("").size(), equalTo(0));
+	}
+
+	@Test
+	public void testTree() {
+		final String source = "{a: [b, (c) d, {}], e: (f) {g: h}, \"i j\": \"k\\\"\"}, l, (m) [[n], []], *x* o,";
+		assertThat(
+				normalize(read(source).root().tree()),
+				equalTo(normalize(Luxem.parse(source)))
+		);
+	}
+
+	@Test
+	public void testNavigation() {
+		final LuxemDocument document = read("{a: [1, (t) 2.5, {}], b: (f) {g: h}, a: [x]}, last");
+		assertThat(document.size(), equalTo(2));
+		final LuxemDocument.Cursor root = document.get(0);
+		assertTrue(root.isRecord());
+		assertThat(root.size(), equalTo(3));
+		assertThat(root.get("a").tree(), equalTo(ImmutableList.of("x")));
+		assertNull(root.get("missing"));
+		final LuxemDocument.Cursor b = root.get("b");
+		assertThat(b.type(), equalTo("f"));
+		assertThat(b.key(), equalTo("b"));
+		assertThat(b.tree() instanceof Typed, equalTo(true));
+		assertThat(b.get("g").string(), equalTo("h"));
+		final LuxemDocument.Cursor a = root.elements().iterator().next();
+		assertThat(a.key(), equalTo("a"));
+		assertThat(a.size(), equalTo(3));
+		assertThat(a.get(0).parseInt(), equalTo(1));
+		assertThat(a.get(1).type(), equalTo("t"));
+		assertThat(a.get(1).parseDouble(), equalTo(2.5));
+		assertTrue(a.get(2).isRecord());
+		assertThat(a.get(2).size(), equalTo(0));
+		assertFalse(document.get(1).isArray());
+		assertThat(document.get(1).string(), equalTo("last"));
+		final List<String> keys = new ArrayList<>();
+		for (final LuxemDocument.Cursor element : root.elements())
+			keys.add(element.key());
+		assertThat(keys, equalTo(ImmutableList.of("a", "b", "a")));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOutOfBounds() {
+		read("[a, b]").get(0).get(2);
+	}
+
+	@Test
+	public void testPieces() {
+		final StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 100; ++i)
+			source.append("{key").append(i).append(": [\"value ").append(i).append("\", (t) x], other: y},\n");
+		final byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+		final LuxemDocument[] out = {null};
+		final RawReader reader = LuxemDocument.reader(document -> out[0] = document);
+		for (int offset = 0; offset < bytes.length; offset += 13)
+			reader.eat(bytes, offset, Math.min(13, bytes.length - offset));
+		reader.finish();
+		assertThat(out[0].size(), equalTo(100));
+		assertThat(out[0].get(57).get("key57").get(0).string(), equalTo("value 57"));
+		assertThat(
+				normalize(out[0].root().tree()),
+				equalTo(normalize(Luxem.parse(source.toString())))
+		);
+		assertThat(normalize(out[0].get(3).tree()), equalTo(normalize(ImmutableMap.of(
+				"key3",
+				ImmutableList.of("value 3", new Typed("t", "x")),
+				"other",
+				"y"
+		))));
+	}
+
+	@Test
+	public void testLongString() {
+		// Too long for the length to fit in the tape entry
+		final char[] chars = new char[1 << 24];
+		Arrays.fill(chars, 'z');
+		final String long1 = new String(chars);
+		final LuxemDocument document = read("{k: " + long1 + ", n: 12}, 3.5");
+		assertThat(document.get(0).get("k").string(), equalTo(long1));
+		assertThat(document.get(0).get("n").parseInt(), equalTo(12));
+		assertThat(document.get(1).parseDouble(), equalTo(3.5));
+	}
+
+	@Test
+	public void testLazy() {
+		final String source = "{a: [b, (c) d, {}], e: (f) {g: h}, a: [i]}, j, (k) [[l], []]";
+		final List lazy = Luxem.parseLazy(source);
+		assertThat(lazy.size(), equalTo(3));
+		final Map<String, Object> record = (Map<String, Object>) lazy.get(0);
+		assertSame(record, lazy.get(0));
+		assertThat(record.get("a"), equalTo(ImmutableList.of("i")));
+		assertSame(record.get("a"), record.get("a"));
+		assertNull(record.get("missing"));
+		assertThat(((Typed) record.get("e")).name, equalTo("f"));
+		assertSame(record.get("e"), record.get("e"));
+		for (final Map.Entry<String, Object> entry : record.entrySet())
+			if (entry.getKey().equals("e"))
+				assertSame(record.get("e"), entry.getValue());
+		assertThat(record.size(), equalTo(2));
+		assertThat(normalize(lazy), equalTo(normalize(Luxem.parse(source))));
+	}
+
+	@Test
+	public void testLazyShared() {
+		final StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 200; ++i)
+			source.append("{id: ").append(i).append(", tags: [a, b]},\n");
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (int round = 0; round < 20; ++round) {
+				final List lazy = Luxem.parseLazy(source.toString());
+				final List<Future<List<Object>>> results = new ArrayList<>();
+				for (int thread = 0; thread < 8; ++thread)
+					results.add(executor.submit(() -> {
+						final List<Object> out = new ArrayList<>();
+						for (int i = 0; i < lazy.size(); ++i) {
+							final Map<String, Object> record = (Map<String, Object>) lazy.get(i);
+							assertThat(record.get("id"), equalTo(Integer.toString(i)));
+							out.add(record);
+							out.add(record.get("tags"));
+						}
+						return out;
+					}));
+				final List<Object> first = uncheck(() -> results.get(0).get());
+				for (final Future<List<Object>> result : results) {
+					final List<Object> got = uncheck(() -> result.get());
+					for (int i = 0; i < got.size(); ++i)
+						assertSame(first.get(i), got.get(i));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCached() {
+		final Path directory = uncheck(() -> Files.createTempDirectory("luxem"));
+		final Path path = directory.resolve("data.luxem");
+		final Path tape = directory.resolve("data.luxem.tape");
+		try {
+			uncheck(() -> Files.write(path, "{a: [b, (c) d]}, e".getBytes(StandardCharsets.UTF_8)));
+			final FileTime modified = uncheck(() -> Files.getLastModifiedTime(path));
+			final Object expected = normalize(Luxem.parse(path));
+			assertThat(normalize(LuxemDocument.readCached(path).root().tree()), equalTo(expected));
+			assertTrue(Files.exists(tape));
+			assertThat(normalize(LuxemDocument.readCached(path).root().tree()), equalTo(expected));
+
+			// Same size and time, so the tape is used without looking at the contents
+			uncheck(() -> Files.write(path, "{a: [x, (c) d]}, e".getBytes(StandardCharsets.UTF_8)));
+			uncheck(() -> Files.setLastModifiedTime(path, modified));
+			assertThat(normalize(LuxemDocument.readCached(path).root().tree()), equalTo(expected));
+
+			// New time, contents are checked
+			uncheck(() -> Files.setLastModifiedTime(path, FileTime.fromMillis(modified.toMillis() + 5000)));
+			assertThat(normalize(LuxemDocument.readCached(path).root().tree()),
+					equalTo(normalize(Luxem.parse(path)))
+			);
+			assertThat(LuxemDocument.readCached(path).get(0).get("a").get(0).string(), equalTo("x"));
+
+			uncheck(() -> Files.write(path, "[]".getBytes(StandardCharsets.UTF_8)));
+			assertThat(LuxemDocument.readCached(path).get(0).size(), equalTo(0));
+		} finally {
+			uncheck(() -> Files.deleteIfExists(path));
+			uncheck(() -> Files.deleteIfExists(tape));
+			uncheck(() -> Files.delete(directory));
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.luxem.read.Numbers;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class NumbersTest {
+	private static final String[] EDGES = {
+			"",
+			"-",
+			"+",
+			".",
+			"1.",
+			".5",
+			"+.5e-3",
+			"1e",
+			"1e+",
+			"NaN",
+			"-Infinity",
+			"0x1p3",
+			"1d",
+			" 1",
+			"١٢",
+			"-0",
+			"-0.0",
+			"2147483647",
+			"2147483648",
+			"-2147483648",
+			"-2147483649",
+			"9223372036854775807",
+			"9223372036854775808",
+			"-9223372036854775808",
+			"-9223372036854775807",
+			"9007199254740993",
+			"9999999999999999999",
+			"4.9e-324",
+			"2.4703282292062327e-324",
+			"2.4703282292062328e-324",
+			"2.2250738585072011e-308",
+			"1.7976931348623157e308",
+			"1.7976931348623159e308",
+			"1e-400",
+			"1e400",
+			"0.000000000000000000000000000001e30",
+			"123456789012345678901234567890",
+			"1e2147483647"
+	};
+
+	private static String expectDouble(final String text) {
+		try {
+			return Long.toHexString(Double.doubleToRawLongBits(Double.valueOf(text)));
+		} catch (final NumberFormatException e) {
+			return "invalid";
+		}
+	}
+
+	private static String gotDouble(final String text) {
+		final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		try {
+			return Long.toHexString(Double.doubleToRawLongBits(Numbers.parseDouble(bytes, 0, bytes.length)));
+		} catch (final NumberFormatException e) {
+			return "invalid";
+		}
+	}
+
+	private static void checkIntegers(final String text) {
+		final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		String expected;
+		String got;
+		try {
+			expected = Integer.valueOf(text).toString();
+		} catch (final NumberFormatException e) {
+			expected = "invalid";
+		}
+		try {
+			got = Integer.toString(Numbers.parseInt(bytes, 0, bytes.length));
+		} catch (final NumberFormatException e) {
+			got = "invalid";
+		}
+		assertThat(text, got, equalTo(expected));
+		try {
+			expected = Long.valueOf(text).toString();
+		} catch (final NumberFormatException e) {
+			expected = "invalid";
+		}
+		try {
+			got = Long.toString(Numbers.parseLong(bytes, 0, bytes.length));
+		} catch (final NumberFormatException e) {
+			got = "invalid";
+		}
+		assertThat(text, got, equalTo(expected));
+	}
+
+	@Test
+	public void testEdges() {
+		for (final String text : EDGES) {
+			assertThat(text, gotDouble(text), equalTo(expectDouble(text)));
+			checkIntegers(text);
+		}
+	}
+
+	@Test
+	public void testOffset() {
+		final byte[] bytes = "[12, -3.5e2]".getBytes(StandardCharsets.UTF_8);
+		assertThat(Numbers.parseInt(bytes, 1, 2), equalTo(12));
+		assertThat(Numbers.parseDouble(bytes, 5, 6), equalTo(-350.0));
+	}
+
+	@Test
+	public void testRandom() {
+		final Random random = new Random(0);
+		for (int i = 0; i < 100000; ++i) {
+			final double value = random.nextBoolean() ?
+					Double.longBitsToDouble(random.nextLong()) :
+					random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+			final String shortest = Double.toString(value);
+			assertThat(shortest, gotDouble(shortest), equalTo(expectDouble(shortest)));
+			final String digits = String.format("%." + random.nextInt(19) + "e", value);
+			assertThat(digits, gotDouble(digits), equalTo(expectDouble(digits)));
+			checkIntegers(Long.toString(random.nextLong() >> random.nextInt(64)));
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.luxem.read.InvalidStream;
+import com.zarbosoft.luxem.read.ParallelReader;
+import com.zarbosoft.luxem.tree.Typed;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ParallelReaderTest {
+	private static final String document;
+
+	static {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 200; ++i) {
+			builder.append("{id: ").append(i).append(", \"name\": \"a, [b] {c}\\\" *d*\", ");
+			builder.append("list: [x, (t) y\\,z, [\"],\"]], *comment, ] } \" * sub: (k,) \"v\",},\n");
+		}
+		document = builder.toString();
+	}
+
+	/**
+	 * Typed has no equals
+	 */
+	private static Object normalize(final Object tree) {
+		if (tree instanceof Typed)
+			return Arrays.asList("typed", ((Typed) tree).name, normalize(((Typed) tree).value));
+		if (tree instanceof List)
+			return ((List<?>) tree).stream().map(ParallelReaderTest::normalize).collect(Collectors.toList());
+		if (tree instanceof Map)
+			return ((Map<?, ?>) tree)
+					.entrySet()
+					.stream()
+					.collect(Collectors.toMap(e -> e.getKey(), e -> normalize(e.getValue())));
+		return tree;
+	}
+
+	private void check(final String source, final ByteBuffer buffer) {
+		final Object expected = normalize(Luxem.parse(source));
+		for (final int chunkSize : new int[] {1, 7, 64, 1000, 1 << 20}) {
+			final List<Object> got = new ParallelReader().chunkSize(chunkSize).read(buffer).collect(Collectors.toList());
+			assertThat(normalize(got), equalTo(expected));
+		}
+	}
+
+	@Test
+	public void testHeap() {
+		check(document, ByteBuffer.wrap(document.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testDirect() {
+		final byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		buffer.flip();
+		check(document, buffer);
+	}
+
+	@Test
+	public void testTrailingPrimitive() {
+		check("a, b, c", ByteBuffer.wrap("a, b, c".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test(expected = InvalidStream.class)
+	public void testInvalid() {
+		new ParallelReader()
+				.chunkSize(4)
+				.read(ByteBuffer.wrap("a, b, [c, d".getBytes(StandardCharsets.UTF_8)))
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,119 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.interface1.Configuration;
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.generate.RuntimeCodec;
+import com.zarbosoft.luxem.primitive.BooleanList;
+import com.zarbosoft.luxem.primitive.DoubleList;
+import com.zarbosoft.luxem.primitive.IntList;
+import com.zarbosoft.luxem.primitive.LongList;
+import com.zarbosoft.luxem.read.InvalidStream;
+import com.zarbosoft.luxem.read.TypeReader;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static com.zarbosoft.luxem.ForTypeTest.reflections;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class PrimitiveArraysTest {
+	private static final String SOURCE =
+			"{a: [1, -2], b: [9000000000], c: [0.5, 2], d: [true, false], e: [3, 4, 5], f: [1.25], g: [false]}";
+
+	@Configuration
+	public static class Samples {
+		@Configuration
+		public int[] a;
+
+		@Configuration
+		public long[] b;
+
+		@Configuration(optional = true)
+		public double[] c;
+
+		@Configuration(optional = true)
+		public boolean[] d;
+
+		@Configuration(optional = true)
+		public IntList e;
+
+		@Configuration(optional = true)
+		public DoubleList f;
+
+		@Configuration(optional = true)
+		public BooleanList g;
+	}
+
+	private static void check(final Samples samples) {
+		assertArrayEquals(new int[] {1, -2}, samples.a);
+		assertArrayEquals(new long[] {9000000000L}, samples.b);
+		assertArrayEquals(new double[] {0.5, 2}, samples.c, 0);
+		assertArrayEquals(new boolean[] {true, false}, samples.d);
+		assertThat(samples.e, equalTo(IntList.of(3, 4, 5)));
+		assertThat(samples.f, equalTo(DoubleList.of(1.25)));
+		assertThat(samples.g, equalTo(BooleanList.of(false)));
+	}
+
+	@Test
+	public void testTypeReader() {
+		check(new TypeReader<Samples>(reflections, new Walk.TypeInfo(Samples.class)).read(SOURCE).findFirst().get());
+	}
+
+	@Test
+	public void testTypeWriter() {
+		final TypeReader<Samples> reader = new TypeReader<>(reflections, new Walk.TypeInfo(Samples.class));
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		Luxem.write(new Walk.TypeInfo(Samples.class), reader.read(SOURCE).findFirst().get(), buffer);
+		check(reader.read(new String(buffer.toByteArray(), StandardCharsets.UTF_8)).findFirst().get());
+	}
+
+	@Test
+	public void testRuntimeCodec() {
+		final RuntimeCodec<Samples> codec = new RuntimeCodec<>(reflections, new Walk.TypeInfo(Samples.class));
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		codec.write(codec.read(SOURCE).findFirst().get(), buffer);
+		check(codec.read(new String(buffer.toByteArray(), StandardCharsets.UTF_8)).findFirst().get());
+	}
+
+	@Test
+	public void testGenerated() {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrimitiveArraysTest_Samples_LuxemWriter.write(PrimitiveArraysTest_Samples_LuxemReader
+				.read(SOURCE)
+				.findFirst()
+				.get(), buffer);
+		check(PrimitiveArraysTest_Samples_LuxemReader
+				.read(new String(buffer.toByteArray(), StandardCharsets.UTF_8))
+				.findFirst()
+				.get());
+	}
+
+	@Test
+	public void testRoot() {
+		final TypeReader<long[]> reader = new TypeReader<>(reflections, new Walk.TypeInfo(long[].class));
+		assertArrayEquals(new long[] {1, 2, 3}, reader.read("[1, 2, 3]").findFirst().get());
+	}
+
+	@Test
+	public void testGrow() {
+		final LongList list = new LongList(1);
+		for (long i = 0; i < 100; ++i)
+			list.add(i * i);
+		assertThat(list.size(), equalTo(100));
+		assertThat(list.get(99), equalTo(9801L));
+		assertThat(list.toArray().length, equalTo(100));
+	}
+
+	@Test(expected = InvalidStream.class)
+	public void testInvalidElement() {
+		new TypeReader<Samples>(reflections, new Walk.TypeInfo(Samples.class)).read("{a: [1, x], b: []}").findFirst();
+	}
+
+	@Test(expected = InvalidStream.class)
+	public void testNestedElement() {
+		new TypeReader<Samples>(reflections, new Walk.TypeInfo(Samples.class)).read("{a: [[1]], b: []}").findFirst();
+	}
+}
@@ -0,0 +1,81 @@
+package com.zarbosoft.luxem;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.zarbosoft.luxem.read.ProjectionReader;
+import com.zarbosoft.luxem.tree.Typed;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ProjectionReaderTest {
+	private static final String document = "(event) {id: 0, metrics: {latency: 12, size: [1, 2]}, \"notes\": \"x, } y\"},\n" +
+			"(other) {id: 1, metrics: {latency: *ignored* 30}},\n" +
+			"(event) {id: 2, metrics: (m) {latency: (ms) 7}, skipped: [[[a]], {b: c}]},\n";
+
+	/**
+	 * Typed has no equals
+	 */
+	private static List<Object> read(final String... patterns) {
+		return new ProjectionReader(patterns)
+				.read(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)))
+				.stream()
+				.map(pair -> {
+					if (pair.second instanceof Typed)
+						return Arrays.asList(pair.first.toString(),
+								((Typed) pair.second).name,
+								((Typed) pair.second).value
+						);
+					return Arrays.asList(pair.first.toString(), pair.second);
+				})
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void testWildcard() {
+		assertThat(read("/*/metrics/latency"),
+				equalTo(ImmutableList.of(Arrays.asList("/0/metrics/latency", "12"),
+						Arrays.asList("/1/metrics/latency", "30"),
+						Arrays.asList("/2/metrics/latency", "ms", "7")
+				))
+		);
+	}
+
+	@Test
+	public void testIndex() {
+		assertThat(read("/0/metrics/size/1", "/0/metrics/size/01", "/2/id"),
+				equalTo(ImmutableList.of(Arrays.asList("/0/metrics/size/1", "2"), Arrays.asList("/2/id", "2")))
+		);
+	}
+
+	@Test
+	public void testType() {
+		assertThat(read("/(event)*/id", "/*/(m)metrics/latency"),
+				equalTo(ImmutableList.of(Arrays.asList("/0/id", "0"),
+						Arrays.asList("/2/id", "2"),
+						Arrays.asList("/2/metrics/latency", "ms", "7")
+				))
+		);
+	}
+
+	@Test
+	public void testSubtree() {
+		assertThat(read("/0/metrics"),
+				equalTo(ImmutableList.of(Arrays.asList("/0/metrics",
+						ImmutableMap.of("latency", "12", "size", Arrays.asList("1", "2"))
+				)))
+		);
+	}
+
+	@Test
+	public void testNoMatch() {
+		assertThat(read("/*/missing", "/5"), equalTo(ImmutableList.of()));
+	}
+}
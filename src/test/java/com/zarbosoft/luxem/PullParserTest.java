@@ -0,0 +1,131 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.luxem.read.InvalidStream;
+import com.zarbosoft.luxem.read.LuxemPullParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.zarbosoft.luxem.read.LuxemPullParser.Token.*;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class PullParserTest {
+	private List<String> read(final LuxemPullParser parser) {
+		final List<String> out = new ArrayList<>();
+		while (true) {
+			final LuxemPullParser.Token token = parser.next();
+			switch (token) {
+				case KEY:
+				case TYPE:
+				case PRIMITIVE:
+					out.add(String.format("%s %s", token, parser.string()));
+					break;
+				default:
+					out.add(token.toString());
+			}
+			if (token == END)
+				return out;
+		}
+	}
+
+	private void check(final String source, final String... expected) {
+		final byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+		assertThat(read(new LuxemPullParser(bytes)), equalTo(Arrays.asList(expected)));
+		assertThat(read(new LuxemPullParser(new ByteArrayInputStream(bytes))), equalTo(Arrays.asList(expected)));
+	}
+
+	@Test
+	public void testEmpty() {
+		check("", "END");
+	}
+
+	@Test
+	public void testRootPrimitives() {
+		check("a, b", "PRIMITIVE a", "PRIMITIVE b", "END");
+	}
+
+	@Test
+	public void testNested() {
+		check("{a: [b], \"c\": (d) e}",
+				"RECORD_OPEN",
+				"KEY a",
+				"ARRAY_OPEN",
+				"PRIMITIVE b",
+				"ARRAY_CLOSE",
+				"KEY c",
+				"TYPE d",
+				"PRIMITIVE e",
+				"RECORD_CLOSE",
+				"END"
+		);
+	}
+
+	@Test
+	public void testEndAfterEnd() {
+		final LuxemPullParser parser = new LuxemPullParser("a".getBytes(StandardCharsets.UTF_8));
+		assertThat(parser.next(), equalTo(PRIMITIVE));
+		assertThat(parser.next(), equalTo(END));
+		assertThat(parser.next(), equalTo(END));
+	}
+
+	@Test(expected = InvalidStream.class)
+	public void testUnterminated() {
+		read(new LuxemPullParser("[a".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testSkipValue() {
+		final LuxemPullParser parser = new LuxemPullParser(("{keep: a, skip: {x: [1, \"]\", (t) *]* y], z: \"\\\"\"}, " +
+				"skip2: (t) [b\\], c], typed: (t) d, drop: [e], last: f}, [g], h").getBytes(StandardCharsets.UTF_8));
+		final List<String> out = new ArrayList<>();
+		while (true) {
+			final LuxemPullParser.Token token = parser.next();
+			if (token == END)
+				break;
+			out.add(token == KEY || token == TYPE || token == PRIMITIVE ?
+					String.format("%s %s", token, parser.string()) :
+					token.toString());
+			if (token == KEY && parser.string().startsWith("skip"))
+				parser.skipValue();
+			if (token == TYPE)
+				parser.skipValue();
+			if (token == ARRAY_OPEN)
+				parser.skipValue();
+		}
+		assertThat(out,
+				equalTo(Arrays.asList("RECORD_OPEN",
+						"KEY keep",
+						"PRIMITIVE a",
+						"KEY skip",
+						"KEY skip2",
+						"KEY typed",
+						"TYPE t",
+						"KEY drop",
+						"ARRAY_OPEN",
+						"KEY last",
+						"PRIMITIVE f",
+						"RECORD_CLOSE",
+						"ARRAY_OPEN",
+						"PRIMITIVE h"
+				))
+		);
+	}
+
+	@Test
+	public void testNumbers() {
+		final LuxemPullParser parser =
+				new LuxemPullParser("[12, -9000000000, 2.5e-3]".getBytes(StandardCharsets.UTF_8));
+		assertThat(parser.next(), equalTo(ARRAY_OPEN));
+		assertThat(parser.next(), equalTo(PRIMITIVE));
+		assertThat(parser.parseInt(), equalTo(12));
+		assertThat(parser.next(), equalTo(PRIMITIVE));
+		assertThat(parser.parseLong(), equalTo(-9000000000L));
+		assertThat(parser.next(), equalTo(PRIMITIVE));
+		assertThat(parser.parseDouble(), equalTo(2.5e-3));
+	}
+}
@@ -3,19 +3,28 @@ package com.zarbosoft.luxem;
 import com.zarbosoft.luxem.read.BufferedRawReader;
 import com.zarbosoft.luxem.read.InvalidStream;
 import com.zarbosoft.luxem.read.RawReader;
-import com.zarbosoft.luxem.read.source.LPrimitiveEvent;
+import com.zarbosoft.luxem.read.source.*;
 import com.zarbosoft.pidgoon.events.Event;
 import com.zarbosoft.pidgoon.events.MatchingEvent;
 import com.zarbosoft.rendaw.common.Common;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static com.zarbosoft.rendaw.common.Common.uncheck;
 import static com.zarbosoft.rendaw.common.Common.zip;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
 
 public class RawReaderTest {
 	public List<Event> read(final String source) {
@@ -82,4 +91,228 @@ public class RawReaderTest {
 	public void testKeyInArray() {
 		System.out.format("%s\n", read("[a: b]"));
 	}
+
+	@Test
+	public void testTyped() {
+		check("(t) a, (u)[b]",
+				new LTypeEvent("t"),
+				new LPrimitiveEvent("a"),
+				new LTypeEvent("u"),
+				new LArrayOpenEvent(),
+				new LPrimitiveEvent("b"),
+				new LArrayCloseEvent()
+		);
+	}
+
+	@Test
+	public void testRecord() {
+		check("{a: b, \"c d\": [e,],}",
+				new LObjectOpenEvent(),
+				new LKeyEvent("a"),
+				new LPrimitiveEvent("b"),
+				new LKeyEvent("c d"),
+				new LArrayOpenEvent(),
+				new LPrimitiveEvent("e"),
+				new LArrayCloseEvent(),
+				new LObjectCloseEvent()
+		);
+	}
+
+	@Test
+	public void testEscapes() {
+		check("\"a\\\"b\\nc\", d\\,e", new LPrimitiveEvent("a\"b\nc"), new LPrimitiveEvent("d,e"));
+	}
+
+	@Test
+	public void testComments() {
+		check("*x* a *y*, [b*z*] *w\\*w*",
+				new LPrimitiveEvent("a"),
+				new LArrayOpenEvent(),
+				new LPrimitiveEvent("b"),
+				new LArrayCloseEvent()
+		);
+	}
+
+	@Test(expected = InvalidStream.class)
+	public void testUnterminatedRecord() {
+		read("{a: b");
+	}
+
+	@Test
+	public void testDirectBuffer() {
+		final byte[] source = "[abc, \"d\\ne\"], {f: (g) h}".getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(source.length);
+		buffer.put(source);
+		buffer.flip();
+		final StringBuilder got = new StringBuilder();
+		final RawReader reader = new RawReader();
+		reader.eatPrimitiveEnd = () -> got.append(";");
+		reader.eatPrimitiveSlice = reader.eatKeySlice = reader.eatTypeSlice =
+				(bytes, offset, length) -> got.append(new String(bytes, offset, length, StandardCharsets.UTF_8));
+		reader.eat(buffer);
+		reader.finish();
+		assertThat(got.toString(), equalTo("abc;d\ne;fgh;"));
+		assertThat(buffer.remaining(), equalTo(0));
+	}
+
+	@Test
+	public void testBufferedAcrossBuffers() {
+		final byte[] source = "abc, \"d\\ne\", (f)g".getBytes(StandardCharsets.UTF_8);
+		final List<String> got = new ArrayList<>();
+		final BufferedRawReader reader = new BufferedRawReader();
+		reader.eatPrimitiveSlice = reader.eatTypeSlice =
+				(bytes, offset, length) -> got.add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+		// Reuse one buffer for every byte so retained slices would be overwritten
+		final byte[] buffer = new byte[1];
+		for (final byte b : source) {
+			buffer[0] = b;
+			reader.eat(buffer, 0, 1);
+		}
+		reader.finish();
+		assertThat(got, equalTo(Arrays.asList("abc", "d\ne", "f", "g")));
+	}
+
+	@Test
+	public void testIndexed() {
+		final StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 20; ++i)
+			source.append("(type ").append(i).append(") {key").append(i).append(": \"quoted \\\" value with spaces and, commas\",\n")
+					.append("\tlist: [a, b\\,c, *comment [ \\* * d],\n},\n");
+		final byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+		final List<String> expected = new ArrayList<>();
+		final List<String> got = new ArrayList<>();
+		for (final boolean indexed : new boolean[] {false, true}) {
+			final List<String> out = indexed ? got : expected;
+			final BufferedRawReader reader = new BufferedRawReader();
+			reader.indexed(indexed);
+			reader.eatArrayBegin = () -> out.add("[");
+			reader.eatArrayEnd = () -> out.add("]");
+			reader.eatRecordBegin = () -> out.add("{");
+			reader.eatRecordEnd = () -> out.add("}");
+			reader.eatPrimitiveSlice = reader.eatKeySlice = reader.eatTypeSlice =
+					(b, offset, length) -> out.add(new String(b, offset, length, StandardCharsets.UTF_8));
+			// Odd sized pieces so words and tokens straddle buffers
+			for (int offset = 0; offset < bytes.length; offset += 37)
+				reader.eat(bytes, offset, Math.min(37, bytes.length - offset));
+			reader.finish();
+		}
+		assertThat(got, equalTo(expected));
+		assertThat(got.size(), equalTo(20 * 11));
+	}
+
+	@Test
+	public void testIndexedPaused() {
+		final StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 4000; ++i)
+			source.append("{key").append(i).append(": \"quoted \\\" value\", list: [a, b\\,c]},\n");
+		final byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+		final List<String> expected = new ArrayList<>();
+		final List<String> got = new ArrayList<>();
+		for (final boolean indexed : new boolean[] {false, true}) {
+			final List<String> out = indexed ? got : expected;
+			final RawReader reader = new RawReader();
+			reader.indexed(indexed);
+			reader.eatArrayBegin = () -> out.add("[");
+			reader.eatArrayEnd = () -> out.add("]");
+			reader.eatRecordBegin = () -> out.add("{");
+			reader.eatRecordEnd = () -> {
+				out.add("}");
+				reader.pause();
+			};
+			reader.eatPrimitiveSlice = reader.eatKeySlice = reader.eatTypeSlice =
+					(b, offset, length) -> out.add(new String(b, offset, length, StandardCharsets.UTF_8));
+			// Resume after every root element, across index blocks
+			int offset = 0;
+			while (offset < bytes.length)
+				offset += reader.eat(bytes, offset, bytes.length - offset);
+			reader.finish();
+		}
+		assertThat(got, equalTo(expected));
+		assertThat(got.size(), equalTo(4000 * 13));
+	}
+
+	private static List<String> tokens(final BufferedRawReader reader) {
+		final List<String> out = new ArrayList<>();
+		reader.eatArrayBegin = () -> out.add("[");
+		reader.eatArrayEnd = () -> out.add("]");
+		reader.eatRecordBegin = () -> out.add("{");
+		reader.eatRecordEnd = () -> out.add("}");
+		reader.eatPrimitiveSlice = reader.eatKeySlice = reader.eatTypeSlice =
+				(b, offset, length) -> out.add(new String(b, offset, length, StandardCharsets.UTF_8));
+		return out;
+	}
+
+	@Test
+	public void testMappedWindows() {
+		final byte[] source = "(type) {key: \"quo\\\"ted\", list: [alpha, b\\,c, *x* delta]}, omega"
+				.getBytes(StandardCharsets.UTF_8);
+		final BufferedRawReader whole = new BufferedRawReader();
+		final List<String> expected = tokens(whole);
+		whole.eat(source, 0, source.length);
+		whole.finish();
+		final Path path = uncheck(() -> Files.createTempFile("luxem", ".luxem"));
+		try {
+			uncheck(() -> Files.write(path, source));
+			final BufferedRawReader reader = new BufferedRawReader();
+			final List<String> got = tokens(reader);
+			// Windows small enough that tokens span several
+			final List<ByteBuffer> windows =
+					uncheck(() -> {
+						try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+							return RawReader.map(channel, 3);
+						}
+					});
+			assertThat(windows.size(), equalTo((source.length + 2) / 3));
+			for (final ByteBuffer window : windows)
+				reader.eat(window);
+			reader.finish();
+			assertThat(got, equalTo(expected));
+		} finally {
+			uncheck(() -> Files.delete(path));
+		}
+	}
+
+	@Test
+	public void testPaths() {
+		final byte[] source =
+				"{a: [b, (c) d, {}], e: (f) {g: h}}, i, (j) [[k]]".getBytes(StandardCharsets.UTF_8);
+		final List<String> expected = Arrays.asList(
+				"/0/",
+				"/0/a",
+				"/0/a/",
+				"/0/a/0",
+				"/0/a/1",
+				"/0/a/1",
+				"/0/a/2/",
+				"/0/a/2",
+				"/0/a",
+				"/0/e",
+				"/0/e",
+				"/0/e/",
+				"/0/e/g",
+				"/0/e/g",
+				"/0/e",
+				"/0",
+				"/1",
+				"/2",
+				"/2/",
+				"/2/0/",
+				"/2/0/0",
+				"/2/0",
+				"/2"
+		);
+		assertThat(RawReader
+				.streamEvents(new ByteArrayInputStream(source), new RawReader.DefaultEventFactory())
+				.map(pair -> pair.second.toString())
+				.collect(Collectors.toList()), equalTo(expected));
+		// Paths are kept with their events
+		final List<Object> kept = new ArrayList<>();
+		final BufferedRawReader keeping = RawReader.eventReader(new BufferedRawReader(),
+				new RawReader.DefaultEventFactory(),
+				pair -> kept.add(pair.second)
+		);
+		keeping.eat(source, 0, source.length);
+		keeping.finish();
+		assertThat(kept.stream().map(Object::toString).collect(Collectors.toList()), equalTo(expected));
+	}
 }
@@ -68,5 +68,29 @@ public class RawWriterTest {
 		check("\"a\\tb\\n\",", rawWriter -> rawWriter.primitive("a\tb\n"));
 	}
 
+	@Test
+	public void testNumbers() {
+		final long[] longs = {0, 7, -7, 10, -10, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+		final double[] doubles = {
+				0.0, -0.0, 1.0, -1.5, 0.1, 1e7, 1.0e-5, Double.MIN_VALUE, -Double.MAX_VALUE, Double.NaN,
+				Double.NEGATIVE_INFINITY
+		};
+		final StringBuilder expected = new StringBuilder("[\n");
+		for (final long value : longs)
+			expected.append("\t\"").append(value).append("\",\n");
+		for (final double value : doubles)
+			expected.append("\t\"").append(value).append("\",\n");
+		expected.append("\t\"").append(Integer.MIN_VALUE).append("\",\n");
+		expected.append("\t\"true\",\n\t\"false\",\n],");
+		check(expected.toString(), rawWriter -> {
+			rawWriter.arrayBegin();
+			for (final long value : longs)
+				rawWriter.quotedPrimitive(value);
+			for (final double value : doubles)
+				rawWriter.quotedPrimitive(value);
+			rawWriter.quotedPrimitive(Integer.MIN_VALUE).quotedPrimitive(true).quotedPrimitive(false).arrayEnd();
+		});
+	}
+
 	// TODO test escaping
 }
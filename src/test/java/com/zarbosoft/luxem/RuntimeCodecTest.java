@@ -0,0 +1,106 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.interface1.Configuration;
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.generate.RuntimeCodec;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.zarbosoft.luxem.ForTypeTest.reflections;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.unitils.reflectionassert.ReflectionAssert.assertReflectionEquals;
+
+/**
+ * RuntimeCodec specifics - reading is tested with the other readers in ForTypeTest.
+ */
+public class RuntimeCodecTest {
+	private static <T> RuntimeCodec<T> codec(final Class<?> type, final Class<?>... parameters) {
+		return new RuntimeCodec<>(reflections,
+				new Walk.TypeInfo(type, Arrays.stream(parameters).map(Walk.TypeInfo::new).toArray(Walk.TypeInfo[]::new))
+		);
+	}
+
+	private static <T> String write(final RuntimeCodec<T> codec, final T value) {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		codec.write(value, buffer);
+		return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return value as written by TypeWriter
+	 */
+	private static String typeWriter(final Walk.TypeInfo type, final Object value) {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		Luxem.write(type, value, buffer);
+		return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Configuration
+	static class Hidden {
+		private Hidden() {
+		}
+
+		@Configuration
+		public int a;
+
+		@Configuration(optional = true)
+		public List<GeneratedCodecTest.Color> b;
+	}
+
+	@Test
+	public void testRootCollection() {
+		final RuntimeCodec<Set<Integer>> codec = codec(Set.class, Integer.class);
+		assertThat(codec.read("[1, 2, 1], [3]").collect(Collectors.toList()),
+				equalTo(Arrays.asList(new HashSet<>(Arrays.asList(1, 2)), new HashSet<>(Arrays.asList(3))))
+		);
+		final Set<Integer> value = new HashSet<>(Arrays.asList(5));
+		assertThat(write(codec, value),
+				equalTo(typeWriter(new Walk.TypeInfo(Set.class, new Walk.TypeInfo(Integer.class)), value))
+		);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final RuntimeCodec<GeneratedCodecTest.Everything> codec = codec(GeneratedCodecTest.Everything.class);
+		final GeneratedCodecTest.Everything value = new GeneratedCodecTest.Everything(-3);
+		value.b = 2.25;
+		value.d = GeneratedCodecTest.Color.GREEN;
+		value.e.put("y", Arrays.asList(5));
+		value.f = new ForTypeTest.Subject6C("w");
+		final String written = write(codec, value);
+		assertThat(written, equalTo(typeWriter(new Walk.TypeInfo(GeneratedCodecTest.Everything.class), value)));
+		assertReflectionEquals(value, codec.read(written).findFirst().get());
+	}
+
+	@Test
+	public void testInaccessible() {
+		final RuntimeCodec<Hidden> codec = codec(Hidden.class);
+		final Hidden value = codec.read("{a: 3, b: [GREEN, GREEN]}").findFirst().get();
+		assertThat(value.a, equalTo(3));
+		assertThat(value.b, equalTo(Arrays.asList(GeneratedCodecTest.Color.GREEN, GeneratedCodecTest.Color.GREEN)));
+		assertReflectionEquals(value, codec.read(write(codec, value)).findFirst().get());
+	}
+
+	@Test
+	public void testAmbiguous() {
+		final RuntimeCodec<ForTypeTest.Subject4> codec = codec(ForTypeTest.Subject4.class);
+		assertTrue(codec.ambiguous());
+		final Map<String, Integer> a = new HashMap<>();
+		a.put("x", 1);
+		final ForTypeTest.Subject4 value = new ForTypeTest.Subject4(a);
+		assertThat(write(codec, value), equalTo(typeWriter(new Walk.TypeInfo(ForTypeTest.Subject4.class), value)));
+	}
+
+	@Test
+	public void testUnknownSubtype() {
+		final RuntimeCodec<ForTypeTest.Subject6> codec = codec(ForTypeTest.Subject6.class);
+		final GeneratedCodecTest.Unlisted6 value = new GeneratedCodecTest.Unlisted6("z");
+		assertThat(write(codec, value), equalTo(typeWriter(new Walk.TypeInfo(ForTypeTest.Subject6.class), value)));
+	}
+}
@@ -2,13 +2,26 @@ package com.zarbosoft.luxem;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.zarbosoft.luxem.read.StringCache;
+import com.zarbosoft.luxem.read.TreeReader;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
+import static com.zarbosoft.rendaw.common.Common.uncheck;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -43,4 +56,67 @@ public class TreeReaderTest {
 	public void testRecordElement() {
 		assertThat(Luxem.parse("{a:b}"), equalTo(ImmutableList.of(ImmutableMap.of("a", "b"))));
 	}
+
+	@Test
+	public void testFile() {
+		final Path path = uncheck(() -> Files.createTempFile("luxem", ".luxem"));
+		try {
+			uncheck(() -> Files.write(path, "{a: [b, *c* d]}, e".getBytes(StandardCharsets.UTF_8)));
+			assertThat(Luxem.parse(path),
+					equalTo(ImmutableList.of(ImmutableMap.of("a", Arrays.asList("b", "d")), "e"))
+			);
+		} finally {
+			uncheck(() -> Files.delete(path));
+		}
+	}
+
+	@Test
+	public void testCache() {
+		final List<Map<String, String>> got = new TreeReader()
+				.cache(new StringCache())
+				.read(new ByteArrayInputStream("{key: value}, {key: \"value\"}".getBytes(StandardCharsets.UTF_8)));
+		assertThat(got, equalTo(ImmutableList.of(ImmutableMap.of("key", "value"), ImmutableMap.of("key", "value"))));
+		assertSame(got.get(0).keySet().iterator().next(), got.get(1).keySet().iterator().next());
+		assertSame(got.get(0).get("key"), got.get(1).get("key"));
+	}
+
+	@Test
+	public void testStream() {
+		final int[] read = {0};
+		final byte[] source = "{a: b}, [c, d], e".getBytes(StandardCharsets.UTF_8);
+		final InputStream stream = new ByteArrayInputStream(source) {
+			@Override
+			public synchronized int read(final byte[] b, final int off, final int len) {
+				// One byte at a time to check elements come out before the input is consumed
+				final int got = super.read(b, off, Math.min(1, len));
+				if (got > 0)
+					read[0] += got;
+				return got;
+			}
+		};
+		final Iterator<Object> elements = new TreeReader().stream(stream).iterator();
+		assertThat(elements.next(), equalTo(ImmutableMap.of("a", "b")));
+		assertTrue(read[0] < source.length);
+		assertThat(elements.next(), equalTo(Arrays.asList("c", "d")));
+		assertThat(elements.next(), equalTo("e"));
+		assertFalse(elements.hasNext());
+	}
+
+	@Test
+	public void testStreamFile() {
+		// Many elements in one mapped window, followed by an error that's only found once the end is lexed
+		final StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 20000; ++i)
+			source.append("{index: ").append(i).append("},\n");
+		source.append("}}}");
+		final Path path = uncheck(() -> Files.createTempFile("luxem", ".luxem"));
+		try {
+			uncheck(() -> Files.write(path, source.toString().getBytes(StandardCharsets.UTF_8)));
+			final Iterator<Object> elements = new TreeReader().stream(path).iterator();
+			for (int i = 0; i < 1000; ++i)
+				assertThat(elements.next(), equalTo(ImmutableMap.of("index", Integer.toString(i))));
+		} finally {
+			uncheck(() -> Files.delete(path));
+		}
+	}
 }
@@ -0,0 +1,36 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.read.InvalidStream;
+import com.zarbosoft.luxem.read.TypeReader;
+import org.junit.Test;
+
+import static com.zarbosoft.luxem.ForTypeTest.reflections;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TypeReader specifics - reading is tested with the other readers in ForTypeTest.
+ */
+public class TypeReaderTest {
+	@Test
+	public void testErrorPath() {
+		final TypeReader<Object> reader = new TypeReader<>(reflections, new Walk.TypeInfo(ForTypeTest.Outer6.class));
+		assertFalse(reader.ambiguous());
+		try {
+			reader.read("{data: [(6a) q, (6b) {a: [x]}]}").findFirst();
+		} catch (final InvalidStream e) {
+			assertThat(e.getMessage(), equalTo("Expected primitive but got ARRAY_OPEN at /0/data/1/a/"));
+			return;
+		}
+		throw new AssertionError();
+	}
+
+	@Test
+	public void testAmbiguous() {
+		// `{}` could be the record or the abbreviated form with an empty map
+		assertTrue(new TypeReader<>(reflections, new Walk.TypeInfo(ForTypeTest.Subject4.class)).ambiguous());
+	}
+}
@@ -0,0 +1,51 @@
+package com.zarbosoft.luxem;
+
+import com.zarbosoft.interface1.Walk;
+import com.zarbosoft.luxem.read.TypeReader;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.zarbosoft.luxem.ForTypeTest.reflections;
+import static org.unitils.reflectionassert.ReflectionAssert.assertReflectionEquals;
+
+public class TypeWriterTest {
+	private void check(final Walk.TypeInfo type, final Object value) {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		Luxem.write(type, value, buffer);
+		assertReflectionEquals(value,
+				new TypeReader<>(reflections, type)
+						.read(new String(buffer.toByteArray(), StandardCharsets.UTF_8))
+						.findFirst()
+						.get()
+		);
+	}
+
+	@Test
+	public void testClasses() {
+		check(new Walk.TypeInfo(ForTypeTest.Subject.class), new ForTypeTest.Subject(Arrays.asList(7, 14)));
+		check(new Walk.TypeInfo(ForTypeTest.Subject5.class), new ForTypeTest.Subject5("a\nb"));
+		final ForTypeTest.Subject6A full = new ForTypeTest.Subject6A("q");
+		full.b = "r";
+		check(new Walk.TypeInfo(ForTypeTest.Outer6.class),
+				new ForTypeTest.Outer6(Arrays.asList(new ForTypeTest.Subject6A("q"), new ForTypeTest.Subject6B("z"), full))
+		);
+	}
+
+	@Test
+	public void testParameterizedRoot() {
+		final Map<String, Integer> value = new HashMap<>();
+		value.put("a", 1);
+		value.put("b", -2);
+		check(new Walk.TypeInfo(Map.class, new Walk.TypeInfo(String.class), new Walk.TypeInfo(Integer.class)), value);
+	}
+
+	@Test
+	public void testPolymorphicRoot() {
+		check(new Walk.TypeInfo(ForTypeTest.Subject6.class), new ForTypeTest.Subject6B("z"));
+	}
+}
@@ -0,0 +1,77 @@
+package com.zarbosoft.luxem.bench;
+
+import com.zarbosoft.luxem.read.RawReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the table driven RawReader against the original object-per-state lexer.
+ * <p>
+ * Run with `mvn test-compile` then
+ * `java -cp target/test-classes:target/classes:(test classpath) org.openjdk.jmh.Main RawReaderBenchmark`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RawReaderBenchmark {
+	public byte[] document;
+
+	@Setup
+	public void setup() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 10000; ++i) {
+			builder.append("(event) {\n");
+			builder.append("\tid: ").append(i).append(",\n");
+			builder.append("\t\"name\": \"record number ").append(i).append(" \\\"quoted\\\"\",\n");
+			builder.append("\ttags: [alpha, beta, (g) gamma, ],\n");
+			builder.append("\t*comment* values: [0.5, 12, -7, 1e9],\n");
+			builder.append("},\n");
+		}
+		document = builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public void table(final Blackhole blackhole) {
+		final RawReader reader = new RawReader();
+		reader.eatPrimitive = blackhole::consume;
+		reader.eatKey = blackhole::consume;
+		reader.eatType = blackhole::consume;
+		for (final byte b : document)
+			reader.eat(b);
+	}
+
+	@Benchmark
+	public void tableBulk(final Blackhole blackhole) {
+		final RawReader reader = new RawReader();
+		reader.eatPrimitiveSlice = (buffer, offset, length) -> blackhole.consume(length);
+		reader.eatKeySlice = (buffer, offset, length) -> blackhole.consume(length);
+		reader.eatTypeSlice = (buffer, offset, length) -> blackhole.consume(length);
+		reader.eat(document, 0, document.length);
+	}
+
+	@Benchmark
+	public void tableIndexed(final Blackhole blackhole) {
+		final RawReader reader = new RawReader();
+		reader.indexed(true);
+		reader.eatPrimitiveSlice = (buffer, offset, length) -> blackhole.consume(length);
+		reader.eatKeySlice = (buffer, offset, length) -> blackhole.consume(length);
+		reader.eatTypeSlice = (buffer, offset, length) -> blackhole.consume(length);
+		reader.eat(document, 0, document.length);
+	}
+
+	@Benchmark
+	public void legacy(final Blackhole blackhole) {
+		final LegacyRawReader reader = new LegacyRawReader();
+		reader.eatPrimitive = blackhole::consume;
+		reader.eatKey = blackhole::consume;
+		reader.eatType = blackhole::consume;
+		for (final byte b : document)
+			reader.eat(b);
+	}
+}